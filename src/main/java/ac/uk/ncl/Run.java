@@ -26,6 +26,7 @@ public class Run {
         options.addOption(new Option("e2", "Sorted vs Random Top Templates."));
         options.addOption(new Option("e3", "Rule composition analysis."));
         options.addOption(new Option("iter", true, "number of iterations to run"));
+        options.addOption(new Option("sw", "Share sampled paths and groundings across validation configurations."));
 
         CommandLineParser parser = new DefaultParser();
         try {
@@ -59,6 +60,8 @@ public class Run {
                     Validation.prepareFiles(config);
                 }
 
+                if(cmd.hasOption("sw")) Settings.SWEEP_MODE = true;
+
                 if(cmd.hasOption("e1")) {
                     Settings.VALIDATE_EXP1 = true;
                     if(cmd.hasOption("iter"))
@@ -10,6 +10,11 @@ public class Settings {
      */
     public static int GROUNDING_ATTEMPTS = 10000000;
 
+    /**
+     * The number of grounding attempts between checks of the time budget and cancellation.
+     */
+    public static int GROUNDING_CHECK_INTERVAL = 1024;
+
     /**
      * In rule evaluation, for an abstract rule, the max number of predictions allowed
      * for a type of instantiated rule.
@@ -31,6 +36,18 @@ public class Settings {
     public static boolean VALIDATE_EXP2 = false;
     public static boolean USE_RANDOM_RULE_SAMPLE = false;
 
+    /**
+     * Run validation experiments as a sweep: sampled paths and groundings of a target are
+     * shared by all configurations instead of being recomputed for every configuration.
+     */
+    public static boolean SWEEP_MODE = false;
+
+    /**
+     * The maximum number of times the path stream of a sweep is extended for configurations that
+     * do not saturate on it. Such configurations then use the whole stream.
+     */
+    public static int SWEEP_MAX_EXTENSIONS = 8;
+
     //###############End#################
 
     /**
@@ -45,7 +62,7 @@ public class Settings {
      * In rule application, for an abstract rule, the max number of predictions allowed
      * for a type of instantiated rule.
      */
-    public static int SUGGESTION_CAP = 15000000;
+    public static volatile int SUGGESTION_CAP = 15000000;
 
     /**
      * The max depth of recursion the candidate ranking procedure can have. Tune this down
@@ -56,13 +73,26 @@ public class Settings {
     /**
      * The max number of instantiated rules an abstract rule can produce.
      */
-    public static int INS_RULE_CAP = 15000000;
+    public static volatile int INS_RULE_CAP = 15000000;
 
     /**
      * The abstract rule saturation.
      */
     public static double SATURATION = 0.99;
 
+    /**
+     * If path sampling runs in bounded memory: saturation is estimated on a hash sample of at most
+     * SKETCH_SIZE rule fingerprints, see {@link ac.uk.ncl.core.SaturationSketch}, and open abstract
+     * rules are counted by a Space-Saving counter of 2 * TOP_ABS_RULES counters, or SKETCH_SIZE when
+     * all rules are used, so only the most frequent open rules are returned by the path sampler.
+     * Closed abstract rules are still counted exactly, their number is bounded by the relationship
+     * type sequences up to DEPTH rather than by the sampled paths.
+     * When false (the default), memory is not bounded: the fingerprints of all distinct sampled rules
+     * are kept for saturation, and all distinct abstract rules are counted in ruleFrequency.
+     */
+    public static boolean SKETCH_SATURATION = false;
+    public static int SKETCH_SIZE = 65536;
+
     /**
      * The max number of groundings for evaluating abstract rules.
      * when = 0, the system finds all groundings of rules.
@@ -73,7 +103,7 @@ public class Settings {
      * The max number of groundings for suggesting predicted facts.
      * When = 0, the system finds all groundings of rules.
      */
-    public static int APPLY_GROUNDINGS = 1000;
+    public static volatile int APPLY_GROUNDINGS = 1000;
 
     /**
      * Standard confidence threshold.
@@ -155,7 +185,13 @@ public class Settings {
      * Only the selected rules will be used to generate predicted facts.
      * When = 0, the system will use all rules.
      */
-    public static int TOP_INS_RULES = 200;
+    public static volatile int TOP_INS_RULES = 200;
+
+    /**
+     * If all qualified instantiated rules are kept and written to rules.txt. Otherwise only
+     * the TOP_INS_RULES rules of each type per abstract rule, the ones applied, are kept.
+     */
+    public static boolean WRITE_ALL_INS_RULES = false;
 
     /**
      * Specify the max number of top-ranked anchorings extracted from training instances.
@@ -206,6 +242,146 @@ public class Settings {
      */
     public static boolean RULE_GRAPH = false;
 
+    /**
+     * If write predictions into the compact columnar binary file `predictions.bin` instead of
+     * `predictions.txt` and `verifications.txt`, which can be streamed with {@link ac.uk.ncl.utils.PredictionReader}.
+     * The top TOP_K predictions of each query are written with at most VERIFY_RULE_SIZE scores and rules each,
+     * the same leading rules as in the verification file.
+     */
+    public static boolean BINARY_PREDICTIONS = false;
+
+    /**
+     * Memory budget in MB of the off-heap cache of body groundings shared by rule learning and
+     * rule application. Least recently used groundings are evicted when over the budget.
+     * When = 0, the cache is disabled.
+     */
+    public static int GROUNDING_CACHE_MB = 0;
+
+    /**
+     * If ground the bodies of selected abstract rules in a batch, walking the shared body
+     * prefixes of rules only once.
+     */
+    public static boolean GROUNDING_TRIE = false;
+
+    /**
+     * If ground rule bodies with the cheapest plan estimated from graph statistics: forward from
+     * the first atom, backward from the last atom, or backward from the tail of tail anchored rules.
+     * Otherwise bodies are always grounded forward.
+     */
+    public static boolean GROUNDING_PLANNER = false;
+
+    /**
+     * Select the evaluator of closed abstract rules in rule learning:
+     * 0 = Body grounding DFS, capped by LEARN_GROUNDINGS
+     * 1 = Sparse matrix products of relationship adjacency matrices, uncapped, for bodies of length <= 2,
+     *     the longer bodies are grounded by the DFS, see {@link ac.uk.ncl.core.ClosedRuleEvaluator}
+     * 2 = Sampled start nodes with confidence intervals, see {@link ac.uk.ncl.core.SamplingEvaluator}
+     * 2 counts the body pairs connected by any walk, including walks that revisit a node,
+     * whereas the DFS only follows paths of distinct nodes. For bodies of length >= 3 it may thus
+     * find more body pairs and lower confidences than the DFS, so its confidences are not
+     * comparable with those of rules evaluated by the DFS, e.g., instantiated rules.
+     */
+    public static int CLOSED_RULE_EVALUATOR = 0;
+
+    /**
+     * The half width of the confidence interval at which sampling of a closed rule stops, and the
+     * number of sampled start nodes with body groundings before intervals are checked.
+     */
+    public static double SAMPLE_PRECISION = 0.01;
+    public static int SAMPLE_MIN = 30;
+
+    /**
+     * If ground the bodies of tail anchored rules by intersecting sorted adjacency lists
+     * backward from the tail constant, rather than checking the tail of every body path.
+     */
+    public static boolean JOIN_GROUNDING = false;
+
+    /**
+     * If the path sampler enumerates the closed paths of sampled instances by meeting in the
+     * middle, expanding half of the depth from each endpoint. Open paths are still sampled
+     * by the random walkers.
+     */
+    public static boolean MEET_IN_THE_MIDDLE = false;
+
+    /**
+     * The max number of relationships followed from a node when expanding half paths in
+     * meet-in-the-middle mode. When = -1, all relationships are followed.
+     */
+    public static int MITM_FAN_OUT = 50;
+
+    /**
+     * Select the random walker of the path samplers:
+     * 0 = Copy and shuffle the relationships of every expanded node
+     * 1 = Uniform without copying the relationships
+     * 2 = Weighted by the degree of relationship types at the node
+     * 3 = Weighted by the inverse log degree of neighbours
+     */
+    public static int RANDOM_WALKER = 1;
+
+    /**
+     * The seed of all random number streams, combined with the target name for every target.
+     * When = -1, runs are not reproducible.
+     */
+    public static long RANDOM_SEED = -1;
+
+    /**
+     * The wall-clock budget in seconds for learning and applying rules of a target.
+     * When the deadline of a stage is reached, the stage keeps its results so far.
+     * When = 0, runtime is only bounded by saturation and the caps.
+     */
+    public static int TIME_BUDGET = 0;
+
+    /**
+     * The shares of the time budget for path sampling and rule instantiation,
+     * the rest is for rule application.
+     */
+    public static double SAMPLING_SHARE = 0.2;
+    public static double INSTANTIATION_SHARE = 0.4;
+
+    /**
+     * The memory budget in MB for heap and direct buffers. When usage after garbage collection
+     * exceeds MEMORY_PRESSURE of the budget during rule instantiation or application, the caps
+     * of the current target are tightened instead of running out of memory.
+     * When = 0, the caps are never changed.
+     */
+    public static int HEAP_BUDGET_MB = 0;
+    public static double MEMORY_PRESSURE = 0.85;
+
+    /**
+     * The number of candidate records a rule application thread buffers before sorting and
+     * writing them to a compressed spill run on disk. Runs are merged per query for ranking.
+     * When = 0, candidates are kept in memory.
+     */
+    public static int SPILL_RECORDS = 0;
+
+    /**
+     * If the regular path sampler walks paths in reusable buffers with {@link ac.uk.ncl.core.PathSampler}
+     * instead of the traversal framework. PATH_BUDGET caps the paths sampled from an instance,
+     * split evenly over the branches of the walk. When = 0, the paths are not capped.
+     */
+    public static boolean BUFFERED_PATH_SAMPLER = false;
+    public static int PATH_BUDGET = 0;
+
+    /**
+     * The time budget in milliseconds for grounding the body of a rule. A rule over the budget
+     * keeps the groundings found so far and is marked as truncated.
+     * When = 0, the groundings of a rule are only capped by GROUNDING_ATTEMPTS.
+     */
+    public static int GROUNDING_MILLIS = 0;
+
+    /**
+     * If rules are applied per test query in descending order of confidence, stopping as soon as
+     * the TOP_K candidates of the query and their order are decided, see {@link ac.uk.ncl.core.ThresholdAnswering}.
+     */
+    public static boolean THRESHOLD_ANSWERING = false;
+
+    /**
+     * If rule application keeps only the scores of candidates, and the rules of the predictions in the
+     * verification file are recovered after ranking, see {@link ac.uk.ncl.core.LazyExplanations}.
+     * Not used with spilled candidates.
+     */
+    public static boolean LAZY_EXPLANATIONS = false;
+
     // Experimental and Legacy Static Variables
     /**
      * Legacy setting. Now serve as a static variable storing current learning target.
@@ -0,0 +1,311 @@
+package ac.uk.ncl.analysis;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.core.GenOps;
+import ac.uk.ncl.core.GraphOps;
+import ac.uk.ncl.core.MemoryGovernor;
+import ac.uk.ncl.model.GPFL2;
+import ac.uk.ncl.structure.*;
+import ac.uk.ncl.utils.Deadline;
+import ac.uk.ncl.utils.Helpers;
+import ac.uk.ncl.utils.IO;
+import ac.uk.ncl.utils.Logger;
+import ac.uk.ncl.utils.MathUtils;
+import ac.uk.ncl.utils.Randomness;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.Traverser;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A GPFL engine for hyper-parameter sweeps on a fixed train/test split. For every target it keeps:
+ * - One stream of sampled paths (as abstract rule ids) per repeat, shared by all configurations of
+ * that repeat, and drawn from a random stream seeded with the repeat number, see {@link Randomness}. A configuration of saturation and batch size replays the stream instead of sampling
+ * the graph again, and the stream is only extended when a configuration needs more paths.
+ * - The body groundings of abstract rules in both the learning and the application graph, through
+ * the {@link ac.uk.ncl.core.GroundingCache} which is enabled by default for sweeps.
+ * - The evaluation result of every distinct selection of abstract rules, keyed on the selected rules
+ * themselves, so configurations that end up selecting the same abstract rules are not instantiated,
+ * applied and evaluated again. Instantiation draws no random samples, so the same selection learns the
+ * same rules on the fixed split. Results are only kept for runs without a time budget, a grounding
+ * time limit or tightened memory caps, as these cut the learning short depending on the machine load.
+ *
+ * A stream is extended at most SWEEP_MAX_EXTENSIONS times for a configuration, the configurations
+ * that still do not saturate then use the whole stream and are logged.
+ *
+ * The replays of all configurations are computed in parallel by {@link #prepare}. The learning
+ * and application of configurations run one after another as they share the global settings,
+ * each of them grounds rules in parallel.
+ */
+public class SweepEngine extends GPFL2 {
+    private final List<Rule> rules = new ArrayList<>();
+    private final Map<Rule, Integer> ruleIds = new HashMap<>();
+    private final List<PathStream> streams = new ArrayList<>();
+    private final Map<String, Replay> replays = new ConcurrentHashMap<>();
+    private final Map<Set<String>, Double> evaluations = new HashMap<>();
+    private Set<String> selection;
+
+    public SweepEngine(File config) {
+        super(config);
+        if(Settings.GROUNDING_CACHE_MB == 0) Settings.GROUNDING_CACHE_MB = 2048;
+    }
+
+    /**
+     * Samples one path stream per repeat for the target and replays it for every combination
+     * of saturations and batch sizes in parallel.
+     */
+    public void prepare(File targetHome, double[] saturations, int[] batchSizes, int repeats) {
+        rules.clear();
+        ruleIds.clear();
+        streams.clear();
+        replays.clear();
+        evaluations.clear();
+
+        trainFile = new File(targetHome, "train.txt");
+        testFile = new File(targetHome, "test.txt");
+        Settings.TARGET_RELATION = targetHome.getName().replaceFirst("concept_", "concept:");
+        long s = System.currentTimeMillis();
+        try (Transaction tx = graph.beginTx()) {
+            List<Instance> train = IO.readInstance(graph, trainFile);
+            List<Instance> test = IO.readInstance(graph, testFile);
+            if (train.size() + test.size() < Settings.MIN_INSTANCES) {
+                tx.success();
+                return;
+            }
+
+            GraphOps.removeRelationshipAPI(graph, test);
+            List<String> pending = new ArrayList<>();
+            for (int i = 0; i < repeats; i++) {
+                Randomness.reseed(Settings.TARGET_RELATION, i);
+                streams.add(new PathStream(Randomness.split()));
+                for (double saturation : saturations)
+                    for (int batchSize : batchSizes) pending.add(key(i, saturation, batchSize));
+            }
+
+            int extension = Arrays.stream(batchSizes).max().orElse(Settings.BATCH_SIZE) * 2;
+            for (int round = 0; !pending.isEmpty(); round++) {
+                pending = replayParallel(pending);
+                if (round == Settings.SWEEP_MAX_EXTENSIONS) break;
+                Set<Integer> exhausted = pending.stream().map(key -> Integer.parseInt(key.split("\\|")[0]))
+                        .collect(Collectors.toSet());
+                for (int i : exhausted) {
+                    PathStream stream = streams.get(i);
+                    extend(stream, train, Math.max(extension, stream.size));
+                }
+            }
+            for (String key : pending) {
+                String[] words = key.split("\\|");
+                replays.put(key, replay(streams.get(Integer.parseInt(words[0]))
+                        , Double.parseDouble(words[1]), Integer.parseInt(words[2]), true));
+            }
+            if (!pending.isEmpty()) Logger.println("# Not Saturated: " + pending, 1);
+            GraphOps.addRelationshipAPI(graph, test, testFile);
+            tx.success();
+        }
+
+        int paths = streams.stream().mapToInt(stream -> stream.size).sum();
+        Logger.println(MessageFormat.format("# Sweep Prepared: {0} Configurations | {1} Sampled Paths | {2} Abstract Rules"
+                , replays.size(), paths, rules.size()), 1);
+        Helpers.timerAndMemory(s, "# Sweep Preparation", format, runtime);
+    }
+
+    /**
+     * Replays the path stream of the current repeat under the current configuration instead of
+     * sampling the graph.
+     */
+    @Override
+    protected Set<Rule> generateAbstractRules(List<Instance> train) {
+        String key = key(attempt, Settings.SATURATION, Settings.BATCH_SIZE);
+        Replay replay = replays.get(key);
+        if (replay == null) {
+            while (streams.size() <= attempt) streams.add(new PathStream(Randomness.split()));
+            PathStream stream = streams.get(attempt);
+            for (int i = 0; replay == null && i < Settings.SWEEP_MAX_EXTENSIONS; i++) {
+                extend(stream, train, Math.max(Settings.BATCH_SIZE * 2, stream.size));
+                replay = replay(stream, Settings.SATURATION, Settings.BATCH_SIZE, false);
+            }
+            if (replay == null) {
+                replay = replay(stream, Settings.SATURATION, Settings.BATCH_SIZE, true);
+                Logger.println("# Not Saturated: " + key, 1);
+            }
+            replays.put(key, replay);
+        }
+
+        GenOps.ruleFrequency.clear();
+        for (int i = 0; i < replay.rules.length; i++) {
+            Rule rule = rules.get(replay.rules[i]);
+            GenOps.ruleFrequency.put(new AbstractRule(rule.copyHead(), rule.copyBody()), replay.counts[i]);
+        }
+        Logger.println("# Replayed Paths: " + replay.paths, 1);
+        return new HashSet<>(GenOps.ruleFrequency.keySet());
+    }
+
+    @Override
+    protected Double reusedEvaluation(Set<Rule> selectedAbstractRules) {
+        selection = null;
+        if(Deadline.active() || Settings.GROUNDING_MILLIS > 0) return null;
+        selection = selectedAbstractRules.stream().map(Rule::toString).collect(Collectors.toSet());
+        return evaluations.get(selection);
+    }
+
+    @Override
+    protected void onEvaluated(double mrr) {
+        if(selection != null && !MemoryGovernor.degraded()) evaluations.put(selection, mrr);
+    }
+
+    private void extend(PathStream stream, List<Instance> train, int paths) {
+        Random previous = Randomness.get();
+        Randomness.bind(stream.random);
+        Random rand = stream.random;
+        int target = stream.size + paths;
+        while (stream.size < target) {
+            Instance instance = train.get(rand.nextInt(train.size()));
+            Traverser traverser = GraphOps.buildStandardTraverser(graph, instance, 50);
+            for (Path path : traverser) stream.add(ruleId(GenOps.abstraction(path, instance)));
+            if(Settings.MEET_IN_THE_MIDDLE)
+                for (LocalPath path : GraphOps.closedPaths(graph, instance, Settings.DEPTH, Settings.MITM_FAN_OUT))
+                    stream.add(ruleId(GenOps.abstraction(path, instance)));
+            stream.endInstance();
+        }
+        Randomness.bind(previous);
+    }
+
+    private int ruleId(Rule rule) {
+        Integer id = ruleIds.get(rule);
+        if (id == null) {
+            id = rules.size();
+            ruleIds.put(rule, id);
+            rules.add(rule);
+        }
+        return id;
+    }
+
+    private List<String> replayParallel(List<String> keys) {
+        int threadNum = Math.min(Settings.THREAD_NUMBER, keys.size());
+        int[][] intervals = MathUtils.createIntervals(keys.size(), threadNum);
+        ReplayTask[] tasks = new ReplayTask[threadNum];
+        for (int i = 0; i < threadNum; i++) tasks[i] = new ReplayTask(keys.subList(intervals[i][0], intervals[i][1]));
+        List<String> exhausted = new ArrayList<>();
+        try {
+            for (ReplayTask task : tasks) {
+                task.join();
+                exhausted.addAll(task.exhausted);
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        return exhausted;
+    }
+
+    /**
+     * Replays the saturation check of {@link ac.uk.ncl.core.Engine#regularPathSampler} on a sampled
+     * path stream. Returns null if the stream does not saturate under the configuration, unless
+     * forced to count the whole stream.
+     */
+    static Replay replay(PathStream stream, double saturation, int batchSize, boolean force) {
+        Set<Integer> previousBatch = new HashSet<>();
+        Set<Integer> currentBatch = new HashSet<>();
+        Map<Integer, Integer> counts = new HashMap<>();
+        double currentSaturation = 0d;
+        int instance = 0;
+
+        for (int pathCount = 1; pathCount <= stream.size; pathCount++) {
+            if (pathCount % batchSize == 0) {
+                int overlap = 0;
+                for (int rule : currentBatch) if (previousBatch.contains(rule)) overlap++;
+                currentSaturation = (double) overlap / currentBatch.size();
+                previousBatch.addAll(currentBatch);
+                currentBatch = new HashSet<>();
+            }
+            int rule = stream.rules[pathCount - 1];
+            counts.merge(rule, 1, Integer::sum);
+            currentBatch.add(rule);
+
+            boolean instanceEnded = false;
+            while (instance < stream.instances && stream.instanceEnds[instance] == pathCount) {
+                instance++;
+                instanceEnded = true;
+            }
+            if (instanceEnded && currentSaturation >= saturation) return new Replay(counts, pathCount);
+        }
+        return force ? new Replay(counts, stream.size) : null;
+    }
+
+    private static String key(int repeat, double saturation, int batchSize) {
+        return repeat + "|" + saturation + "|" + batchSize;
+    }
+
+    class ReplayTask extends Thread {
+        List<String> keys;
+        List<String> exhausted = new ArrayList<>();
+
+        ReplayTask(List<String> keys) {
+            super();
+            this.keys = keys;
+            start();
+        }
+
+        @Override
+        public void run() {
+            for (String key : keys) {
+                if (replays.containsKey(key)) continue;
+                String[] words = key.split("\\|");
+                Replay replay = replay(streams.get(Integer.parseInt(words[0]))
+                        , Double.parseDouble(words[1]), Integer.parseInt(words[2]), false);
+                if (replay == null) exhausted.add(key);
+                else replays.put(key, replay);
+            }
+        }
+    }
+
+    /**
+     * Abstract rule ids of sampled paths in sampling order, with the end positions of instances.
+     */
+    static class PathStream {
+        final Random random;
+        int[] rules = new int[1024];
+        int size = 0;
+        int[] instanceEnds = new int[256];
+        int instances = 0;
+
+        PathStream(Random random) {
+            this.random = random;
+        }
+
+        void add(int rule) {
+            if (size == rules.length) rules = Arrays.copyOf(rules, size * 2);
+            rules[size++] = rule;
+        }
+
+        void endInstance() {
+            if (instances == instanceEnds.length) instanceEnds = Arrays.copyOf(instanceEnds, instances * 2);
+            instanceEnds[instances++] = size;
+        }
+    }
+
+    /**
+     * The abstract rule frequencies produced by a configuration.
+     */
+    static class Replay {
+        final int[] rules;
+        final int[] counts;
+        final int paths;
+
+        Replay(Map<Integer, Integer> frequencies, int paths) {
+            this.paths = paths;
+            rules = new int[frequencies.size()];
+            counts = new int[frequencies.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : frequencies.entrySet()) {
+                rules[i] = entry.getKey();
+                counts[i++] = entry.getValue();
+            }
+        }
+    }
+}
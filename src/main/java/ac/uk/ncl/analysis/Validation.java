@@ -8,6 +8,7 @@ import ac.uk.ncl.utils.Helpers;
 import ac.uk.ncl.utils.IO;
 import ac.uk.ncl.utils.Logger;
 import ac.uk.ncl.utils.MathUtils;
+import ac.uk.ncl.utils.Randomness;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -65,7 +66,7 @@ public class Validation {
                 targets = graph.getAllRelationshipTypes().stream().map(RelationshipType::name).collect(Collectors.toList());
                 if(Settings.RANDOMLY_SELECTED_RELATIONS != 0 && Settings.RANDOMLY_SELECTED_RELATIONS < targets.size()) {
                     targets = targets.stream().filter( target -> GraphOps.getRelationshipsAPI(graph, target).size() > 300 && GraphOps.getRelationshipsAPI(graph, target).size() < 700).collect(Collectors.toList());
-                    Collections.shuffle(targets);
+                    Randomness.shuffle(targets);
                     targets = targets.subList(0, Settings.RANDOMLY_SELECTED_RELATIONS);
                 }
                 tx.success(); }
@@ -84,7 +85,7 @@ public class Validation {
                 File testFile = new File(targetHome, "test.txt");
                 List<Instance> instances = GraphOps.getRelationshipsAPI(graph, target)
                         .stream().map(Instance::new).collect(Collectors.toList());
-                Collections.shuffle(instances);
+                Randomness.shuffle(instances);
                 int trainSize = (int) (instances.size() * Settings.SPLIT_RATIO);
                 List<Instance> train = instances.subList(0, trainSize);
                 List<Instance> test = instances.subList(trainSize, instances.size());
@@ -125,9 +126,10 @@ public class Validation {
         int totalTests, count = 0;
         totalTests = SATs.length * BSs.length * resultsHome.listFiles().length * attempts;
         
-        GPFL2 system = new GPFL2(config);
+        GPFL2 system = Settings.SWEEP_MODE ? new SweepEngine(config) : new GPFL2(config);
         for (File file : resultsHome.listFiles()) {
             record("Target: " + file.getName().replaceFirst("concept_", "concept:") + "\n");
+            if(Settings.SWEEP_MODE) ((SweepEngine) system).prepare(file, SATs, BSs, attempts);
             for (double sat : SATs) {
                 Settings.SATURATION = sat;
                 for (int bSs : BSs) {
@@ -139,6 +141,7 @@ public class Validation {
                         System.out.println(MessageFormat.format("\n# ({0}/{1}) VALIDATE: SAT = {2} | BS = {3}",
                                 count++, totalTests, sat, bSs));
                         record(sat + "\t" + bSs + "\t");
+                        system.setAttempt(i);
                         system.run(file);
                         ars[i] = currentARS;
                         mrrs[i] = currentMRR;
@@ -169,9 +172,11 @@ public class Validation {
         int totalTests, count = 0;
         totalTests = sizes.length * resultsHome.listFiles().length * attempts * 2;
 
-        GPFL2 system = new GPFL2(config);
+        GPFL2 system = Settings.SWEEP_MODE ? new SweepEngine(config) : new GPFL2(config);
         for (File file : resultsHome.listFiles()) {
             record("Target: " + file.getName().replaceFirst("concept_", "concept:") + "\n");
+            if(Settings.SWEEP_MODE) ((SweepEngine) system)
+                    .prepare(file, new double[]{Settings.SATURATION}, new int[]{Settings.BATCH_SIZE}, attempts);
             for (int size : sizes) {
                 Settings.TOP_ABS_RULES = size;
                 for(int j = 0; j < 2; j++) {
@@ -182,6 +187,7 @@ public class Validation {
                         System.out.println(MessageFormat.format("\n# ({0}/{1}) VALIDATE: Abstract Rule Size: {2} | Mode: {3}",
                                 count++, totalTests, size, header));
                         record(header + "\t" + size + "\t");
+                        system.setAttempt(i);
                         system.run(file);
                         mrrs[i] = currentMRR;
                     }
@@ -0,0 +1,243 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Atom;
+import ac.uk.ncl.utils.MathUtils;
+import org.neo4j.graphdb.*;
+
+import java.util.*;
+
+/**
+ * Relationship types as sparse boolean adjacency matrices in CSR layout, indexed by dense node ids.
+ * The nodes of the graph are numbered 0..n-1 in the order of their ids on first use, so the size of
+ * the matrices follows the number of nodes rather than the largest node id, see {@link #dense(long)}
+ * and {@link #id(int)}. The matrix of a type and its transpose (for inverse atoms) are built lazily
+ * from the current graph and dropped when instances of the type are masked or added back.
+ */
+public class AdjacencyIndex {
+    private static final Map<String, SparseMatrix> matrices = new HashMap<>();
+    private static long[] nodeIds = null;
+
+    /**
+     * Returns the matrix of the atom oriented from its subject to its object, i.e.,
+     * the transpose of the type matrix for inverse atoms.
+     */
+    public static SparseMatrix get(GraphDatabaseService graph, Atom atom) {
+        return get(graph, atom.getBasePredicate(), atom.isInverse());
+    }
+
+    public static synchronized SparseMatrix get(GraphDatabaseService graph, String type, boolean inverse) {
+        String key = inverse ? "_" + type : type;
+        SparseMatrix matrix = matrices.get(key);
+        if(matrix == null) {
+            SparseMatrix forward = build(graph, type);
+            matrices.put(type, forward);
+            matrices.put("_" + type, forward.transpose());
+            matrix = matrices.get(key);
+        }
+        return matrix;
+    }
+
+    public static synchronized void invalidate(String type) {
+        matrices.remove(type);
+        matrices.remove("_" + type);
+    }
+
+    /**
+     * Drops the matrices and the dense node ids, e.g., when switching to another graph.
+     */
+    public static synchronized void clear() {
+        matrices.clear();
+        nodeIds = null;
+    }
+
+    /**
+     * The dense id of the node, or -1 if the node was not in the graph when the index was built.
+     */
+    public static int dense(long id) {
+        int dense = Arrays.binarySearch(nodeIds, id);
+        return dense < 0 ? -1 : dense;
+    }
+
+    /**
+     * The node id of the dense id.
+     */
+    public static long id(int dense) {
+        return nodeIds[dense];
+    }
+
+    private static void indexNodes(GraphDatabaseService graph) {
+        if(nodeIds != null) return;
+        long[] ids = new long[1024];
+        int size = 0;
+        try(Transaction tx = graph.beginTx()) {
+            for (Node node : graph.getAllNodes()) {
+                if(size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+                ids[size++] = node.getId();
+            }
+            tx.success();
+        }
+        ids = Arrays.copyOf(ids, size);
+        Arrays.sort(ids);
+        nodeIds = ids;
+    }
+
+    private static SparseMatrix build(GraphDatabaseService graph, String type) {
+        indexNodes(graph);
+        Set<Relationship> relationships = GraphOps.getRelationshipsAPI(graph, type);
+        int[] starts = new int[relationships.size()];
+        int[] ends = new int[relationships.size()];
+        int i = 0;
+        try(Transaction tx = graph.beginTx()) {
+            for (Relationship relationship : relationships) {
+                starts[i] = dense(relationship.getStartNodeId());
+                ends[i++] = dense(relationship.getEndNodeId());
+            }
+            tx.success();
+        }
+        return SparseMatrix.fromEdges(nodeIds.length, starts, ends);
+    }
+
+    /**
+     * A square sparse boolean matrix in CSR layout with sorted, distinct columns per row.
+     */
+    public static class SparseMatrix {
+        public final int size;
+        public final int[] rowPointers;
+        public final int[] columns;
+
+        SparseMatrix(int size, int[] rowPointers, int[] columns) {
+            this.size = size;
+            this.rowPointers = rowPointers;
+            this.columns = columns;
+        }
+
+        static SparseMatrix fromEdges(int size, int[] starts, int[] ends) {
+            int[] pointers = new int[size + 1];
+            for (int start : starts) pointers[start + 1]++;
+            for (int r = 0; r < size; r++) pointers[r + 1] += pointers[r];
+            int[] fill = Arrays.copyOf(pointers, size);
+            int[] columns = new int[starts.length];
+            for (int i = 0; i < starts.length; i++) columns[fill[starts[i]]++] = ends[i];
+
+            int[] distinctPointers = new int[size + 1];
+            int nnz = 0;
+            for (int r = 0; r < size; r++) {
+                Arrays.sort(columns, pointers[r], pointers[r + 1]);
+                for (int k = pointers[r]; k < pointers[r + 1]; k++)
+                    if(k == pointers[r] || columns[k] != columns[k - 1]) columns[nnz++] = columns[k];
+                distinctPointers[r + 1] = nnz;
+            }
+            return new SparseMatrix(size, distinctPointers, Arrays.copyOf(columns, nnz));
+        }
+
+        public int nonZeros() {
+            return rowPointers[size];
+        }
+
+        public boolean contains(int row, int column) {
+            return Arrays.binarySearch(columns, rowPointers[row], rowPointers[row + 1], column) >= 0;
+        }
+
+        public SparseMatrix transpose() {
+            int[] starts = new int[nonZeros()];
+            for (int r = 0; r < size; r++)
+                for (int k = rowPointers[r]; k < rowPointers[r + 1]; k++) starts[k] = columns[k];
+            int[] ends = new int[nonZeros()];
+            for (int r = 0; r < size; r++)
+                for (int k = rowPointers[r]; k < rowPointers[r + 1]; k++) ends[k] = r;
+            return fromEdges(size, starts, ends);
+        }
+
+        /**
+         * The boolean product of this and the other matrix, with rows computed in parallel.
+         */
+        public SparseMatrix multiply(SparseMatrix other) {
+            return product(other, false);
+        }
+
+        /**
+         * The pairs (x, z) joined by a node unique path x -> y -> z through this and the other matrix,
+         * i.e., the boolean product without the entries only reached when z = x or z = y. These are the
+         * endpoints of the DFS groundings of a body of two atoms, where y = x is allowed for a self loop.
+         */
+        public SparseMatrix paths(SparseMatrix other) {
+            return product(other, true);
+        }
+
+        private SparseMatrix product(SparseMatrix other, boolean paths) {
+            List<Integer> activeRows = new ArrayList<>();
+            for (int r = 0; r < size; r++) if(rowPointers[r + 1] > rowPointers[r]) activeRows.add(r);
+            if(activeRows.isEmpty()) return new SparseMatrix(size, new int[size + 1], new int[0]);
+
+            int threadNum = Math.min(Settings.THREAD_NUMBER, activeRows.size());
+            int[][] intervals = MathUtils.createIntervals(activeRows.size(), threadNum);
+            ProductTask[] tasks = new ProductTask[threadNum];
+            for (int i = 0; i < threadNum; i++)
+                tasks[i] = new ProductTask(this, other, activeRows.subList(intervals[i][0], intervals[i][1]), paths);
+            try {
+                for (ProductTask task : tasks) task.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+
+            int[] rowLengths = new int[size];
+            int nnz = 0;
+            for (ProductTask task : tasks) {
+                for (int i = 0; i < task.rows.size(); i++)
+                    rowLengths[task.rows.get(i)] = task.offsets[i + 1] - task.offsets[i];
+                nnz += task.length;
+            }
+            int[] pointers = new int[size + 1];
+            for (int r = 0; r < size; r++) pointers[r + 1] = pointers[r] + rowLengths[r];
+            int[] columns = new int[nnz];
+            for (ProductTask task : tasks)
+                for (int i = 0; i < task.rows.size(); i++)
+                    System.arraycopy(task.columns, task.offsets[i], columns, pointers[task.rows.get(i)]
+                            , task.offsets[i + 1] - task.offsets[i]);
+            return new SparseMatrix(size, pointers, columns);
+        }
+    }
+
+    static class ProductTask extends Thread {
+        SparseMatrix left, right;
+        List<Integer> rows;
+        boolean paths;
+        int[] offsets;
+        int[] columns = new int[1024];
+        int length = 0;
+
+        ProductTask(SparseMatrix left, SparseMatrix right, List<Integer> rows, boolean paths) {
+            super();
+            this.left = left;
+            this.right = right;
+            this.rows = rows;
+            this.paths = paths;
+            offsets = new int[rows.size() + 1];
+            start();
+        }
+
+        @Override
+        public void run() {
+            int[] marks = new int[right.size];
+            Arrays.fill(marks, -1);
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                int begin = length;
+                for (int k = left.rowPointers[row]; k < left.rowPointers[row + 1]; k++) {
+                    int middle = left.columns[k];
+                    for (int j = right.rowPointers[middle]; j < right.rowPointers[middle + 1]; j++) {
+                        int column = right.columns[j];
+                        if(marks[column] == row || paths && (column == row || column == middle)) continue;
+                        marks[column] = row;
+                        if(length == columns.length) columns = Arrays.copyOf(columns, length * 2);
+                        columns[length++] = column;
+                    }
+                }
+                Arrays.sort(columns, begin, length);
+                offsets[i + 1] = length;
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * External memory store of rule application outputs, used instead of the in-memory candidate
+ * multimap when {@link Settings#SPILL_RECORDS} > 0. A candidate pair is recorded once per query
+ * direction it answers, i.e., by subject if the subject is queried by the test set and by object
+ * if the object is queried, as (query, candidate, rule id, score).
+ *
+ * Every rule application thread buffers its records and, when the buffer is full, sorts it by
+ * (query, candidate, rule id) and writes it as a deflated run file. {@link #forEachQuery} merges
+ * the runs of a direction and hands over the candidates of one query at a time, so only the
+ * candidates of a single query are held in memory for ranking. At most FAN_IN runs are open at a
+ * time: with more runs, groups of FAN_IN runs are first merged into intermediate runs.
+ */
+public class CandidateSpill implements Closeable {
+    static final int FAN_IN = 64;
+    private final File home;
+    private final Set<Long> subQueries = new HashSet<>();
+    private final Set<Long> objQueries = new HashSet<>();
+    private final Map<Rule, Integer> ruleIds = new ConcurrentHashMap<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private final List<List<File>> runs = Arrays.asList(new ArrayList<>(), new ArrayList<>());
+    private long records = 0;
+    private int merges = 0;
+
+    public CandidateSpill(File home, Set<Pair> test) {
+        this.home = home;
+        home.mkdirs();
+        for (Pair pair : test) {
+            subQueries.add(pair.sub);
+            objQueries.add(pair.obj);
+        }
+    }
+
+    public Buffer buffer() {
+        return new Buffer();
+    }
+
+    public Rule rule(int id) {
+        synchronized (rules) {
+            return rules.get(id);
+        }
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    public synchronized int getRuns() {
+        return runs.get(0).size() + runs.get(1).size();
+    }
+
+    private int id(Rule rule) {
+        return ruleIds.computeIfAbsent(rule, r -> {
+            synchronized (rules) {
+                rules.add(r);
+                return rules.size() - 1;
+            }
+        });
+    }
+
+    private void writeRun(int direction, long[] queries, long[] candidates, int[] ids, double[] scores, int size) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> {
+            if(queries[a] != queries[b]) return Long.compare(queries[a], queries[b]);
+            if(candidates[a] != candidates[b]) return Long.compare(candidates[a], candidates[b]);
+            return Integer.compare(ids[a], ids[b]);
+        });
+
+        File run;
+        synchronized (this) {
+            run = new File(home, direction + "_" + getRuns() + ".run");
+            runs.get(direction).add(run);
+            records += size;
+        }
+        try(DataOutputStream out = output(run)) {
+            out.writeLong(size);
+            for (int i : order) {
+                out.writeLong(queries[i]);
+                out.writeLong(candidates[i]);
+                out.writeInt(ids[i]);
+                out.writeDouble(scores[i]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Merges the runs of a direction (= 0 for (query, ?), = 1 for (?, query)) and passes the
+     * candidates of every query in ascending query order. The scores of a candidate pair and
+     * the ids of its rules are sorted by descending score.
+     */
+    public void forEachQuery(int direction, QueryConsumer consumer) {
+        reduce(direction, FAN_IN);
+        PriorityQueue<RunReader> queue = open(runs.get(direction));
+
+        long query = -1;
+        List<Pair> pairs = new ArrayList<>();
+        Map<Pair, int[]> rulesOfPairs = new HashMap<>();
+        long candidate = -1;
+        int lastId = -1;
+        List<double[]> group = new ArrayList<>();
+        while(!queue.isEmpty()) {
+            RunReader reader = queue.poll();
+            if(reader.query != query || reader.candidate != candidate) {
+                if(!group.isEmpty()) close(direction, query, candidate, group, pairs, rulesOfPairs);
+                if(reader.query != query && !pairs.isEmpty()) {
+                    consumer.accept(query, pairs, rulesOfPairs);
+                    pairs = new ArrayList<>();
+                    rulesOfPairs = new HashMap<>();
+                }
+                query = reader.query;
+                candidate = reader.candidate;
+                lastId = -1;
+            }
+            if(reader.id != lastId) group.add(new double[]{reader.score, reader.id});
+            lastId = reader.id;
+            if(reader.advance()) queue.add(reader);
+            else reader.close();
+        }
+        if(!group.isEmpty()) close(direction, query, candidate, group, pairs, rulesOfPairs);
+        if(!pairs.isEmpty()) consumer.accept(query, pairs, rulesOfPairs);
+    }
+
+    /**
+     * Merges groups of fanIn runs of the direction into intermediate runs until at most fanIn are left.
+     */
+    void reduce(int direction, int fanIn) {
+        List<File> files = runs.get(direction);
+        while(files.size() > fanIn) {
+            List<File> merged = new ArrayList<>();
+            for (int i = 0; i < files.size(); i += fanIn) {
+                List<File> group = files.subList(i, Math.min(files.size(), i + fanIn));
+                merged.add(group.size() == 1 ? group.get(0) : merge(direction, group));
+            }
+            files = merged;
+        }
+        runs.set(direction, files);
+    }
+
+    private File merge(int direction, List<File> group) {
+        long size = 0;
+        PriorityQueue<RunReader> queue = new PriorityQueue<>();
+        for (File run : group) {
+            RunReader reader = new RunReader(run);
+            size += reader.remaining;
+            if(reader.advance()) queue.add(reader);
+            else reader.close();
+        }
+
+        File merged = new File(home, direction + "_m" + merges++ + ".run");
+        try(DataOutputStream out = output(merged)) {
+            out.writeLong(size);
+            while(!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                out.writeLong(reader.query);
+                out.writeLong(reader.candidate);
+                out.writeInt(reader.id);
+                out.writeDouble(reader.score);
+                if(reader.advance()) queue.add(reader);
+                else reader.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        group.forEach(File::delete);
+        return merged;
+    }
+
+    private static PriorityQueue<RunReader> open(List<File> files) {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>();
+        for (File run : files) {
+            RunReader reader = new RunReader(run);
+            if(reader.advance()) queue.add(reader);
+            else reader.close();
+        }
+        return queue;
+    }
+
+    private static DataOutputStream output(File run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(run), new Deflater(Deflater.BEST_SPEED)), 1 << 16));
+    }
+
+    private void close(int direction, long query, long candidate, List<double[]> group, List<Pair> pairs, Map<Pair, int[]> rulesOfPairs) {
+        group.sort((a, b) -> Double.compare(b[0], a[0]));
+        Pair pair = direction == 0 ? new Pair(query, candidate) : new Pair(candidate, query);
+        pair.scores = new Double[group.size()];
+        int[] ids = new int[group.size()];
+        for (int i = 0; i < group.size(); i++) {
+            pair.scores[i] = group.get(i)[0];
+            ids[i] = (int) group.get(i)[1];
+        }
+        pairs.add(pair);
+        rulesOfPairs.put(pair, ids);
+        group.clear();
+    }
+
+    @Override
+    public void close() {
+        for (List<File> files : runs) files.forEach(File::delete);
+        home.delete();
+    }
+
+    @FunctionalInterface
+    public interface QueryConsumer {
+        void accept(long query, List<Pair> candidates, Map<Pair, int[]> ruleIds);
+    }
+
+    /**
+     * Per thread record buffer, one per direction.
+     */
+    public class Buffer {
+        final long[][] queries = new long[2][Settings.SPILL_RECORDS];
+        final long[][] candidates = new long[2][Settings.SPILL_RECORDS];
+        final int[][] ids = new int[2][Settings.SPILL_RECORDS];
+        final double[][] scores = new double[2][Settings.SPILL_RECORDS];
+        final int[] sizes = new int[2];
+
+        public void add(Pair pair, Rule rule) {
+            if(subQueries.contains(pair.sub)) add(0, pair.sub, pair.obj, rule);
+            if(objQueries.contains(pair.obj)) add(1, pair.obj, pair.sub, rule);
+        }
+
+        private void add(int direction, long query, long candidate, Rule rule) {
+            int i = sizes[direction]++;
+            queries[direction][i] = query;
+            candidates[direction][i] = candidate;
+            ids[direction][i] = id(rule);
+            scores[direction][i] = rule.stats.sc;
+            if(sizes[direction] == Settings.SPILL_RECORDS) flush(direction);
+        }
+
+        private void flush(int direction) {
+            if(sizes[direction] == 0) return;
+            writeRun(direction, queries[direction], candidates[direction], ids[direction], scores[direction], sizes[direction]);
+            sizes[direction] = 0;
+        }
+
+        public void flush() {
+            flush(0);
+            flush(1);
+        }
+    }
+
+    static class RunReader implements Comparable<RunReader> {
+        final DataInputStream in;
+        long remaining;
+        long query, candidate;
+        int id;
+        double score;
+
+        RunReader(File run) {
+            DataInputStream stream = null;
+            try {
+                stream = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(run)), 1 << 16));
+                remaining = stream.readLong();
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+            in = stream;
+        }
+
+        boolean advance() {
+            if(remaining == 0) return false;
+            try {
+                query = in.readLong();
+                candidate = in.readLong();
+                id = in.readInt();
+                score = in.readDouble();
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+            remaining--;
+            return true;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public int compareTo(RunReader o) {
+            if(query != o.query) return Long.compare(query, o.query);
+            if(candidate != o.candidate) return Long.compare(candidate, o.candidate);
+            return Integer.compare(id, o.id);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.core.AdjacencyIndex.SparseMatrix;
+import ac.uk.ncl.structure.Atom;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Exact statistics of closed abstract rules from sparse boolean adjacency matrices, see {@link AdjacencyIndex}.
+ * The body pairs of a rule of one atom are the entries of its matrix, and those of a rule of two atoms
+ * are the node unique paths of {@link SparseMatrix#paths}, so both are the endpoints of the groundings of
+ * {@link GraphOps#bodyGroundingCoreAPI}. Matrix products of longer bodies would also count walks revisiting
+ * a node, e.g., x -> y -> x -> z, which are not groundings, so rules with longer bodies are left to the DFS.
+ *
+ * Unlike {@link GraphOps#bodyGroundingCoreAPI}, the groundings are not capped by
+ * {@link ac.uk.ncl.Settings#LEARN_GROUNDINGS}. The product of a rule is dropped once its statistics are set.
+ */
+public class ClosedRuleEvaluator {
+
+    /**
+     * @return the rules with bodies longer than two atoms, which are not evaluated
+     */
+    public static List<Rule> evaluate(GraphDatabaseService graph, Collection<Rule> closedRules, Set<Pair> groundTruth) {
+        long s = System.currentTimeMillis();
+        List<Rule> remaining = new ArrayList<>();
+        int products = 0;
+        for (Rule rule : closedRules) {
+            List<Atom> atoms = rule.bodyAtoms;
+            if(atoms.size() > 2) {
+                remaining.add(rule);
+                continue;
+            }
+            SparseMatrix body = AdjacencyIndex.get(graph, atoms.get(0));
+            if(atoms.size() == 2) {
+                body = body.paths(AdjacencyIndex.get(graph, atoms.get(1)));
+                products++;
+            }
+
+            int correctPrediction = 0;
+            for (Pair pair : groundTruth) {
+                int start = AdjacencyIndex.dense(rule.isFromSubject() ? pair.sub : pair.obj);
+                int end = AdjacencyIndex.dense(rule.isFromSubject() ? pair.obj : pair.sub);
+                if(start != -1 && end != -1 && body.contains(start, end)) correctPrediction++;
+            }
+            rule.setStats(correctPrediction, body.nonZeros(), groundTruth.size());
+        }
+
+        Logger.println(MessageFormat.format("# Matrix Evaluated Closed Rules: {0} | Products: {1} | Left to Grounding: {2} | {3}s"
+                , closedRules.size() - remaining.size(), products, remaining.size(), (System.currentTimeMillis() - s) / 1000d), 2);
+        return remaining;
+    }
+}
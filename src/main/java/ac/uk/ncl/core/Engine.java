@@ -3,10 +3,12 @@ package ac.uk.ncl.core;
 import ac.uk.ncl.Settings;
 import ac.uk.ncl.analysis.Validation;
 import ac.uk.ncl.structure.*;
+import ac.uk.ncl.utils.Deadline;
 import ac.uk.ncl.utils.Helpers;
 import ac.uk.ncl.utils.IO;
 import ac.uk.ncl.utils.Logger;
 import ac.uk.ncl.utils.MathUtils;
+import ac.uk.ncl.utils.Randomness;
 import com.google.common.collect.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -35,6 +37,7 @@ public class Engine {
     protected File ruleFile;
     protected File predictionFile;
     protected File verificationFile;
+    protected File binaryPredictionFile;
     protected int option;
 
     protected List<String> targets = new ArrayList<>();
@@ -56,6 +59,10 @@ public class Engine {
     protected double globalRuleLearningMemoryUsage = 0;
     protected double globalRuleApplicationMemoryUsage = 0;
 
+    protected CandidateSpill spill = null;
+    protected LazyExplanations lazy = null;
+    protected int attempt = 0;
+
     protected Engine(File config) {
         args = Helpers.buildJSONObject( config );
         home = new File(args.getString( "home" ));
@@ -66,6 +73,7 @@ public class Engine {
                 , Helpers.JVMRam()
                 , Helpers.systemRAM()), 1);
         graph = IO.loadGraph(new File( home, args.getString( "graph_file")));
+        InstantiatedRule.setNames(id -> (String) graph.getNodeById(id).getProperty(Settings.NEO4J_IDENTIFIER));
 
         // Optional Settings
         Settings.HEAD_COVERAGE = Helpers.readSetting(args, "head_coverage", Settings.HEAD_COVERAGE);
@@ -76,6 +84,9 @@ public class Engine {
         Settings.VERBOSITY = Helpers.readSetting(args, "verbosity", Settings.VERBOSITY);
         Settings.MIN_INSTANCES = Helpers.readSetting(args, "min_instances", Settings.MIN_INSTANCES);
         Settings.SATURATION = Helpers.readSetting(args, "saturation", Settings.SATURATION);
+        Settings.SWEEP_MAX_EXTENSIONS = Helpers.readSetting(args, "sweep_max_extensions", Settings.SWEEP_MAX_EXTENSIONS);
+        Settings.SKETCH_SATURATION = Helpers.readSetting(args, "sketch_saturation", Settings.SKETCH_SATURATION);
+        Settings.SKETCH_SIZE = Helpers.readSetting(args, "sketch_size", Settings.SKETCH_SIZE);
         Settings.BATCH_SIZE = Helpers.readSetting(args, "batch_size", Settings.BATCH_SIZE);
         Settings.NEO4J_IDENTIFIER = Helpers.readSetting(args, "neo4j_identifier", Settings.NEO4J_IDENTIFIER);
         Settings.VERIFY_RULE_SIZE = Helpers.readSetting(args, "verify_rule_size", Settings.VERIFY_RULE_SIZE);
@@ -97,6 +108,30 @@ public class Engine {
         }
 
         Settings.EVAL_PROTOCOL = Helpers.readSetting(args, "eval_protocol", Settings.EVAL_PROTOCOL);
+        Settings.BINARY_PREDICTIONS = Helpers.readSetting(args, "binary_predictions", Settings.BINARY_PREDICTIONS);
+        Settings.GROUNDING_CACHE_MB = Helpers.readSetting(args, "grounding_cache_mb", Settings.GROUNDING_CACHE_MB);
+        Settings.GROUNDING_TRIE = Helpers.readSetting(args, "grounding_trie", Settings.GROUNDING_TRIE);
+        Settings.GROUNDING_PLANNER = Helpers.readSetting(args, "grounding_planner", Settings.GROUNDING_PLANNER);
+        Settings.CLOSED_RULE_EVALUATOR = Helpers.readSetting(args, "closed_rule_evaluator", Settings.CLOSED_RULE_EVALUATOR);
+        Settings.SAMPLE_PRECISION = Helpers.readSetting(args, "sample_precision", Settings.SAMPLE_PRECISION);
+        Settings.SAMPLE_MIN = Helpers.readSetting(args, "sample_min", Settings.SAMPLE_MIN);
+        Settings.JOIN_GROUNDING = Helpers.readSetting(args, "join_grounding", Settings.JOIN_GROUNDING);
+        Settings.MEET_IN_THE_MIDDLE = Helpers.readSetting(args, "meet_in_the_middle", Settings.MEET_IN_THE_MIDDLE);
+        Settings.MITM_FAN_OUT = Helpers.readSetting(args, "mitm_fan_out", Settings.MITM_FAN_OUT);
+        Settings.RANDOM_WALKER = Helpers.readSetting(args, "random_walker", Settings.RANDOM_WALKER);
+        Settings.RANDOM_SEED = Helpers.readSetting(args, "random_seed", Settings.RANDOM_SEED);
+        Settings.TIME_BUDGET = Helpers.readSetting(args, "time_budget", Settings.TIME_BUDGET);
+        Settings.SAMPLING_SHARE = Helpers.readSetting(args, "sampling_share", Settings.SAMPLING_SHARE);
+        Settings.INSTANTIATION_SHARE = Helpers.readSetting(args, "instantiation_share", Settings.INSTANTIATION_SHARE);
+        Settings.HEAP_BUDGET_MB = Helpers.readSetting(args, "heap_budget_mb", Settings.HEAP_BUDGET_MB);
+        Settings.MEMORY_PRESSURE = Helpers.readSetting(args, "memory_pressure", Settings.MEMORY_PRESSURE);
+        Settings.SPILL_RECORDS = Helpers.readSetting(args, "spill_records", Settings.SPILL_RECORDS);
+        Settings.BUFFERED_PATH_SAMPLER = Helpers.readSetting(args, "buffered_path_sampler", Settings.BUFFERED_PATH_SAMPLER);
+        Settings.PATH_BUDGET = Helpers.readSetting(args, "path_budget", Settings.PATH_BUDGET);
+        Settings.GROUNDING_MILLIS = Helpers.readSetting(args, "grounding_millis", Settings.GROUNDING_MILLIS);
+        Settings.WRITE_ALL_INS_RULES = Helpers.readSetting(args, "write_all_ins_rules", Settings.WRITE_ALL_INS_RULES);
+        Settings.THRESHOLD_ANSWERING = Helpers.readSetting(args, "threshold_answering", Settings.THRESHOLD_ANSWERING);
+        Settings.LAZY_EXPLANATIONS = Helpers.readSetting(args, "lazy_explanations", Settings.LAZY_EXPLANATIONS);
         // Compulsory Settings
         Settings.RANDOMLY_SELECTED_RELATIONS = args.getInt("randomly_selected_relations");
         Settings.LEARN_GROUNDINGS = args.getInt("learn_groundings") == 0 ? Integer.MAX_VALUE : args.getInt("learn_groundings");
@@ -132,6 +167,13 @@ public class Engine {
         GenOps.reset();
     }
 
+    /**
+     * Sets the number of the repeated run of targets, so that repeats draw different samples.
+     */
+    public void setAttempt(int attempt) {
+        this.attempt = attempt;
+    }
+
     public void run(File targetHome) {
         reset();
         trainFile = new File(targetHome, "train.txt");
@@ -139,7 +181,9 @@ public class Engine {
         ruleFile = new File(targetHome,"rules.txt");
         verificationFile = new File(targetHome, "verifications.txt");
         predictionFile = new File(targetHome, "predictions.txt");
+        binaryPredictionFile = new File(targetHome, "predictions.bin");
         Settings.TARGET_RELATION = targetHome.getName().replaceFirst("concept_", "concept:");
+        Randomness.reseed(Settings.TARGET_RELATION, attempt);
         singleRun();
     }
 
@@ -150,7 +194,7 @@ public class Engine {
             try(Transaction tx = graph.beginTx()) {
                 graph.getAllRelationshipTypes().forEach( type -> targets.add(type.name()));
                 if(Settings.RANDOMLY_SELECTED_RELATIONS != 0 && Settings.RANDOMLY_SELECTED_RELATIONS < targets.size()) {
-                    Collections.shuffle(targets);
+                    Randomness.shuffle(targets);
                     targets = targets.subList(0, Settings.RANDOMLY_SELECTED_RELATIONS);
                 }
                 tx.success(); }
@@ -166,6 +210,7 @@ public class Engine {
             GenOps.reset();
 
             Settings.TARGET_RELATION = target;
+            Randomness.reseed(target, attempt);
             if(target.startsWith("concept:")) target = target.replaceFirst("concept:", "concept_");
             File targetHome = new File(resultHome, target);
             trainFile = new File(targetHome, "train.txt");
@@ -180,6 +225,7 @@ public class Engine {
                 ruleFile = new File(targetHome, "rules.txt");
                 verificationFile = new File(targetHome, "verifications.txt");
                 predictionFile = new File(targetHome, "predictions.txt");
+                binaryPredictionFile = new File(targetHome, "predictions.bin");
                 singleRun();
             }
         });
@@ -200,6 +246,8 @@ public class Engine {
                 return;
             }
             totalTargetsLearned++;
+            Deadline.start();
+            MemoryGovernor.start();
 
             Set<Pair> trainPairs = train.stream().map(Instance::toPair).collect(Collectors.toSet());
             Set<Pair> testPairs = test.stream().map(Instance::toPair).collect(Collectors.toSet());
@@ -231,12 +279,16 @@ public class Engine {
             long ruleApplicationTimer = System.currentTimeMillis();
             GraphOps.removeRelationshipAPI(graph, train);
             Multimap<Pair, Rule> candidates = ruleApplication(trainPairs, testPairs, refinedAbstractRules);
-            GraphOps.addRelationshipAPI(graph, train, trainFile);
+            boolean explaining = lazy != null;
+            if(!explaining) GraphOps.addRelationshipAPI(graph, train, trainFile);
             globalRuleApplicationTimer += System.currentTimeMillis() - ruleApplicationTimer;
 
             long ruleEvaluationTimer = System.currentTimeMillis();
             modelEvaluation(testPairs, candidates);
+            if(explaining) GraphOps.addRelationshipAPI(graph, train, trainFile);
             globalRuleEvaluationTimer += System.currentTimeMillis() - ruleEvaluationTimer;
+            Deadline.report();
+            MemoryGovernor.finish();
 
             tx.success();
         }
@@ -253,7 +305,7 @@ public class Engine {
             Traverser traverser = graph.traversalDescription()
                     .uniqueness(Uniqueness.NODE_PATH)
                     .order(BranchingPolicy.PreorderBFS())
-                    .expand(GraphOps.standardRandomWalker(2))
+                    .expand(GraphOps.randomWalker(2))
                     .evaluator(GraphOps.toDepthNoTrivial(Settings.DEPTH, instance))
                     .traverse(startNode, endNode);
             traverser.iterator().forEachRemaining( path -> {
@@ -279,7 +331,7 @@ public class Engine {
             Traverser traverser = graph.traversalDescription()
                     .uniqueness(Uniqueness.NODE_PATH)
                     .order(BranchingPolicy.PreorderBFS())
-                    .expand(GraphOps.standardRandomWalker(50))
+                    .expand(GraphOps.randomWalker(50))
                     .evaluator(GraphOps.toDepthNoTrivial(Settings.DEPTH, instance))
                     .traverse(startNode, endNode);
             traverser.iterator().forEachRemaining( path -> {
@@ -296,52 +348,99 @@ public class Engine {
 
     public Set<Rule> regularPathSampler(List<Instance> train, boolean allRule) {
         long s = System.currentTimeMillis();
-        Set<Rule> previousBatch = new HashSet<>();
-        Set<Rule> currentBatch = new HashSet<>();
+        SaturationSketch batches = new SaturationSketch();
         double saturation = 0d;
         int pathCount = 0;
-        Random rand = new Random();
+        Random rand = Randomness.get();
+        Deadline.enter(Deadline.SAMPLING);
+        if(Settings.BUFFERED_PATH_SAMPLER && PathSampler.supports(graph, Settings.DEPTH))
+            return bufferedPathSampler(train, allRule, s);
 
         do {
             Instance instance = train.get(rand.nextInt(train.size()));
             Traverser traverser = GraphOps.buildStandardTraverser(graph, instance, 50);
             for (Path path : traverser) {
-                if(++pathCount % Settings.BATCH_SIZE == 0) {
-                    Counter overlap = new Counter();
-                    currentBatch.forEach( rule -> { if(previousBatch.contains(rule)) overlap.tick(); });
-                    saturation = (double) overlap.getCount() / currentBatch.size();
-                    previousBatch.addAll(currentBatch);
-                    currentBatch = new HashSet<>();
-                }
+                if(Deadline.expired()) break;
+                if(++pathCount % Settings.BATCH_SIZE == 0) saturation = batches.close();
                 Rule abstractRule = GenOps.abstraction(path, instance);
-                currentBatch.add(abstractRule);
+                batches.add(abstractRule);
                 if (!abstractRule.isClosed()) {
                     if(Settings.USE_HEAD_RULES && allRule)
-                        currentBatch.add(new InstantiatedRule(abstractRule, instance, path, 0));
+                        batches.add(new InstantiatedRule(abstractRule, instance, path, 0));
                     if(Settings.USE_TAIL_RULES && allRule)
-                        currentBatch.add(new InstantiatedRule(abstractRule, instance, path, 1));
+                        batches.add(new InstantiatedRule(abstractRule, instance, path, 1));
                     if(Settings.USE_BOTH_RULES && allRule)
-                        currentBatch.add(new InstantiatedRule(abstractRule, instance, path, 2));
+                        batches.add(new InstantiatedRule(abstractRule, instance, path, 2));
                 }
             }
-        } while(saturation < Settings.SATURATION);
+            if(Settings.MEET_IN_THE_MIDDLE && !Deadline.expired()) {
+                for (LocalPath path : GraphOps.closedPaths(graph, instance, Settings.DEPTH, Settings.MITM_FAN_OUT)) {
+                    if(++pathCount % Settings.BATCH_SIZE == 0) saturation = batches.close();
+                    batches.add(GenOps.abstraction(path, instance));
+                }
+            }
+        } while(saturation < Settings.SATURATION && !Deadline.expired());
+        Deadline.leave(MessageFormat.format("Saturation: {0} | Sampled Paths: {1} | Abstract Rules: {2}"
+                , format.format(saturation), pathCount, GenOps.sampledRules().size()));
 
         Logger.println("# Sampled Paths: " + pathCount, 1);
         Helpers.timerAndMemory(s, "# Abstract Rule Generation", format, runtime);
-        return GenOps.ruleFrequency.keySet();
+        return GenOps.sampledRules();
+    }
+
+    /**
+     * The loop of {@link #regularPathSampler} over the paths sampled by {@link PathSampler}.
+     */
+    private Set<Rule> bufferedPathSampler(List<Instance> train, boolean allRule, long s) {
+        SaturationSketch batches = new SaturationSketch();
+        double saturation = 0d;
+        int pathCount = 0;
+        Random rand = Randomness.get();
+        PathSampler sampler = new PathSampler(graph, Settings.DEPTH, 50);
+
+        do {
+            Instance instance = train.get(rand.nextInt(train.size()));
+            int sampled = sampler.sample(graph, instance);
+            for (int i = 0; i < sampled; i++) {
+                if(Deadline.expired()) break;
+                if(++pathCount % Settings.BATCH_SIZE == 0) saturation = batches.close();
+                Rule abstractRule = sampler.rule(i);
+                batches.add(abstractRule);
+                if (!abstractRule.isClosed()) {
+                    if(Settings.USE_HEAD_RULES && allRule)
+                        batches.add(new InstantiatedRule(abstractRule, instance, sampler.tail(i), 0));
+                    if(Settings.USE_TAIL_RULES && allRule)
+                        batches.add(new InstantiatedRule(abstractRule, instance, sampler.tail(i), 1));
+                    if(Settings.USE_BOTH_RULES && allRule)
+                        batches.add(new InstantiatedRule(abstractRule, instance, sampler.tail(i), 2));
+                }
+            }
+            if(Settings.MEET_IN_THE_MIDDLE && !Deadline.expired()) {
+                for (LocalPath path : GraphOps.closedPaths(graph, instance, Settings.DEPTH, Settings.MITM_FAN_OUT)) {
+                    if(++pathCount % Settings.BATCH_SIZE == 0) saturation = batches.close();
+                    batches.add(GenOps.abstraction(path, instance));
+                }
+            }
+        } while(saturation < Settings.SATURATION && !Deadline.expired());
+        Deadline.leave(MessageFormat.format("Saturation: {0} | Sampled Paths: {1} | Abstract Rules: {2}"
+                , format.format(saturation), pathCount, GenOps.sampledRules().size()));
+
+        Logger.println("# Sampled Paths: " + pathCount, 1);
+        Helpers.timerAndMemory(s, "# Abstract Rule Generation", format, runtime);
+        return GenOps.sampledRules();
     }
 
     public Set<Rule> progressivePathSampler(List<Instance> train) {
         long s = System.currentTimeMillis();
         GenOps.resetRuleCounter();
         Set<Rule> abstractRules = new HashSet<>();
-        Set<Rule> previousBatch = new HashSet<>();
-        Set<Rule> currentBatch = new HashSet<>();
+        SaturationSketch batches = new SaturationSketch();
         double saturation;
         int pathCount = 0;
-        Random rand = new Random();
+        Random rand = Randomness.get();
 
         int depth = 1;
+        Deadline.enter(Deadline.SAMPLING);
         do {
             Instance instance = train.get(rand.nextInt(train.size()));
             Node startNode = graph.getNodeById(instance.startNodeId);
@@ -349,24 +448,19 @@ public class Engine {
             Traverser traverser = graph.traversalDescription()
                     .uniqueness(Uniqueness.NODE_PATH)
                     .order(BranchingPolicy.PreorderBFS())
-                    .expand(GraphOps.standardRandomWalker(2))
+                    .expand(GraphOps.randomWalker(2))
                     .evaluator(GraphOps.toDepthNoTrivial(depth, instance))
                     .traverse(startNode, endNode);
             for (Path path : traverser) {
                 if(++pathCount % Settings.BATCH_SIZE == 0) {
-                    if(!previousBatch.isEmpty()) {
-                        Counter overlap = new Counter();
-                        currentBatch.forEach( rule -> { if(previousBatch.contains(rule)) overlap.tick(); });
-                        saturation = (double) overlap.getCount() / currentBatch.size();
-                        if(saturation > Settings.SATURATION) depth++;
-                    }
-                    previousBatch.addAll(currentBatch);
-                    currentBatch = new HashSet<>();
+                    boolean first = batches.isEmpty();
+                    saturation = batches.close();
+                    if(!first && saturation > Settings.SATURATION) depth++;
                 }
                 Rule abstractRule = GenOps.abstraction(path, instance);
                 GenOps.ruleToAnchorings.put(abstractRule, abstractRule.isFromSubject() ? instance.endNodeId : instance.startNodeId );
                 abstractRules.add(abstractRule);
-                currentBatch.add(abstractRule);
+                batches.add(abstractRule);
                 if (!abstractRule.isClosed()) {
                     Rule headRule = new InstantiatedRule(abstractRule, instance, path, 0);
 //                    Rule tailRule = new InstantiatedRule(abstractRule, instance, path, 1);
@@ -374,12 +468,14 @@ public class Engine {
                     GenOps.deHierarchy.put(abstractRule, headRule);
 //                    GenOps.deHierarchy.put(abstractRule, tailRule);
                     GenOps.deHierarchy.put(abstractRule, bothRule);
-                    currentBatch.add(headRule);
-                    currentBatch.add(bothRule);
+                    batches.add(headRule);
+                    batches.add(bothRule);
                 }
 
             }
-        } while(depth <= Settings.DEPTH);
+        } while(depth <= Settings.DEPTH && !Deadline.expired());
+        Deadline.leave(MessageFormat.format("Reached Depth: {0} | Sampled Paths: {1} | Abstract Rules: {2}"
+                , Math.min(depth, Settings.DEPTH), pathCount, abstractRules.size()));
 
         Logger.println("# Sampled Paths: " + pathCount, 1);
         Helpers.timerAndMemory(s, "# Path Sampler", format, runtime);
@@ -394,25 +490,56 @@ public class Engine {
 
         subRankedAnchorings = subRankedAnchorings.subList(0, Math.min(subRankedAnchorings.size(), Settings.HEAD_CAP));
         objRankedAnchorings = objRankedAnchorings.subList(0, Math.min(objRankedAnchorings.size(), Settings.HEAD_CAP));
+        TargetContext context = new TargetContext(trainPairs, subRankedAnchorings, objRankedAnchorings);
+
+        Deadline.enter(Deadline.INSTANTIATION);
+        MemoryGovernor.watch(MemoryGovernor.INSTANTIATION);
+        GroundingExecutor.takeTruncated();
+        Set<Rule> groundedRules = abstractRules;
+        if(Settings.CLOSED_RULE_EVALUATOR != 0) {
+            List<Rule> closedRules = abstractRules.stream().filter(Rule::isClosed).collect(Collectors.toList());
+            groundedRules = abstractRules.stream().filter(rule -> !rule.isClosed()).collect(Collectors.toSet());
+            if(Settings.CLOSED_RULE_EVALUATOR == 1) groundedRules.addAll(ClosedRuleEvaluator.evaluate(graph, closedRules, trainPairs));
+            else SamplingEvaluator.evaluate(graph, closedRules, trainPairs);
+        }
+        if(Settings.GROUNDING_TRIE) GroundingTrie.prefetch(graph, groundedRules, false);
 
-        Spliterator<Rule> spliterator = abstractRules.spliterator();
+        Collection<Rule> queue = groundedRules;
+        if(Deadline.active()) {
+            List<Rule> frequentFirst = new ArrayList<>(groundedRules);
+            frequentFirst.sort((o1, o2) -> GenOps.ruleFrequency.getOrDefault(o2, 0) - GenOps.ruleFrequency.getOrDefault(o1, 0));
+            queue = frequentFirst;
+        }
+        Spliterator<Rule> spliterator = queue.spliterator();
         List<Spliterator<Rule>> splits = Lists.newArrayList(spliterator);
         splitTasks(3, 0, splits, spliterator); // 8 splits
 
         int threads = splits.size();
         InstantiationTask[] tasks = new InstantiationTask[threads];
         for (int i = 0; i < threads; i++)
-            tasks[i] = new InstantiationTask(graph, splits.get(i), trainPairs, subRankedAnchorings, objRankedAnchorings);
+            tasks[i] = new InstantiationTask(graph, splits.get(i), trainPairs, context);
         try {
             for (InstantiationTask task : tasks) task.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
             System.exit(-1);
         }
-        for (InstantiationTask task : tasks) instantiatedRules.addAll(task.getInstantiatedRules());
+        int processed = 0;
+        for (InstantiationTask task : tasks) {
+            instantiatedRules.addAll(task.getInstantiatedRules());
+            processed += task.processed;
+        }
+        GroundingTrie.clear();
+        MemoryGovernor.unwatch();
+        Deadline.leave(MessageFormat.format("Grounded Abstract Rules: {0}/{1} | Instantiated Rules: {2}"
+                , processed, groundedRules.size(), instantiatedRules.size()));
 
         globalRuleLearningMemoryUsage += Helpers.timerAndMemory(s,"# Instantiated Rule Generation", format, runtime);
         Logger.println("# Refined Instantiated Rule: " + instantiatedRules.size(), 1);
+        long[] pruned = GenOps.getPrunedRules();
+        Logger.println(MessageFormat.format("# Pruned Instantiated Rules: Head = {0} | Tail = {1} | Both = {2}"
+                , pruned[0], pruned[1], pruned[2]), 2);
+        Logger.println("# Rules with Truncated Groundings: " + GroundingExecutor.takeTruncated(), 2);
         return instantiatedRules;
     }
 
@@ -430,30 +557,30 @@ public class Engine {
         Set<Rule> instantiatedRules;
         Spliterator<Rule> spliterator;
         Set<Pair> trainPairs;
-        List<Long> subRankedAnchorings;
-        List<Long> objRankedAnchorings;
+        TargetContext context;
+        Random random = Randomness.split();
+        int processed = 0;
 
-        public InstantiationTask(GraphDatabaseService g, Spliterator<Rule> s, Set<Pair> t, List<Long> sub, List<Long> obj) {
+        public InstantiationTask(GraphDatabaseService g, Spliterator<Rule> s, Set<Pair> t, TargetContext c) {
             super();
             spliterator = s;
             graph = g;
             trainPairs = t;
-            subRankedAnchorings = sub;
-            objRankedAnchorings = obj;
+            context = c;
             instantiatedRules = new HashSet<>();
             start();
         }
 
         @Override
         public void run() {
+            Randomness.bind(random);
             try(Transaction tx = graph.beginTx()) {
                 Consumer<Rule> action = rule -> {
                     switch (Settings.INS_RULE_GENERATOR) {
                         case 0: { instantiatedRules.addAll(((AbstractRule) rule).GenSharedMethod(graph, trainPairs)); break; }
-                        case 1: { instantiatedRules.addAll(((AbstractRule) rule).GenSpecSharedMethod(graph, trainPairs
-                                            , rule.isFromSubject() ? subRankedAnchorings : objRankedAnchorings)); break; }
+                        case 1: { instantiatedRules.addAll(((AbstractRule) rule).GenSpecSharedMethod(graph, context)); break; }
                     } };
-                while(spliterator.tryAdvance(action))
+                while(!Deadline.expired() && spliterator.tryAdvance(action)) processed++;
                 tx.success();
             }
         }
@@ -481,7 +608,7 @@ public class Engine {
         try(Transaction tx = graph.beginTx()) {
             List<Instance> instances = GraphOps.getRelationshipsAPI(graph, Settings.TARGET_RELATION)
                     .stream().map(Instance::new).collect(Collectors.toList());
-            Collections.shuffle(instances);
+            Randomness.shuffle(instances);
             int trainSize = (int) (instances.size() * Settings.SPLIT_RATIO);
             List<Instance> train = instances.subList(0, trainSize);
             List<Instance> test = instances.subList(trainSize, instances.size());
@@ -501,15 +628,26 @@ public class Engine {
         Logger.println("\n# Start Rule Application", 2);
         Multimap<Pair, Rule> candidates = MultimapBuilder.hashKeys().hashSetValues().build();
         long s = System.currentTimeMillis();
-
+        Deadline.enter(Deadline.APPLICATION);
+        MemoryGovernor.watch(MemoryGovernor.APPLICATION);
+        GroundingExecutor.takeTruncated();
+        if(Settings.GROUNDING_TRIE) GroundingTrie.prefetch(graph, abstractRules, true);
+
+        if(Settings.THRESHOLD_ANSWERING) return thresholdApplication(train, test, abstractRules, s);
+        if(Deadline.active()) {
+            abstractRules = new ArrayList<>(abstractRules);
+            abstractRules.sort((o1, o2) -> Double.compare(o2.stats.sc, o1.stats.sc));
+        }
         Spliterator<Rule> spliterator = abstractRules.spliterator();
         List<Spliterator<Rule>> splits = Lists.newArrayList(spliterator);
         splitTasks(3, 0, splits, spliterator);
 
+        if(Settings.SPILL_RECORDS > 0) spill = new CandidateSpill(new File(ruleFile.getParentFile(), "spill"), test);
+        else if(Settings.LAZY_EXPLANATIONS) lazy = new LazyExplanations(graph, abstractRules, test);
         int threads = splits.size();
         RuleApplicationTask[] tasks = new RuleApplicationTask[threads];
         for (int i = 0; i < threads; i++)
-            tasks[i] = new RuleApplicationTask(graph, splits.get(i), train, test);
+            tasks[i] = new RuleApplicationTask(graph, splits.get(i), train, test, spill, lazy);
         try {
             for (RuleApplicationTask task : tasks) {
                 task.join();
@@ -518,9 +656,41 @@ public class Engine {
             e.printStackTrace();
             System.exit(-1);
         }
-        for (RuleApplicationTask task : tasks) candidates.putAll(task.getCandidates());
+        int processed = 0;
+        for (RuleApplicationTask task : tasks) {
+            candidates.putAll(task.getCandidates());
+            processed += task.processed;
+        }
+        GroundingTrie.clear();
+        MemoryGovernor.unwatch();
+        int predicted = lazy != null ? lazy.size() : candidates.keySet().size();
+        Deadline.leave(MessageFormat.format("Applied Abstract Rules: {0}/{1} | Predicted Facts: {2}"
+                , processed, abstractRules.size(), predicted));
+
+        if(spill != null) Logger.println(MessageFormat.format("# Spilled Candidate Records: {0} | Runs: {1}"
+                , spill.getRecords(), spill.getRuns()), 2);
+        else Logger.println("# Predicted Facts: " + predicted, 2);
+        Logger.println("# Rules with Truncated Groundings: " + GroundingExecutor.takeTruncated(), 2);
+        globalRuleApplicationMemoryUsage += Helpers.timerAndMemory(s,"# Rule Application", format, runtime);
+        GroundingCache.report();
+        return candidates;
+    }
 
+    private Multimap<Pair, Rule> thresholdApplication(Set<Pair> train, Set<Pair> test, List<Rule> abstractRules, long s) {
+        ThresholdAnswering answering = new ThresholdAnswering(graph, abstractRules, train, test);
+        Multimap<Pair, Rule> candidates = answering.answer();
+        GroundingTrie.clear();
+        MemoryGovernor.unwatch();
+        Deadline.leave(MessageFormat.format("Answered Queries: {0} | Decided Early: {1} | Skipped: {2} | Predicted Facts: {3}"
+                , answering.getAnswered(), answering.getDecided(), answering.getSkipped(), candidates.keySet().size()));
+
+        Logger.println(MessageFormat.format("# Answered Queries: {0} | Decided Early: {1} | Rules per Query: {2} of {3}"
+                , answering.getAnswered(), answering.getDecided(), format.format(answering.getAverageRules())
+                , answering.getRules()), 2);
+        if(answering.getSkipped() > 0)
+            Logger.println("# Queries Skipped after the Deadline: " + answering.getSkipped(), 1);
         Logger.println("# Predicted Facts: " + candidates.keySet().size(), 2);
+        Logger.println("# Rules with Truncated Groundings: " + GroundingExecutor.takeTruncated(), 2);
         globalRuleApplicationMemoryUsage += Helpers.timerAndMemory(s,"# Rule Application", format, runtime);
         return candidates;
     }
@@ -531,20 +701,35 @@ public class Engine {
         Set<Pair> train;
         Set<Pair> test;
         Multimap<Pair, Rule> candidates;
+        CandidateSpill.Buffer buffer;
+        LazyExplanations.Buffer scores;
+        Random random = Randomness.split();
+        int processed = 0;
 
-        RuleApplicationTask(GraphDatabaseService g, Spliterator<Rule> r, Set<Pair> tr, Set<Pair> te) {
+        RuleApplicationTask(GraphDatabaseService g, Spliterator<Rule> r, Set<Pair> tr, Set<Pair> te, CandidateSpill spill
+                , LazyExplanations lazy) {
             super();
             graph = g; spliterator = r; train = tr; test = te;
             candidates = MultimapBuilder.hashKeys().hashSetValues().build();
+            buffer = spill == null ? null : spill.buffer();
+            scores = lazy == null ? null : lazy.buffer();
             start();
         }
 
         @Override
         public void run() {
+            Randomness.bind(random);
             try(Transaction tx = graph.beginTx()) {
-                Consumer<Rule> action = (rule) -> candidates.putAll(((AbstractRule) rule).applyRule(graph, train, test));
+                Consumer<Rule> action = (rule) -> {
+                    Multimap<Pair, Rule> predictions = ((AbstractRule) rule).applyRule(graph, train, test);
+                    if(buffer != null) predictions.entries().forEach(entry -> buffer.add(entry.getKey(), entry.getValue()));
+                    else if(scores != null) predictions.entries().forEach(entry -> scores.add(entry.getKey(), entry.getValue()));
+                    else candidates.putAll(predictions);
+                };
                 if(spliterator != null)
-                    while(spliterator.tryAdvance(action))
+                    while(!Deadline.expired() && spliterator.tryAdvance(action)) processed++;
+                if(buffer != null) buffer.flush();
+                if(scores != null) scores.flush();
                 tx.success();
             }
         }
@@ -557,26 +742,107 @@ public class Engine {
     public Multimap<Pair, Rule> modelEvaluation(Set<Pair> test, Multimap<Pair, Rule> candidates) {
         Logger.println("\n# Start Evaluation", 2);
         long a = System.currentTimeMillis();
+        if(spill != null) return spilledEvaluation(test, a);
+        Set<Pair> predicted = lazy != null ? lazy.rank() : candidates.keySet();
 
         List<Map<Long, Set<Pair>>> queries = new ArrayList<>();
         if(Settings.EVAL_PROTOCOL.equals("GPFL"))
-            queries = createGPFLQueries(test, candidates.keySet());
+            queries = createGPFLQueries(test, predicted);
         else if(Settings.EVAL_PROTOCOL.equals("TransE"))
-            queries = createTransEProtocol(test, candidates.keySet());
+            queries = createTransEProtocol(test, predicted);
         else if(Settings.EVAL_PROTOCOL.equals("Minerva"))
-            queries = createMinervaQueries(test, candidates.keySet());
+            queries = createMinervaQueries(test, predicted);
 
         List<Map<Long, List<Pair>>> rankedMap = null;
 
         try {
-            rankedMap = evaluateQueriesParallel(queries, candidates, test);
+            rankedMap = evaluateQueriesParallel(queries, lazy != null ? null : candidates, test);
         } catch (InterruptedException e) {
             e.printStackTrace();
             System.exit(1);
         }
 
-        IO.writePredictedFacts(graph, predictionFile, rankedMap);
-        Multimap<Pair, Rule> verifications = IO.writeVerifications(graph, verificationFile, rankedMap, candidates);
+        if(lazy != null) {
+            candidates = lazy.explain(rankedMap);
+            Logger.println(MessageFormat.format("# Explained Predictions: {0} | Grounding Checks: {1}"
+                    , candidates.keySet().size(), lazy.getChecks()), 2);
+            lazy = null;
+        }
+
+        Multimap<Pair, Rule> verifications;
+        if(Settings.BINARY_PREDICTIONS)
+            verifications = IO.writeBinaryPredictions(graph, binaryPredictionFile, rankedMap, candidates);
+        else {
+            IO.writePredictedFacts(graph, predictionFile, rankedMap);
+            verifications = IO.writeVerifications(graph, verificationFile, rankedMap, candidates);
+        }
+        Helpers.timerAndMemory(a, "# Rule Evaluation", format, runtime);
+        return verifications;
+    }
+
+    /**
+     * Ranks the spilled candidates one query at a time. Metrics are computed on the full ranking,
+     * while only the leading predictions of a query and their top rules are kept for the output files.
+     */
+    protected Multimap<Pair, Rule> spilledEvaluation(Set<Pair> test, long a) {
+        Map<Long, Integer> subPositives = new HashMap<>();
+        Map<Long, Integer> objPositives = new HashMap<>();
+        test.forEach( pair -> {
+            subPositives.merge(pair.sub, 1, Integer::sum);
+            objPositives.merge(pair.obj, 1, Integer::sum);
+        });
+        if(Settings.EVAL_PROTOCOL.equals("TransE")) {
+            subPositives.forEach((key, value) -> GenOps.subQueryFrequency.merge(key, value, Integer::sum));
+            objPositives.forEach((key, value) -> GenOps.objQueryFrequency.merge(key, value, Integer::sum));
+        }
+
+        List<Map<Long, List<Pair>>> rankedMap = Lists.newArrayList(new HashMap<>(), new HashMap<>());
+        Multimap<Pair, Rule> topCandidates = MultimapBuilder.hashKeys().hashSetValues().build();
+        List<Double> hits1 = new ArrayList<>();
+        List<Double> hits3 = new ArrayList<>();
+        List<Double> hits10 = new ArrayList<>();
+        List<Double> hits100 = new ArrayList<>();
+        List<Double> mrr = new ArrayList<>();
+        int kept = Math.max(Settings.TOP_K, Settings.VERIFY_PREDICTION_SIZE);
+
+        try(Transaction tx = graph.beginTx()) {
+            for (int i = 0; i < 2; i++) {
+                final int option = i;
+                Map<Long, Integer> positives = option == 0 ? subPositives : objPositives;
+                spill.forEachQuery(option, (query, pairs, ruleIds) -> {
+                    List<Pair> ranked = sortTies(pairs.toArray(new Pair[0]), 0);
+                    int repeat = Settings.EVAL_PROTOCOL.equals("TransE") ? positives.get(query) : 1;
+                    for (int j = 0; j < repeat; j++) {
+                        hits1.add(hitAt(test, ranked, 1, positives.get(query)));
+                        hits3.add(hitAt(test, ranked, 3, positives.get(query)));
+                        hits10.add(hitAt(test, ranked, 10, positives.get(query)));
+                        hits100.add(hitAt(test, ranked, 100, positives.get(query)));
+                    }
+                    mrr.add(mrr(test, ranked));
+
+                    List<Pair> top = new ArrayList<>(ranked.subList(0, Math.min(kept, ranked.size())));
+                    rankedMap.get(option).put(query, top);
+                    for (Pair pair : top) {
+                        int[] ids = ruleIds.get(pair);
+                        for (int k = 0; k < Math.min(ids.length, Settings.VERIFY_RULE_SIZE); k++)
+                            topCandidates.put(pair, spill.rule(ids[k]));
+                    }
+                });
+            }
+            tx.success();
+        }
+        spill.close();
+        spill = null;
+
+        recordMetrics(MathUtils.listMean(hits1), MathUtils.listMean(hits3), MathUtils.listMean(hits10)
+                , MathUtils.listMean(hits100), MathUtils.listMean(mrr));
+        Multimap<Pair, Rule> verifications;
+        if(Settings.BINARY_PREDICTIONS)
+            verifications = IO.writeBinaryPredictions(graph, binaryPredictionFile, rankedMap, topCandidates);
+        else {
+            IO.writePredictedFacts(graph, predictionFile, rankedMap);
+            verifications = IO.writeVerifications(graph, verificationFile, rankedMap, topCandidates);
+        }
         Helpers.timerAndMemory(a, "# Rule Evaluation", format, runtime);
         return verifications;
     }
@@ -715,6 +981,10 @@ public class Engine {
         return rankedMap;
     }
 
+    /**
+     * Ranks the candidates of the queries in parallel. Metrics are the mean of the per-thread means of the
+     * rankers, unlike {@link #spilledEvaluation} which averages over queries.
+     */
     protected List<Map<Long, List<Pair>>> evaluateQueriesParallel(List<Map<Long, Set<Pair>>> queryMap
             , Multimap<Pair, Rule> candidates
             , Set<Pair> testPairs) throws InterruptedException {
@@ -750,39 +1020,55 @@ public class Engine {
             tx.success();
         }
 
-        double avgHits1 = MathUtils.listMean(hits1);
-        globalHits1.add(avgHits1);
-        double avgHits3 = MathUtils.listMean(hits3);
-        globalHits3.add(avgHits3);
-        double avgHits10 = MathUtils.listMean(hits10);
-        globalHits10.add(avgHits10);
-        double avgHits100 = MathUtils.listMean(hits100);
-        globalHits100.add(avgHits100);
-        double avgMRR = MathUtils.listMean(mrr);
+        recordMetrics(MathUtils.listMean(hits1), MathUtils.listMean(hits3), MathUtils.listMean(hits10)
+                , MathUtils.listMean(hits100), MathUtils.listMean(mrr));
+        return rankedMap;
+    }
+
+    protected void recordMetrics(double avgHits1, double avgHits3, double avgHits10, double avgHits100, double avgMRR) {
+        if(reported(1)) globalHits1.add(avgHits1);
+        if(reported(3)) globalHits3.add(avgHits3);
+        if(reported(10)) globalHits10.add(avgHits10);
+        if(reported(100)) globalHits100.add(avgHits100);
         globalMRR.add(avgMRR);
 
-        Logger.println("hits@1 = " + avgHits1,2);
-        Logger.println("hits@3 = " + avgHits3,2);
-        Logger.println("hits@10 = " + avgHits10,2);
-        Logger.println("hits@100 = " + avgHits100,2);
-        Logger.println("MRR = " + avgMRR,2);
+        if(reported(1)) Logger.println("hits@1 = " + avgHits1,2);
+        if(reported(3)) Logger.println("hits@3 = " + avgHits3,2);
+        if(reported(10)) Logger.println("hits@10 = " + avgHits10,2);
+        if(reported(100)) Logger.println("hits@100 = " + avgHits100,2);
+        Logger.println((Settings.THRESHOLD_ANSWERING ? "MRR@" + Settings.TOP_K : "MRR") + " = " + avgMRR,2);
 
         if(Settings.VALIDATE_EXP1 || Settings.VALIDATE_EXP2) {
             Validation.record(format.format(avgMRR) + "\n");
             Validation.currentMRR = Double.parseDouble(format.format(avgMRR));
         }
+    }
 
-        return rankedMap;
+    /**
+     * If hits@k is reported. In threshold answering only the top TOP_K of a query are exact, so
+     * hits@k is only reported for k <= TOP_K, and MRR is truncated at TOP_K, see {@link ThresholdAnswering}.
+     */
+    protected boolean reported(int k) {
+        return !Settings.THRESHOLD_ANSWERING || k <= Settings.TOP_K;
+    }
+
+    /**
+     * The ranking of a query the metrics are computed on, cut at TOP_K in threshold answering.
+     */
+    protected List<Pair> evaluated(List<Pair> ranked) {
+        if(!Settings.THRESHOLD_ANSWERING || ranked.size() <= Settings.TOP_K) return ranked;
+        return ranked.subList(0, Settings.TOP_K);
     }
 
     protected void reportGlobalResults() {
         Logger.println("\n# Global Stats: ", 1);
         Logger.println("Learned Targets = " + totalTargetsLearned, 1);
-        Logger.println("Global hits@1 = " + MathUtils.listMean(globalHits1), 1);
-        Logger.println("Global hits@3 = " + MathUtils.listMean(globalHits3), 1);
-        Logger.println("Global hits@10 = " + MathUtils.listMean(globalHits10), 1);
-        Logger.println("Global hits@100 = " + MathUtils.listMean(globalHits100), 1);
-        Logger.println("Global MRR = " + MathUtils.listMean(globalMRR), 1);
+        if(reported(1)) Logger.println("Global hits@1 = " + MathUtils.listMean(globalHits1), 1);
+        if(reported(3)) Logger.println("Global hits@3 = " + MathUtils.listMean(globalHits3), 1);
+        if(reported(10)) Logger.println("Global hits@10 = " + MathUtils.listMean(globalHits10), 1);
+        if(reported(100)) Logger.println("Global hits@100 = " + MathUtils.listMean(globalHits100), 1);
+        Logger.println((Settings.THRESHOLD_ANSWERING ? "Global MRR@" + Settings.TOP_K : "Global MRR")
+                + " = " + MathUtils.listMean(globalMRR), 1);
 
         Logger.println("\nRule Learning Runtime = " + format.format(globalRuleLearningTimer / 1000d) + "s", 1);
         Logger.println("Rule Application Runtime = " + format.format(globalRuleApplicationTimer / 1000d) + "s", 1);
@@ -839,7 +1125,7 @@ public class Engine {
                 if(Settings.EVAL_PROTOCOL.equals("TransE")) repeat = option == 0
                         ? GenOps.subQueryFrequency.get(entry.getKey())
                         : GenOps.objQueryFrequency.get(entry.getKey());
-                double hit = hitAt(testPairs, entry.getValue(), n, nameToPositiveIns.get(entry.getKey()));
+                double hit = hitAt(testPairs, evaluated(entry.getValue()), n, nameToPositiveIns.get(entry.getKey()));
                 for (int i = 0; i < repeat; i++) hits.add(hit);
             }
             return MathUtils.listMean(hits);
@@ -849,7 +1135,7 @@ public class Engine {
             double[] mrr = new double[rankedMap.entrySet().size()];
             int count = 0;
             for (Map.Entry<Long, List<Pair>> entry : rankedMap.entrySet()) {
-                mrr[count++] = mrr(testPairs, entry.getValue());
+                mrr[count++] = mrr(testPairs, evaluated(entry.getValue()));
             }
             return MathUtils.arrayMean(mrr);
         }
@@ -879,7 +1165,12 @@ public class Engine {
         return (double) count / totalPositiveIns;
     }
 
+    /**
+     * Ranks the candidates by the confidences of their rules. Without the rules, i.e., pairToRules = null,
+     * the candidates are ranked by the scores set by {@link LazyExplanations#rank()}.
+     */
     protected List<Pair> rankCandidates(Set<Pair> candidates, Multimap<Pair, Rule> pairToRules) {
+        if(pairToRules == null) return sortTies(candidates.toArray(new Pair[0]), 0);
         for (Pair pair : candidates) {
             Double[] scores = new Double[pairToRules.get(pair).size()];
             int count = 0;
@@ -1,6 +1,8 @@
 package ac.uk.ncl.core;
 
+import ac.uk.ncl.Settings;
 import ac.uk.ncl.structure.*;
+import ac.uk.ncl.utils.SpaceSaving;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
@@ -9,15 +11,18 @@ import org.neo4j.graphdb.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class GenOps {
     public static Multimap<Rule, Rule> deHierarchy = MultimapBuilder.hashKeys().hashSetValues().build();
     public static Map<Rule, Integer> ruleFrequency = new HashMap<>();
+    private static SpaceSaving<Rule> openRuleFrequency = null; // open rules counted with SKETCH_SATURATION
     public static Multimap<Rule, Long> ruleToAnchorings = MultimapBuilder.hashKeys().hashSetValues().build();
 
     private static int globalInsRuleCounter = 0;
     public static int ruleCounter = 0; //Counts the number of generated abstract rules
     private static int predictionCounter = 0;
+    private static long[] prunedRules = new long[3]; // Pruned head, tail and both anchored rules
 
     public static Map<Long, Integer> subQueryFrequency = new HashMap<>();
     public static Map<Long, Integer> objQueryFrequency = new HashMap<>();
@@ -38,6 +43,14 @@ public class GenOps {
         return predictionCounter;
     }
 
+    public static synchronized void tickPrunedRules(int type, int count) {
+        prunedRules[type] += count;
+    }
+
+    public static synchronized long[] getPrunedRules() {
+        return prunedRules.clone();
+    }
+
     @FunctionalInterface
     public interface Operator {
         Rule apply(Atom head, List<Atom> bodyAtoms);
@@ -46,12 +59,14 @@ public class GenOps {
     public static void reset() {
         deHierarchy = MultimapBuilder.hashKeys().hashSetValues().build();
         ruleFrequency = new HashMap<>();
+        openRuleFrequency = null;
         subQueryFrequency = new HashMap<>();
         objQueryFrequency = new HashMap<>();
         ruleToAnchorings = MultimapBuilder.hashKeys().hashSetValues().build();
         globalInsRuleCounter = 0;
         ruleCounter = 0;
         predictionCounter = 0;
+        prunedRules = new long[3];
     }
 
     public static void resetRuleCounter() {
@@ -59,17 +74,41 @@ public class GenOps {
     }
 
     public static Rule abstraction(Path path, Instance instance) {
-        List<Atom> bodyAtoms = buildBodyAtoms(path);
-        Atom head = new Atom(instance);
-        Rule rule = new AbstractRule(head, bodyAtoms);
+        return countAbstraction(new AbstractRule(new Atom(instance), buildBodyAtoms(path)));
+    }
+
+    public static Rule abstraction(LocalPath path, Instance instance) {
+        List<Atom> bodyAtoms = Lists.newArrayList();
+        for( int i = 0; i < path.length(); i++ )
+            bodyAtoms.add( new Atom( path.nodes.get( i ), path.relationships.get( i ) ) );
+        return countAbstraction(new AbstractRule(new Atom(instance), bodyAtoms));
+    }
 
-        if(ruleFrequency.containsKey(rule)) ruleFrequency.put(rule, ruleFrequency.get(rule) + 1);
+    static Rule countAbstraction(Rule rule) {
+        if(Settings.SKETCH_SATURATION && !rule.isClosed()) {
+            if(openRuleFrequency == null) openRuleFrequency = new SpaceSaving<>(Settings.TOP_ABS_RULES == Integer.MAX_VALUE
+                    ? Settings.SKETCH_SIZE : (int) Math.min(Integer.MAX_VALUE, 2L * Settings.TOP_ABS_RULES));
+            openRuleFrequency.offer(rule);
+        }
+        else if(ruleFrequency.containsKey(rule)) ruleFrequency.put(rule, ruleFrequency.get(rule) + 1);
         else ruleFrequency.put(rule, 1);
         ruleCounter++;
 
         return rule;
     }
 
+    /**
+     * The rules counted by path sampling, with the open rules retained by the Space-Saving counter
+     * moved into {@link #ruleFrequency} with SKETCH_SATURATION.
+     */
+    public static Set<Rule> sampledRules() {
+        if(openRuleFrequency != null) {
+            openRuleFrequency.counts().forEach((rule, count) -> ruleFrequency.merge(rule, count, Integer::sum));
+            openRuleFrequency = null;
+        }
+        return ruleFrequency.keySet();
+    }
+
     public static Rule apply(Path path, Instance instance, Operator operator) {
         Rule rule;
         List<Atom> bodyAtoms = buildBodyAtoms( path );
@@ -4,7 +4,9 @@ import ac.uk.ncl.Settings;
 import ac.uk.ncl.structure.*;
 import ac.uk.ncl.utils.Helpers;
 import ac.uk.ncl.utils.IO;
+import ac.uk.ncl.utils.LongPairSet;
 import ac.uk.ncl.utils.MathUtils;
+import ac.uk.ncl.utils.Randomness;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
@@ -43,8 +45,8 @@ public class GraphOps {
                         if(((InstantiatedRule) rule).getType() == 2) ruleType = "Both_Anchored_Rule";
                     }
                     Relationship relationship = startNode.createRelationshipTo(endNode, RelationshipType.withName(ruleType));
-                    relationship.setProperty("headAtom", rule.head.toInRuleString());
-                    relationship.setProperty("bodyAtoms", rule.bodyAtoms.stream().map(Atom::toInRuleString).toArray(String[]::new));
+                    relationship.setProperty("headAtom", rule.getHead().toInRuleString());
+                    relationship.setProperty("bodyAtoms", rule.getBody().stream().map(Atom::toInRuleString).toArray(String[]::new));
                     relationship.setProperty("Confidence", format.format(rule.stats.sc));
                     relationship.setProperty("Support", rule.stats.support);
                     relationship.setProperty("Predictions", rule.stats.totalPredictions);
@@ -136,6 +138,9 @@ public class GraphOps {
             instances.forEach( instance -> instance.relationship.delete() );
             tx.success();
         }
+        GroundingCache.mask(instances, true);
+        NeighbourSampler.invalidate();
+        instances.stream().map(instance -> instance.type.name()).distinct().forEach(AdjacencyIndex::invalidate);
     }
 
     public static void removeRelationshipQuery(GraphDatabaseService graph, List<Instance> instances) {
@@ -164,6 +169,9 @@ public class GraphOps {
             });
             tx.success();
         }
+        GroundingCache.mask(instances, false);
+        NeighbourSampler.invalidate();
+        instances.stream().map(instance -> instance.type.name()).distinct().forEach(AdjacencyIndex::invalidate);
         IO.writeInstance(graph, out, newInstances);
         return newInstances;
     }
@@ -234,52 +242,54 @@ public class GraphOps {
         return results;
     }
 
-    public static Set<Pair> GPFLPathToPairAdaptor(Set<LocalPath> paths) {
-        return paths.stream().map( path -> new Pair(path.getStartNode().getId(), path.getEndNode().getId())).collect(Collectors.toSet());
-    }
-
-    public static Set<LocalPath> bodyGroundingCoreAPI(GraphDatabaseService graph, Rule pattern, boolean application) {
-        Set<LocalPath> paths = new HashSet<>();
-        Flag stop = new Flag();
-        Counter attempts = new Counter();
-
-        boolean checkTail = false;
-        if(pattern instanceof InstantiatedRule) {
-            int type =  ((InstantiatedRule) pattern).getType();
-            if(type == 1 || type == 2) checkTail = true;
+    public static Set<Pair> bodyGroundings(GraphDatabaseService graph, Rule pattern, boolean application) {
+        Set<Pair> prefetched = GroundingTrie.take(pattern, application);
+        if(prefetched != null) return prefetched;
+        int cap = application ? Settings.APPLY_GROUNDINGS : Settings.LEARN_GROUNDINGS;
+        if(cap == 0) cap = Integer.MAX_VALUE;
+        boolean join = Settings.JOIN_GROUNDING && checksTail(pattern);
+        if(!GroundingCache.enabled() && !Settings.GROUNDING_PLANNER && !join)
+            return bodyGroundingCoreAPI(graph, pattern, application).toPairs();
+
+        Set<Pair> groundings = GroundingCache.enabled() ? GroundingCache.get(pattern, cap) : null;
+        if(groundings != null) return groundings;
+
+        if(join) {
+            JoinGrounding.Join grounded = JoinGrounding.ground(graph, pattern, cap);
+            if(GroundingCache.enabled() && grounded.cacheable())
+                GroundingCache.put(pattern, cap, true, grounded.endpoints.endpoints, grounded.endpoints.size());
+            return grounded.toPairs();
         }
 
-        Set<Relationship> currentRelationships = getRelationshipsAPI(graph, pattern.bodyAtoms.get(0).getBasePredicate());
-        for (Relationship relationship : currentRelationships) {
-            attempts.tick();
-            LocalPath currentPath = new LocalPath(relationship, pattern.bodyAtoms.get(0).direction);
-            DFSGrounding(pattern, currentPath, paths, stop, checkTail, attempts, application);
-            if(stop.flag) break;
+        if(Settings.GROUNDING_PLANNER) {
+            GroundingPlanner.Walk walk = GroundingPlanner.ground(graph, pattern, checksTail(pattern), cap);
+            if(GroundingCache.enabled() && walk.cacheable())
+                GroundingCache.put(pattern, cap, !walk.stopped, walk.endpoints.endpoints, walk.endpoints.size());
+            return walk.toPairs();
         }
+        GroundingExecutor executor = groundingExecutor(graph, pattern, application);
+        if(!executor.budget.truncated)
+            GroundingCache.put(pattern, cap, !executor.stopped, executor.endpoints.endpoints, executor.endpoints.size());
+        return executor.endpoints.toPairs();
+    }
 
-        return paths;
+    /**
+     * Tail anchored rules only accept groundings ending at the tail constant.
+     */
+    public static boolean checksTail(Rule pattern) {
+        if(!(pattern instanceof InstantiatedRule)) return false;
+        int type = ((InstantiatedRule) pattern).getType();
+        return type == 1 || type == 2;
     }
 
-    private static void DFSGrounding(Rule pattern, LocalPath path, Set<LocalPath> paths, Flag stop, boolean checkTail, Counter attempts, boolean application) {
-        if(path.length() >= pattern.bodyLength()) {
-            if(checkTail && pattern.getTail() != path.getEndNode().getId()) return;
-            paths.add(path);
-            int grounding_cap = application ? Settings.APPLY_GROUNDINGS : Settings.LEARN_GROUNDINGS;
-            if(grounding_cap == 0) grounding_cap = Integer.MAX_VALUE;
-            if(paths.size() >= grounding_cap || attempts.count >= Settings.GROUNDING_ATTEMPTS) stop.flag = true;
-        }
-        else {
-            Direction nextDirection = pattern.bodyAtoms.get(path.length()).direction;
-            RelationshipType nextType = pattern.bodyAtoms.get(path.length()).type;
-            for (Relationship relationship : path.getEndNode().getRelationships(nextDirection, nextType)) {
-                attempts.tick();
-                if(!path.nodes.contains(relationship.getOtherNode(path.getEndNode()))) {
-                    LocalPath currentPath = new LocalPath(path, relationship);
-                    DFSGrounding(pattern, currentPath, paths, stop, checkTail, attempts, application);
-                    if (stop.flag) break;
-                }
-            }
-        }
+    public static LongPairSet bodyGroundingCoreAPI(GraphDatabaseService graph, Rule pattern, boolean application) {
+        return groundingExecutor(graph, pattern, application).endpoints;
+    }
+
+    private static GroundingExecutor groundingExecutor(GraphDatabaseService graph, Rule pattern, boolean application) {
+        int cap = application ? Settings.APPLY_GROUNDINGS : Settings.LEARN_GROUNDINGS;
+        if(cap == 0) cap = Integer.MAX_VALUE;
+        return new GroundingExecutor(pattern, checksTail(pattern) ? pattern.getTail() : -1, cap).run(graph, pattern);
     }
 
     public static Traverser buildStandardTraverser(GraphDatabaseService graph, Instance instance, int randomWalkers){
@@ -290,7 +300,7 @@ public class GraphOps {
             traverser = graph.traversalDescription()
                     .uniqueness(Uniqueness.NODE_PATH)
                     .order(BranchingPolicy.PreorderBFS())
-                    .expand(standardRandomWalker(randomWalkers))
+                    .expand(randomWalker(randomWalkers))
                     .evaluator(toDepthNoTrivial(Settings.DEPTH, instance))
                     .traverse(startNode, endNode);
             tx.success();
@@ -322,7 +332,7 @@ public class GraphOps {
         Traverser traverser = graph.traversalDescription()
                 .uniqueness(Uniqueness.NODE_PATH)
                 .order(BranchOrderingPolicies.PREORDER_DEPTH_FIRST)
-                .expand(standardRandomWalker(randomWalkers))
+                .expand(randomWalker(randomWalkers))
                 .evaluator(toDepthNoTrivial(depth, instance))
                 .traverse(startNode, endNode);
         return traverser.stream().collect(Collectors.toList());
@@ -363,7 +373,7 @@ public class GraphOps {
         List<Relationship> relationships = StreamSupport.stream(endNode.getRelationships().spliterator(), false)
                 .filter(evaluator).collect(Collectors.toList());
 
-        Random rand = new Random();
+        Random rand = Randomness.get();
         List<Relationship> selected = new ArrayList<>();
         if(relationships.size() > randomWalkers) {
             while (selected.size() < randomWalkers) {
@@ -380,6 +390,107 @@ public class GraphOps {
         }
     }
 
+    /**
+     * Enumerates the closed paths of an instance up to the depth by meeting in the middle: simple
+     * paths of up to ceil(depth/2) atoms are expanded from the start node and of up to floor(depth/2)
+     * atoms from the end node, the backward halves are hashed by their frontier node and joined
+     * with the forward halves. A closed path of length L is split uniquely into a forward half
+     * of ceil(L/2) and a backward half of floor(L/2) atoms, so every path is produced once.
+     * As in {@link #toDepthNoTrivial}, the instance edge itself is excluded and the inverse edge
+     * is kept. At most fanOut relationships are followed from every node, = -1 for all.
+     */
+    public static List<LocalPath> closedPaths(GraphDatabaseService graph, Instance instance, int depth, int fanOut) {
+        List<LocalPath> results = new ArrayList<>();
+        Node startNode = graph.getNodeById(instance.startNodeId);
+        Node endNode = graph.getNodeById(instance.endNodeId);
+        int forwardDepth = (depth + 1) / 2, backwardDepth = depth / 2;
+
+        List<List<LocalPath>> forward = halfPaths(startNode, endNode, forwardDepth, fanOut, instance.relationship);
+        List<List<LocalPath>> backward = halfPaths(endNode, startNode, backwardDepth, fanOut, instance.relationship);
+        List<Map<Long, List<LocalPath>>> frontiers = new ArrayList<>();
+        for (List<LocalPath> halves : backward) {
+            Map<Long, List<LocalPath>> frontier = new HashMap<>();
+            for (LocalPath half : halves) frontier.computeIfAbsent(half.getEndNode().getId(), k -> new ArrayList<>()).add(half);
+            frontiers.add(frontier);
+        }
+
+        for (int length = 1; length <= depth; length++) {
+            int forwardLength = (length + 1) / 2, backwardLength = length / 2;
+            for (LocalPath half : forward.get(forwardLength)) {
+                if(backwardLength == 0) {
+                    if(half.getEndNode().getId() != instance.endNodeId) continue;
+                    Relationship relationship = half.relationships.get(0);
+                    if(relationship.getType().equals(instance.type)
+                            && relationship.getStartNode().getId() == instance.startNodeId) continue;
+                    results.add(half);
+                    continue;
+                }
+                if(half.nodes.contains(endNode)) continue;
+                for (LocalPath other : frontiers.get(backwardLength).getOrDefault(half.getEndNode().getId(), Collections.emptyList())) {
+                    if(!disjoint(half, other)) continue;
+                    LocalPath path = half;
+                    for (int i = other.length() - 1; i >= 0; i--) path = new LocalPath(path, other.relationships.get(i));
+                    results.add(path);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Simple paths from the source avoiding the other endpoint except as their last node,
+     * grouped by length from 0 to depth.
+     */
+    private static List<List<LocalPath>> halfPaths(Node source, Node other, int depth, int fanOut, Relationship seed) {
+        List<List<LocalPath>> halves = new ArrayList<>();
+        halves.add(Collections.singletonList(new LocalPath(source, seed)));
+        for (int length = 1; length <= depth; length++) {
+            List<LocalPath> current = new ArrayList<>();
+            for (LocalPath path : halves.get(length - 1)) {
+                Node end = path.getEndNode();
+                if(length > 1 && end.equals(other)) continue;
+                for (Relationship relationship : sampleRelationships(end, fanOut)) {
+                    if(!path.nodes.contains(relationship.getOtherNode(end)))
+                        current.add(new LocalPath(path, relationship));
+                }
+            }
+            halves.add(current);
+        }
+        return halves;
+    }
+
+    private static boolean disjoint(LocalPath forward, LocalPath backward) {
+        for (int i = 0; i < backward.nodes.size() - 1; i++)
+            if(forward.nodes.contains(backward.nodes.get(i))) return false;
+        return true;
+    }
+
+    /**
+     * Selects k relationships of the node at random, or all of them when the node has no
+     * more than k relationships or k = -1.
+     */
+    public static Iterable<Relationship> sampleRelationships(Node node, int k) {
+        return NeighbourSampler.sample(node, k);
+    }
+
+    /**
+     * The random walker selected by {@link Settings#RANDOM_WALKER}.
+     */
+    public static PathExpander randomWalker(int randomWalkers) {
+        if(Settings.RANDOM_WALKER == 0) return standardRandomWalker(randomWalkers);
+        return new PathExpander() {
+            @Override
+            public Iterable<Relationship> expand(Path path, BranchState state) {
+                return NeighbourSampler.sample(path.endNode(), randomWalkers);
+            }
+
+            @Override
+            public PathExpander reverse() {
+                return null;
+            }
+        };
+    }
+
     public static PathExpander standardRandomWalker(int randomWalkers) {
         return new PathExpander() {
             @Override
@@ -388,7 +499,7 @@ public class GraphOps {
                 List<Relationship> candidates = Lists.newArrayList( path.endNode().getRelationships() );
                 if ( candidates.size() < randomWalkers || randomWalkers == -1 ) return candidates;
 
-                Random rand = new Random();
+                Random rand = Randomness.get();
                 for ( int i = 0; i < randomWalkers; i++ ) {
                     int choice = rand.nextInt( candidates.size() );
                     results.add( candidates.get( choice ) );
@@ -416,6 +527,10 @@ public class GraphOps {
                 boolean hasTargetRelation = false;
                 int pathLength = path.length();
 
+                // Closed paths are enumerated by closedPaths in meet-in-the-middle mode
+                if ( Settings.MEET_IN_THE_MIDDLE && pathLength > 0 && closed )
+                    return Evaluation.EXCLUDE_AND_PRUNE;
+
                 if ( path.lastRelationship() != null ) {
                     Relationship relation = path.lastRelationship();
                     hasTargetRelation = relation.getType().equals(instance.type);
@@ -464,10 +579,4 @@ public class GraphOps {
         }
     }
 
-    static class Flag {
-        boolean flag;
-        public Flag() {
-            flag = false;
-        }
-    }
 }
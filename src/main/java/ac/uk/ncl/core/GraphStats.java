@@ -0,0 +1,62 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.structure.Atom;
+import ac.uk.ncl.utils.Logger;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Per relationship type statistics of the graph: the number of relationships and the number
+ * of distinct start and end nodes, from which the average out and in degrees follow. Collected
+ * in a single scan on first use. Masking train or test instances changes the counts only
+ * slightly, so the statistics are not updated afterwards.
+ */
+public class GraphStats {
+    private static GraphStats instance = null;
+    private final Map<String, long[]> stats = new HashMap<>();
+
+    private GraphStats(GraphDatabaseService graph) {
+        Map<String, Set<Long>> starts = new HashMap<>();
+        Map<String, Set<Long>> ends = new HashMap<>();
+        Map<String, Long> counts = new HashMap<>();
+        try(Transaction tx = graph.beginTx()) {
+            for (Relationship relationship : graph.getAllRelationships()) {
+                String type = relationship.getType().name();
+                counts.merge(type, 1L, Long::sum);
+                starts.computeIfAbsent(type, k -> new HashSet<>()).add(relationship.getStartNode().getId());
+                ends.computeIfAbsent(type, k -> new HashSet<>()).add(relationship.getEndNode().getId());
+            }
+            tx.success();
+        }
+        for (String type : counts.keySet())
+            stats.put(type, new long[]{counts.get(type), starts.get(type).size(), ends.get(type).size()});
+        Logger.println(MessageFormat.format("# Graph Statistics: {0} Relationship Types", stats.size()), 2);
+    }
+
+    public static synchronized GraphStats of(GraphDatabaseService graph) {
+        if(instance == null) instance = new GraphStats(graph);
+        return instance;
+    }
+
+    public long count(String type) {
+        long[] s = stats.get(type);
+        return s == null ? 0 : s[0];
+    }
+
+    /**
+     * The average number of neighbours reached by following the atom from one of its nodes,
+     * in the atom direction when forward = true, otherwise against it.
+     */
+    public double fanOut(Atom atom, boolean forward) {
+        long[] s = stats.get(atom.getBasePredicate());
+        if(s == null) return 0;
+        boolean fromStart = atom.getDirection().equals(Direction.OUTGOING) == forward;
+        long nodes = fromStart ? s[1] : s[2];
+        return nodes == 0 ? 0 : (double) s[0] / nodes;
+    }
+}
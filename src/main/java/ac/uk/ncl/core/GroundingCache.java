@@ -0,0 +1,190 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.*;
+import ac.uk.ncl.utils.Logger;
+
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Caches body groundings by the canonical body pattern of rules, so that learning, application
+ * and repeated experiments on the same split reuse groundings instead of traversing the graph again.
+ *
+ * Groundings are stored off-heap as (start, end) node id pairs in discovery order, and are evicted
+ * in LRU order when exceeding {@link Settings#GROUNDING_CACHE_MB}. The off-heap memory is a pool of
+ * fixed size blocks sliced from direct buffers of {@link #SLAB_BYTES}, allocated on demand up to the
+ * budget. An entry holds the blocks of its groundings, which are returned to the pool when the entry
+ * is evicted or replaced and reused by later entries, so the direct memory never exceeds the budget
+ * whatever the churn. {@link #clear()} also drops the pool, which is then reclaimed by the collector.
+ * Masking edges (removing train or test instances) changes the signature of the masked relationship type,
+ * so that only patterns that touch a masked type are keyed differently between the learning and the
+ * application graphs.
+ *
+ * An entry found with cap c can serve any request with cap <= c if it holds at least that many
+ * groundings (the DFS would have found the same prefix), or any cap if its search was complete.
+ */
+public class GroundingCache {
+    static final int BLOCK_BYTES = 4096;
+    static final int SLAB_BYTES = 1048576;
+    private static final int BLOCK_PAIRS = BLOCK_BYTES / 16;
+
+    private static final Map<String, Long> maskSignatures = new HashMap<>();
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private static final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private static long allocatedBlocks = 0, usedBlocks = 0;
+    private static int hits = 0, misses = 0, evictions = 0;
+
+    public static boolean enabled() {
+        return Settings.GROUNDING_CACHE_MB > 0;
+    }
+
+    /**
+     * Records that the instances are removed from (removed = true) or added back to the graph.
+     */
+    public static synchronized void mask(List<Instance> instances, boolean removed) {
+        for (Instance instance : instances) {
+            long hash = mix(instance.startNodeId * 31 + instance.endNodeId);
+            maskSignatures.merge(instance.type.name(), removed ? hash : -hash, Long::sum);
+        }
+    }
+
+    public static synchronized Set<Pair> get(Rule pattern, int cap) {
+        Entry entry = entries.get(key(pattern));
+        if(entry == null || !entry.serves(cap)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.decode(cap);
+    }
+
+    public static synchronized boolean contains(Rule pattern, int cap) {
+        Entry entry = entries.get(key(pattern));
+        return entry != null && entry.serves(cap);
+    }
+
+    /**
+     * @param endpoints start and end node ids of the first size groundings, interleaved
+     */
+    public static synchronized void put(Rule pattern, int cap, boolean complete, long[] endpoints, int size) {
+        long budget = budgetBlocks();
+        int blocks = (size + BLOCK_PAIRS - 1) / BLOCK_PAIRS;
+        if(blocks > budget) return;
+
+        String key = key(pattern);
+        Entry previous = entries.remove(key);
+        if(previous != null) release(previous);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(usedBlocks + blocks > budget && iterator.hasNext()) {
+            Entry evicted = iterator.next();
+            iterator.remove();
+            release(evicted);
+            evictions++;
+        }
+
+        ByteBuffer[] buffers = new ByteBuffer[blocks];
+        for (int b = 0; b < blocks; b++) {
+            if(pool.isEmpty()) allocateSlab();
+            buffers[b] = pool.pop();
+            int from = b * BLOCK_PAIRS, to = Math.min(size, from + BLOCK_PAIRS);
+            for (int i = from; i < to; i++) {
+                buffers[b].putLong((i - from) * 16, endpoints[2 * i]);
+                buffers[b].putLong((i - from) * 16 + 8, endpoints[2 * i + 1]);
+            }
+        }
+        usedBlocks += blocks;
+        entries.put(key, new Entry(buffers, size, cap, complete));
+    }
+
+    /**
+     * Drops the entries and the pool of blocks.
+     */
+    public static synchronized void clear() {
+        entries.clear();
+        pool.clear();
+        allocatedBlocks = 0;
+        usedBlocks = 0;
+    }
+
+    static synchronized long allocatedBlocks() {
+        return allocatedBlocks;
+    }
+
+    public static synchronized void report() {
+        if(!enabled()) return;
+        Logger.println(MessageFormat.format("# Grounding Cache: {0} Entries | {1}MB | Hits: {2} | Misses: {3} | Evictions: {4}"
+                , entries.size(), usedBlocks * BLOCK_BYTES / 1048576, hits, misses, evictions), 2);
+    }
+
+    private static long budgetBlocks() {
+        return Settings.GROUNDING_CACHE_MB * 1048576L / BLOCK_BYTES;
+    }
+
+    /**
+     * Slices a new direct buffer into blocks, only called while the blocks in use and in the pool are under the budget.
+     */
+    private static void allocateSlab() {
+        int blocks = (int) Math.min(SLAB_BYTES / BLOCK_BYTES, budgetBlocks() - allocatedBlocks);
+        ByteBuffer slab = ByteBuffer.allocateDirect(blocks * BLOCK_BYTES);
+        for (int b = 0; b < blocks; b++) {
+            slab.limit((b + 1) * BLOCK_BYTES).position(b * BLOCK_BYTES);
+            pool.push(slab.slice());
+        }
+        allocatedBlocks += blocks;
+    }
+
+    private static void release(Entry entry) {
+        for (ByteBuffer buffer : entry.buffers) pool.push(buffer);
+        usedBlocks -= entry.buffers.length;
+    }
+
+    /**
+     * The key is made of the body atoms with the mask signatures of their types, in body order,
+     * and the tail constant if the tail is checked.
+     */
+    private static String key(Rule pattern) {
+        StringBuilder key = new StringBuilder();
+        for (Atom atom : pattern.bodyAtoms)
+            key.append(atom.getPredicate()).append(':')
+                    .append(maskSignatures.getOrDefault(atom.getBasePredicate(), 0L)).append(',');
+        if(GraphOps.checksTail(pattern)) key.append('@').append(pattern.getTail());
+        return key.toString();
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    static class Entry {
+        final ByteBuffer[] buffers;
+        final int size;
+        final int cap;
+        final boolean complete;
+
+        Entry(ByteBuffer[] buffers, int size, int cap, boolean complete) {
+            this.buffers = buffers;
+            this.size = size;
+            this.cap = cap;
+            this.complete = complete;
+        }
+
+        boolean serves(int requestedCap) {
+            return complete || cap == requestedCap || size >= requestedCap;
+        }
+
+        Set<Pair> decode(int requestedCap) {
+            int n = Math.min(size, requestedCap);
+            Set<Pair> pairs = new HashSet<>();
+            for (int i = 0; i < n; i++) {
+                ByteBuffer buffer = buffers[i / BLOCK_PAIRS];
+                int offset = (i % BLOCK_PAIRS) * 16;
+                pairs.add(new Pair(buffer.getLong(offset), buffer.getLong(offset + 8)));
+            }
+            return pairs;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Deadline;
+import ac.uk.ncl.utils.LongPairSet;
+import org.neo4j.graphdb.*;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Grounds a rule body depth first over an explicit stack of relationship iterators and node ids
+ * indexed by depth. Only the (start, end) endpoints of the groundings are kept.
+ *
+ * The walk stops when the grounding cap is reached or the {@link Budget} of the rule runs out.
+ * A rule stopped by its budget keeps the groundings found so far and is marked as truncated
+ * in its stats, and truncated results are never cached.
+ */
+public class GroundingExecutor {
+    private static final AtomicInteger truncatedRules = new AtomicInteger();
+    private static volatile long epoch = 0;
+
+    private final Direction[] directions;
+    private final RelationshipType[] types;
+    private final long tail;
+    private final int cap;
+    private final Node[] nodes;
+    private final long[] nodeIds;
+    private final Iterator[] iterators;
+
+    public final LongPairSet endpoints = new LongPairSet();
+    public final Budget budget = new Budget();
+    public boolean stopped = false;
+
+    public GroundingExecutor(Rule pattern, long tail, int cap) {
+        int n = pattern.bodyLength();
+        directions = new Direction[n];
+        types = new RelationshipType[n];
+        for (int i = 0; i < n; i++) {
+            directions[i] = pattern.bodyAtoms.get(i).direction;
+            types[i] = pattern.bodyAtoms.get(i).type;
+        }
+        this.tail = tail;
+        this.cap = cap;
+        nodes = new Node[n + 1];
+        nodeIds = new long[n + 1];
+        iterators = new Iterator[n];
+    }
+
+    /**
+     * Stops the groundings in progress in all threads, which return their partial results.
+     */
+    public static synchronized void cancel() {
+        epoch++;
+    }
+
+    /**
+     * The number of rules truncated since the last call.
+     */
+    public static int takeTruncated() {
+        return truncatedRules.getAndSet(0);
+    }
+
+    public GroundingExecutor run(GraphDatabaseService graph, Rule pattern) {
+        boolean outgoing = directions[0].equals(Direction.OUTGOING);
+        for (Relationship relationship : GraphOps.getRelationshipsAPI(graph, pattern.bodyAtoms.get(0).getBasePredicate())) {
+            if(budget.spend()) stopped = true;
+            if(stopped) break;
+            nodeIds[0] = outgoing ? relationship.getStartNodeId() : relationship.getEndNodeId();
+            nodeIds[1] = outgoing ? relationship.getEndNodeId() : relationship.getStartNodeId();
+            if(directions.length == 1) emit();
+            else {
+                nodes[1] = outgoing ? relationship.getEndNode() : relationship.getStartNode();
+                walk();
+            }
+        }
+        if(budget.truncated) markTruncated(pattern);
+        return this;
+    }
+
+    static void markTruncated(Rule pattern) {
+        pattern.stats.truncated = true;
+        truncatedRules.incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void walk() {
+        int length = 1;
+        iterators[1] = nodes[1].getRelationships(directions[1], types[1]).iterator();
+        while(length > 0 && !stopped) {
+            Iterator<Relationship> iterator = iterators[length];
+            if(!iterator.hasNext()) {
+                iterators[length--] = null;
+                continue;
+            }
+            Relationship relationship = iterator.next();
+            if(budget.spend()) {
+                stopped = true;
+                break;
+            }
+            boolean outgoing = relationship.getStartNodeId() == nodeIds[length];
+            long other = outgoing ? relationship.getEndNodeId() : relationship.getStartNodeId();
+            if(onPath(other, length)) continue;
+            nodeIds[length + 1] = other;
+            if(length + 1 == directions.length) {
+                emit();
+                continue;
+            }
+            length++;
+            nodes[length] = outgoing ? relationship.getEndNode() : relationship.getStartNode();
+            iterators[length] = nodes[length].getRelationships(directions[length], types[length]).iterator();
+        }
+        for (int i = 1; i < iterators.length; i++) iterators[i] = null;
+    }
+
+    private void emit() {
+        int n = directions.length;
+        if(tail != -1 && tail != nodeIds[n]) return;
+        endpoints.add(nodeIds[0], nodeIds[n]);
+        if(endpoints.size() >= cap) stopped = true;
+    }
+
+    private boolean onPath(long node, int length) {
+        for (int i = 0; i <= length; i++) if(nodeIds[i] == node) return true;
+        return false;
+    }
+
+    /**
+     * The attempt and time budget of grounding a rule, see {@link Settings#GROUNDING_ATTEMPTS} and
+     * {@link Settings#GROUNDING_MILLIS}. Every relationship visited is an attempt. The clock, the stage
+     * deadline, interruption and {@link #cancel()} are checked every {@link Settings#GROUNDING_CHECK_INTERVAL} attempts.
+     */
+    public static class Budget {
+        private final long end;
+        private final long startEpoch;
+        private long attempts = 0;
+        public boolean truncated = false;
+
+        public Budget() {
+            end = Settings.GROUNDING_MILLIS > 0 ? System.currentTimeMillis() + Settings.GROUNDING_MILLIS : Long.MAX_VALUE;
+            startEpoch = epoch;
+        }
+
+        /**
+         * Spends an attempt, returns true if the budget has run out.
+         */
+        public boolean spend() {
+            if(truncated) return true;
+            if(++attempts >= Settings.GROUNDING_ATTEMPTS) return truncated = true;
+            if(attempts % Settings.GROUNDING_CHECK_INTERVAL != 0) return false;
+            truncated = epoch != startEpoch || Deadline.expired() || Thread.currentThread().isInterrupted()
+                    || System.currentTimeMillis() >= end;
+            return truncated;
+        }
+
+        public long getAttempts() {
+            return attempts;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.structure.Atom;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.LongPairSet;
+import org.neo4j.graphdb.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plans the grounding of rule bodies with {@link GraphStats}. The cost of a plan is estimated as
+ * the expected number of partial paths created, i.e., the size of the initial frontier multiplied
+ * by the average fan-out of every following atom. Three plans are considered:
+ * - FORWARD: start from every relationship of the first atom and extend towards the tail.
+ * - BACKWARD: start from every relationship of the last atom and extend towards the head.
+ * - FROM_TAIL: for tail anchored rules, start from the tail constant and extend towards the head.
+ *
+ * Plans are cached by body pattern. Backward groundings are swapped back into (start, end) pairs.
+ * Every plan keeps at most cap distinct (start, end) pairs. Only the forward plan visits relationships
+ * in the order of {@link GroundingExecutor}, so the capped groundings of the other plans are different
+ * subsets of the complete groundings, and they are only cached when complete, see {@link Walk#cacheable()}.
+ */
+public class GroundingPlanner {
+    public static final int FORWARD = 0;
+    public static final int BACKWARD = 1;
+    public static final int FROM_TAIL = 2;
+
+    private static final Map<String, Integer> plans = new ConcurrentHashMap<>();
+
+    public static int plan(GraphDatabaseService graph, Rule pattern, boolean checkTail) {
+        String key = (checkTail ? "T|" : "|") + pattern.bodyAtoms.stream().map(Atom::getPredicate).reduce("", (a, b) -> a + "," + b);
+        return plans.computeIfAbsent(key, k -> choose(GraphStats.of(graph), pattern.bodyAtoms, checkTail));
+    }
+
+    static int choose(GraphStats stats, List<Atom> atoms, boolean checkTail) {
+        int last = atoms.size() - 1;
+        double forward = stats.count(atoms.get(0).getBasePredicate()), frontier = forward;
+        for (int i = 1; i <= last; i++) {
+            frontier *= stats.fanOut(atoms.get(i), true);
+            forward += frontier;
+        }
+
+        double backward = stats.count(atoms.get(last).getBasePredicate());
+        frontier = backward;
+        for (int i = last - 1; i >= 0; i--) {
+            frontier *= stats.fanOut(atoms.get(i), false);
+            backward += frontier;
+        }
+
+        if(checkTail) {
+            double fromTail = frontier = stats.fanOut(atoms.get(last), false);
+            for (int i = last - 1; i >= 0; i--) {
+                frontier *= stats.fanOut(atoms.get(i), false);
+                fromTail += frontier;
+            }
+            if(fromTail <= Math.min(forward, backward)) return FROM_TAIL;
+        }
+        return backward < forward ? BACKWARD : FORWARD;
+    }
+
+    /**
+     * Grounds the body of the pattern with its plan, keeping at most cap groundings.
+     */
+    public static Walk ground(GraphDatabaseService graph, Rule pattern, boolean checkTail, int cap) {
+        return ground(graph, pattern, checkTail, cap, plan(graph, pattern, checkTail));
+    }
+
+    static Walk ground(GraphDatabaseService graph, Rule pattern, boolean checkTail, int cap, int plan) {
+        Walk walk = new Walk(pattern.bodyAtoms, plan != FORWARD, checkTail ? pattern.getTail() : -1, cap);
+        if(plan == FROM_TAIL) return walk.from(graph.getNodeById(pattern.getTail()), pattern);
+
+        Atom first = walk.atoms[0];
+        boolean outgoing = walk.directions[0].equals(Direction.OUTGOING);
+        for (Relationship relationship : GraphOps.getRelationshipsAPI(graph, first.getBasePredicate())) {
+            if(walk.budget.spend()) walk.stopped = true;
+            if(walk.stopped) break;
+            walk.nodes[0] = outgoing ? relationship.getStartNode() : relationship.getEndNode();
+            walk.nodes[1] = relationship.getOtherNode(walk.nodes[0]);
+            walk.visit(1);
+        }
+        return walk.close(pattern);
+    }
+
+    /**
+     * A depth first walk over the body atoms in planned order, recording the distinct groundings
+     * as (start, end) node ids in discovery order. The walk runs on an explicit stack and stops when
+     * the cap is reached or its {@link GroundingExecutor.Budget} runs out.
+     */
+    public static class Walk {
+        final Atom[] atoms;
+        final Direction[] directions;
+        final boolean reversed;
+        final long tail;
+        final int cap;
+        final Node[] nodes;
+        final Iterator[] iterators;
+        final GroundingExecutor.Budget budget = new GroundingExecutor.Budget();
+
+        public final LongPairSet endpoints = new LongPairSet();
+        public boolean stopped = false;
+
+        Walk(List<Atom> body, boolean reversed, long tail, int cap) {
+            int n = body.size();
+            atoms = new Atom[n];
+            directions = new Direction[n];
+            for (int i = 0; i < n; i++) {
+                Atom atom = body.get(reversed ? n - 1 - i : i);
+                atoms[i] = atom;
+                directions[i] = reversed ? atom.getDirection().reverse() : atom.getDirection();
+            }
+            this.reversed = reversed;
+            this.tail = tail;
+            this.cap = cap;
+            nodes = new Node[n + 1];
+            iterators = new Iterator[n];
+        }
+
+        /**
+         * Grounds the body from the node, marking the pattern as truncated if the budget runs out.
+         */
+        public Walk from(Node node, Rule pattern) {
+            nodes[0] = node;
+            visit(0);
+            return close(pattern);
+        }
+
+        /**
+         * Extends the path of the given length to full groundings over a stack of relationship
+         * iterators indexed by depth.
+         */
+        @SuppressWarnings("unchecked")
+        void visit(int from) {
+            if(from == atoms.length) {
+                emit();
+                return;
+            }
+            int length = from;
+            iterators[length] = nodes[length].getRelationships(directions[length], atoms[length].type).iterator();
+            while(length >= from && !stopped) {
+                Iterator<Relationship> iterator = iterators[length];
+                if(!iterator.hasNext()) {
+                    iterators[length--] = null;
+                    continue;
+                }
+                Relationship relationship = iterator.next();
+                if(budget.spend()) {
+                    stopped = true;
+                    break;
+                }
+                Node other = relationship.getOtherNode(nodes[length]);
+                if(onPath(other, length)) continue;
+                nodes[length + 1] = other;
+                if(length + 1 == atoms.length) {
+                    emit();
+                    continue;
+                }
+                length++;
+                iterators[length] = nodes[length].getRelationships(directions[length], atoms[length].type).iterator();
+            }
+            for (int i = from; i < iterators.length; i++) iterators[i] = null;
+        }
+
+        private void emit() {
+            int n = atoms.length;
+            long start = nodes[reversed ? n : 0].getId();
+            long end = nodes[reversed ? 0 : n].getId();
+            if(tail != -1 && end != tail) return;
+            endpoints.add(start, end);
+            if(endpoints.size() >= cap) stopped = true;
+        }
+
+        Walk close(Rule pattern) {
+            if(budget.truncated) GroundingExecutor.markTruncated(pattern);
+            return this;
+        }
+
+        private boolean onPath(Node node, int length) {
+            for (int i = 0; i <= length; i++) if(nodes[i].getId() == node.getId()) return true;
+            return false;
+        }
+
+        /**
+         * If the groundings can be cached, i.e., the walk was not truncated by its budget, and it
+         * either completed or followed the forward plan.
+         */
+        public boolean cacheable() {
+            return !budget.truncated && (!stopped || !reversed);
+        }
+
+        public Set<Pair> toPairs() {
+            return endpoints.toPairs();
+        }
+    }
+}
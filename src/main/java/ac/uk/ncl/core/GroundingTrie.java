@@ -0,0 +1,288 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Atom;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Deadline;
+import ac.uk.ncl.utils.Logger;
+import ac.uk.ncl.utils.LongPairSet;
+import ac.uk.ncl.utils.MathUtils;
+import org.neo4j.graphdb.*;
+
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Batched body grounding for abstract rules. The bodies of the selected rules are organized
+ * into a trie over their (type, direction) atom sequences, and the graph is walked once per
+ * trie node instead of once per rule, so rules sharing a body prefix share the traversal of
+ * the prefix. Groundings reaching the end of a rule body are emitted to that rule until
+ * it holds as many distinct (start, end) pairs as its grounding cap, and subtrees whose rules
+ * are all stopped are not walked.
+ *
+ * The walk follows the same relationship order as {@link GraphOps#bodyGroundingCoreAPI} over an
+ * explicit stack, and every rule spends its own {@link GroundingExecutor.Budget} on the relationships
+ * visited for its body, so the groundings, caps and truncation of each rule are those of the rule
+ * grounded on its own. The budgets of the rules under a root start when the root is walked. The roots
+ * of the trie are walked in parallel. The walk polls {@link Deadline#expired()} of the stage the
+ * prefetch runs in, and rules still running when the deadline passes are truncated. Results are
+ * held until the rule asks for its groundings through {@link GraphOps#bodyGroundings}.
+ */
+public class GroundingTrie {
+    private static final Map<Rule, Set<Pair>> prefetched = Collections.synchronizedMap(new IdentityHashMap<>());
+    private static boolean prefetchedApplication = false;
+
+    public static void prefetch(GraphDatabaseService graph, Collection<Rule> rules, boolean application) {
+        clear();
+        long s = System.currentTimeMillis();
+        int cap = application ? Settings.APPLY_GROUNDINGS : Settings.LEARN_GROUNDINGS;
+        if(cap == 0) cap = Integer.MAX_VALUE;
+
+        TrieNode root = new TrieNode(null, null);
+        int trieNodes = 0, batched = 0, depth = 0;
+        for (Rule rule : rules) {
+            if(GroundingCache.enabled() && GroundingCache.contains(rule, cap)) continue;
+            TrieNode node = root;
+            for (Atom atom : rule.bodyAtoms) {
+                TrieNode child = node.child(atom);
+                if(child == null) {
+                    child = new TrieNode(node, atom);
+                    node.children.add(child);
+                    trieNodes++;
+                }
+                node = child;
+            }
+            node.rules.add(new Grounded(rule, node));
+            depth = Math.max(depth, rule.bodyLength());
+            batched++;
+        }
+        if(root.children.isEmpty()) return;
+        root.countRemaining();
+
+        int threadNum = Math.min(Settings.THREAD_NUMBER, root.children.size());
+        int[][] intervals = MathUtils.createIntervals(root.children.size(), threadNum);
+        WalkTask[] tasks = new WalkTask[threadNum];
+        for (int i = 0; i < threadNum; i++)
+            tasks[i] = new WalkTask(graph, root.children.subList(intervals[i][0], intervals[i][1]), cap, depth);
+        try {
+            for (WalkTask task : tasks) task.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        int groundings = 0, truncated = 0;
+        List<Grounded> results = new ArrayList<>();
+        root.collect(results);
+        for (Grounded grounded : results) {
+            LongPairSet endpoints = grounded.endpoints;
+            prefetched.put(grounded.rule, endpoints.toPairs());
+            if(grounded.budget.truncated) {
+                GroundingExecutor.markTruncated(grounded.rule);
+                truncated++;
+            } else if(GroundingCache.enabled())
+                GroundingCache.put(grounded.rule, cap, !grounded.stopped, endpoints.endpoints, endpoints.size());
+            groundings += endpoints.size();
+        }
+        prefetchedApplication = application;
+
+        Logger.println(MessageFormat.format("# Trie Grounding: {0} Rules | {1} Trie Nodes | {2} Groundings | {3} Truncated | {4}s"
+                , batched, trieNodes, groundings, truncated, (System.currentTimeMillis() - s) / 1000d), 2);
+    }
+
+    /**
+     * Returns and releases the prefetched groundings of the rule, or null if the rule was not prefetched
+     * for the phase.
+     */
+    public static Set<Pair> take(Rule pattern, boolean application) {
+        if(prefetched.isEmpty() || prefetchedApplication != application) return null;
+        return prefetched.remove(pattern);
+    }
+
+    public static void clear() {
+        prefetched.clear();
+    }
+
+    /**
+     * Walks the subtrees of the roots depth first over a stack of trie nodes, child positions,
+     * relationship iterators and nodes indexed by depth.
+     */
+    static class WalkTask extends Thread {
+        GraphDatabaseService graph;
+        List<TrieNode> roots;
+        int cap;
+        final Node[] nodes;
+        final TrieNode[] trie;
+        final int[] children;
+        final Iterator[] iterators;
+
+        WalkTask(GraphDatabaseService graph, List<TrieNode> roots, int cap, int depth) {
+            super();
+            this.graph = graph;
+            this.roots = roots;
+            this.cap = cap;
+            nodes = new Node[depth + 1];
+            trie = new TrieNode[depth + 1];
+            children = new int[depth + 1];
+            iterators = new Iterator[depth + 1];
+            start();
+        }
+
+        @Override
+        public void run() {
+            try(Transaction tx = graph.beginTx()) {
+                for (TrieNode root : roots) {
+                    root.startBudgets();
+                    boolean outgoing = root.atom.getDirection().equals(Direction.OUTGOING);
+                    for (Relationship relationship : GraphOps.getRelationshipsAPI(graph, root.atom.getBasePredicate())) {
+                        if(Deadline.expired()) {
+                            root.expire();
+                            break;
+                        }
+                        if(!root.spend()) break;
+                        nodes[0] = outgoing ? relationship.getStartNode() : relationship.getEndNode();
+                        nodes[1] = relationship.getOtherNode(nodes[0]);
+                        walk(root);
+                    }
+                }
+                tx.success();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void walk(TrieNode root) {
+            int length = 1;
+            enter(root, length);
+            while(length > 0) {
+                TrieNode node = trie[length];
+                Iterator<Relationship> iterator = iterators[length];
+                if(iterator == null || !iterator.hasNext()) {
+                    int next = children[length] + 1;
+                    while(next < node.children.size() && node.children.get(next).remaining == 0) next++;
+                    if(next == node.children.size()) {
+                        iterators[length--] = null;
+                        continue;
+                    }
+                    if(Deadline.expired()) {
+                        root.expire();
+                        return;
+                    }
+                    children[length] = next;
+                    Atom atom = node.children.get(next).atom;
+                    iterators[length] = nodes[length].getRelationships(atom.getDirection(), atom.type).iterator();
+                    continue;
+                }
+                TrieNode child = node.children.get(children[length]);
+                Relationship relationship = iterator.next();
+                if(!child.spend()) {
+                    iterators[length] = null;
+                    continue;
+                }
+                Node other = relationship.getOtherNode(nodes[length]);
+                if(onPath(other, length)) continue;
+                nodes[++length] = other;
+                enter(child, length);
+            }
+        }
+
+        /**
+         * Pushes the trie node reached by the path of the given length and emits the path to its rules.
+         */
+        private void enter(TrieNode node, int length) {
+            trie[length] = node;
+            children[length] = -1;
+            iterators[length] = null;
+            for (Grounded grounded : node.rules) {
+                if(grounded.stopped) continue;
+                grounded.endpoints.add(nodes[0].getId(), nodes[length].getId());
+                if(grounded.endpoints.size() >= cap) grounded.stop();
+            }
+        }
+
+        private boolean onPath(Node node, int length) {
+            for (int i = 0; i <= length; i++) if(nodes[i].getId() == node.getId()) return true;
+            return false;
+        }
+    }
+
+    static class TrieNode {
+        final TrieNode parent;
+        final Atom atom;
+        final List<TrieNode> children = new ArrayList<>();
+        final List<Grounded> rules = new ArrayList<>();
+        final List<Grounded> subtree = new ArrayList<>();
+        int remaining = 0;
+
+        TrieNode(TrieNode parent, Atom atom) {
+            this.parent = parent;
+            this.atom = atom;
+        }
+
+        TrieNode child(Atom atom) {
+            for (TrieNode child : children)
+                if(child.atom.getPredicate().equals(atom.getPredicate())) return child;
+            return null;
+        }
+
+        int countRemaining() {
+            subtree.addAll(rules);
+            for (TrieNode child : children) {
+                child.countRemaining();
+                subtree.addAll(child.subtree);
+            }
+            remaining = subtree.size();
+            return remaining;
+        }
+
+        void startBudgets() {
+            for (Grounded grounded : subtree) grounded.budget = new GroundingExecutor.Budget();
+        }
+
+        /**
+         * Spends an attempt of every running rule of the subtree on a relationship visited for this
+         * trie node, stopping the rules whose budget runs out.
+         * @return false if all rules of the subtree are stopped
+         */
+        boolean spend() {
+            if(remaining == 0) return false;
+            for (Grounded grounded : subtree)
+                if(!grounded.stopped && grounded.budget.spend()) grounded.stop();
+            return remaining > 0;
+        }
+
+        /**
+         * Stops the running rules of the subtree as truncated, when the deadline of the stage has passed.
+         */
+        void expire() {
+            for (Grounded grounded : subtree) {
+                if(grounded.stopped) continue;
+                grounded.budget.truncated = true;
+                grounded.stop();
+            }
+        }
+
+        void collect(List<Grounded> results) {
+            results.addAll(rules);
+            for (TrieNode child : children) child.collect(results);
+        }
+    }
+
+    static class Grounded {
+        final Rule rule;
+        final TrieNode node;
+        final LongPairSet endpoints = new LongPairSet();
+        GroundingExecutor.Budget budget;
+        boolean stopped = false;
+
+        Grounded(Rule rule, TrieNode node) {
+            this.rule = rule;
+            this.node = node;
+        }
+
+        void stop() {
+            stopped = true;
+            for (TrieNode n = node; n.parent != null; n = n.parent) n.remaining--;
+        }
+    }
+}
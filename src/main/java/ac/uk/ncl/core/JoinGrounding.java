@@ -0,0 +1,176 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.core.AdjacencyIndex.SparseMatrix;
+import ac.uk.ncl.structure.Atom;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.LongPairSet;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.*;
+
+/**
+ * Grounds rule bodies whose tail is bound to a constant by intersecting sorted adjacency lists
+ * of {@link AdjacencyIndex}, instead of enumerating all body paths and checking the tail at the
+ * leaves. The body is first reduced backward from the tail: layer i holds the dense ids of the values
+ * of the i-th body variable that can still reach the tail. Paths are then extended forward only through
+ * the intersection of the sorted neighbours with the next layer, over an explicit stack indexed by depth,
+ * so the work is proportional to the groundings rather than to all body paths. Groundings follow node unique paths, as in
+ * {@link GraphOps#bodyGroundingCoreAPI}, and one path per (start, tail) pair is enough.
+ *
+ * The layers ignore node uniqueness, so a start may still try many paths revisiting nodes. Every start
+ * and every neighbour tried is an attempt of the {@link GroundingExecutor.Budget} of the rule, and a rule
+ * running out of budget keeps the groundings found so far and is marked as truncated. Starts are tried in
+ * the order of their dense ids rather than in the order of the DFS, so only complete groundings are cached.
+ */
+public class JoinGrounding {
+
+    /**
+     * Grounds the (start, tail) pairs of the pattern, at most cap of them.
+     */
+    public static Join ground(GraphDatabaseService graph, Rule pattern, int cap) {
+        Join join = new Join(graph, pattern);
+        for (int start : join.layers[0]) {
+            if(join.endpoints.size() >= cap || join.budget.spend()) {
+                join.stopped = true;
+                break;
+            }
+            if(join.connects(start)) join.endpoints.add(AdjacencyIndex.id(start), pattern.getTail());
+        }
+        if(join.budget.truncated) GroundingExecutor.markTruncated(pattern);
+        return join;
+    }
+
+    /**
+     * If the start node reaches the tail of the pattern through its body.
+     */
+    public static boolean exists(GraphDatabaseService graph, Rule pattern, long start) {
+        Join join = new Join(graph, pattern);
+        int dense = AdjacencyIndex.dense(start);
+        return dense != -1 && Arrays.binarySearch(join.layers[0], dense) >= 0 && join.connects(dense);
+    }
+
+    public static class Join {
+        final SparseMatrix[] forward;
+        final int[][] layers;
+        final int[] path;
+        final int[] cursors;
+        final int[] ends;
+        final int[] positions;
+
+        public final LongPairSet endpoints = new LongPairSet();
+        public final GroundingExecutor.Budget budget = new GroundingExecutor.Budget();
+        public boolean stopped = false;
+
+        Join(GraphDatabaseService graph, Rule pattern) {
+            List<Atom> atoms = pattern.bodyAtoms;
+            int n = atoms.size();
+            forward = new SparseMatrix[n];
+            SparseMatrix[] backward = new SparseMatrix[n];
+            for (int i = 0; i < n; i++) {
+                Atom atom = atoms.get(i);
+                forward[i] = AdjacencyIndex.get(graph, atom.getBasePredicate(), atom.isInverse());
+                backward[i] = AdjacencyIndex.get(graph, atom.getBasePredicate(), !atom.isInverse());
+            }
+
+            layers = new int[n + 1][];
+            int tail = AdjacencyIndex.dense(pattern.getTail());
+            layers[n] = tail != -1 ? new int[]{tail} : new int[0];
+            for (int i = n - 1; i >= 0; i--) layers[i] = neighbours(backward[i], layers[i + 1]);
+            path = new int[n + 1];
+            cursors = new int[n];
+            ends = new int[n];
+            positions = new int[n];
+        }
+
+        /**
+         * If the groundings are complete, i.e., neither capped nor truncated.
+         */
+        public boolean cacheable() {
+            return !stopped;
+        }
+
+        public Set<Pair> toPairs() {
+            return endpoints.toPairs();
+        }
+
+        /**
+         * If the start reaches the tail, extending the path depth first over a stack of positions in the
+         * neighbours of the path node and in the next layer, indexed by depth.
+         */
+        boolean connects(int start) {
+            int n = forward.length;
+            path[0] = start;
+            open(0);
+            int depth = 0;
+            while(depth >= 0) {
+                int[] columns = forward[depth].columns, next = layers[depth + 1];
+                int i = cursors[depth], end = ends[depth], j = positions[depth];
+                while(i < end && j < next.length && columns[i] != next[j]) {
+                    if(columns[i] < next[j]) i = seek(columns, i, end, next[j]);
+                    else j = seek(next, j, next.length, columns[i]);
+                }
+                if(i >= end || j >= next.length) {
+                    depth--;
+                    continue;
+                }
+                cursors[depth] = i + 1;
+                positions[depth] = j + 1;
+                if(budget.spend()) return false;
+                // as in the DFS, the first atom may be a self loop of the start
+                if(depth > 0 && onPath(columns[i], depth)) continue;
+                path[depth + 1] = columns[i];
+                if(depth + 1 == n) return true;
+                open(++depth);
+            }
+            return false;
+        }
+
+        private void open(int depth) {
+            SparseMatrix matrix = forward[depth];
+            cursors[depth] = matrix.rowPointers[path[depth]];
+            ends[depth] = matrix.rowPointers[path[depth] + 1];
+            positions[depth] = 0;
+        }
+
+        private boolean onPath(int node, int depth) {
+            for (int k = 0; k <= depth; k++) if(path[k] == node) return true;
+            return false;
+        }
+    }
+
+    /**
+     * The sorted distinct union of the rows of the matrix selected by the sorted nodes.
+     */
+    static int[] neighbours(SparseMatrix matrix, int[] nodes) {
+        int total = 0;
+        for (int node : nodes) total += matrix.rowPointers[node + 1] - matrix.rowPointers[node];
+        int[] result = new int[total];
+        int size = 0;
+        for (int node : nodes)
+            for (int k = matrix.rowPointers[node]; k < matrix.rowPointers[node + 1]; k++) result[size++] = matrix.columns[k];
+        Arrays.sort(result, 0, size);
+        int distinct = 0;
+        for (int k = 0; k < size; k++) if(k == 0 || result[k] != result[k - 1]) result[distinct++] = result[k];
+        return Arrays.copyOf(result, distinct);
+    }
+
+    /**
+     * Galloping search for the first position in [from, to) with a value >= target.
+     */
+    static int seek(int[] values, int from, int to, int target) {
+        int step = 1, low = from, high = from;
+        while(high < to && values[high] < target) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(values[middle] < target) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+}
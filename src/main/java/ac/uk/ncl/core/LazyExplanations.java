@@ -0,0 +1,141 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.InstantiatedRule;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.*;
+
+/**
+ * Rule application outputs kept as scores only, used instead of the candidate multimap when
+ * {@link Settings#LAZY_EXPLANATIONS} is on. Every candidate keeps the confidences of the rules
+ * suggesting it, which is all ranking needs, see {@link Engine#rankCandidates}.
+ *
+ * The rules written to the verification and binary prediction files are recovered after ranking,
+ * only for the leading predictions of every query: the applied rules are checked in descending
+ * order of confidence by grounding their bodies between both ends of the prediction, skipping the
+ * rules whose confidence is not a score of the prediction, until its top VERIFY_RULE_SIZE rules
+ * are found. The checks run on the graph rule application saw, so the instances removed for rule
+ * application are only added back after model evaluation.
+ */
+public class LazyExplanations {
+    private final GraphDatabaseService graph;
+    private final List<Rule> rules;
+    private final Set<Long> subs = new HashSet<>(), objs = new HashSet<>();
+    private final Map<Pair, ThresholdAnswering.Scores> scores = new HashMap<>();
+    private long checks = 0;
+
+    public LazyExplanations(GraphDatabaseService graph, Collection<Rule> abstractRules, Set<Pair> test) {
+        this.graph = graph;
+        rules = ThresholdAnswering.appliedRules(abstractRules);
+        for (Pair pair : test) {
+            subs.add(pair.sub);
+            objs.add(pair.obj);
+        }
+    }
+
+    public Buffer buffer() {
+        return new Buffer();
+    }
+
+    public synchronized int size() {
+        return scores.size();
+    }
+
+    public long getChecks() {
+        return checks;
+    }
+
+    /**
+     * Sets the scores of every candidate in descending order.
+     * @return the candidates
+     */
+    public Set<Pair> rank() {
+        scores.forEach((pair, values) -> {
+            Double[] sorted = new Double[values.size];
+            for (int i = 0; i < values.size; i++) sorted[i] = values.values[i];
+            Arrays.sort(sorted, Comparator.reverseOrder());
+            pair.scores = sorted;
+        });
+        return scores.keySet();
+    }
+
+    /**
+     * Recovers the top rules of the leading predictions of every ranked query, as many predictions
+     * as the verification file, or the binary prediction file if it writes more.
+     */
+    public Multimap<Pair, Rule> explain(List<Map<Long, List<Pair>>> rankedMap) {
+        Multimap<Pair, Rule> explanations = MultimapBuilder.hashKeys().hashSetValues().build();
+        int kept = Math.max(Settings.VERIFY_PREDICTION_SIZE, Settings.BINARY_PREDICTIONS ? Settings.TOP_K : 0);
+        for (Map<Long, List<Pair>> queries : rankedMap) {
+            for (List<Pair> ranked : queries.values()) {
+                for (Pair pair : ranked.subList(0, Math.min(ranked.size(), kept))) {
+                    if(!explanations.containsKey(pair)) explanations.putAll(pair, explain(pair));
+                }
+            }
+        }
+        scores.clear();
+        return explanations;
+    }
+
+    private List<Rule> explain(Pair pair) {
+        List<Rule> found = new ArrayList<>();
+        int needed = Math.min(pair.scores.length, Settings.VERIFY_RULE_SIZE);
+        if(needed == 0) return found;
+        Set<Double> values = new HashSet<>(Arrays.asList(pair.scores));
+        double lowest = pair.scores[needed - 1];
+        for (Rule rule : rules) {
+            if(found.size() >= needed || rule.stats.sc < lowest) break;
+            if(!values.contains(rule.stats.sc)) continue;
+            checks++;
+            if(predicts(rule, pair)) found.add(rule);
+        }
+        return found;
+    }
+
+    /**
+     * If the rule suggests the pair in rule application, see {@link ac.uk.ncl.structure.AbstractRule#applyRule}.
+     */
+    private boolean predicts(Rule rule, Pair pair) {
+        boolean fromSubject = rule.isFromSubject();
+        long original = fromSubject ? pair.sub : pair.obj;
+        long anchoring = fromSubject ? pair.obj : pair.sub;
+        int type = rule instanceof InstantiatedRule ? ((InstantiatedRule) rule).getType() : -1;
+        switch (type) {
+            case 0:
+                return anchoring == rule.getAnchoring() && ThresholdAnswering.reaches(graph, rule, original, -1);
+            case 1:
+                return (fromSubject ? objs : subs).contains(anchoring)
+                        && ThresholdAnswering.reaches(graph, rule, original, rule.getTail());
+            case 2:
+                return anchoring == rule.getAnchoring() && ThresholdAnswering.reaches(graph, rule, original, rule.getTail());
+            default:
+                return ThresholdAnswering.reaches(graph, rule, original, anchoring);
+        }
+    }
+
+    /**
+     * The scores of the candidates suggested in a rule application thread, merged on {@link #flush()}.
+     */
+    public class Buffer {
+        final Map<Pair, ThresholdAnswering.Scores> local = new HashMap<>();
+
+        public void add(Pair pair, Rule rule) {
+            local.computeIfAbsent(pair, k -> new ThresholdAnswering.Scores()).add(rule.stats.sc);
+        }
+
+        public void flush() {
+            synchronized (LazyExplanations.this) {
+                local.forEach((pair, values) -> {
+                    ThresholdAnswering.Scores merged = scores.putIfAbsent(pair, values);
+                    if(merged != null) for (int i = 0; i < values.size; i++) merged.add(values.values[i]);
+                });
+            }
+            local.clear();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.utils.Logger;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps rule instantiation and application within {@link Settings#HEAP_BUDGET_MB}. While a stage runs,
+ * a sampler thread reads the heap retained after the last collection plus the direct buffers in use.
+ * Above {@link Settings#MEMORY_PRESSURE} of the budget, the caps of the current target are tightened
+ * one step at a time, and the rules being grounded are cut short with their partial groundings:
+ * - Instantiation: the grounding cache is dropped and no further instantiated rules are created.
+ * - Application: the grounding cache is dropped, APPLY_GROUNDINGS and TOP_INS_RULES are halved
+ *   each on its own, then no further predictions are suggested. An uncapped cap is first set to
+ *   its default. A tightened TOP_INS_RULES only limits the instantiated rules applied afterwards,
+ *   the rules already retained by the {@link ac.uk.ncl.structure.TopRuleSet}s are not released.
+ *
+ * The caps are volatile settings, as they are written by the sampler thread while workers read them.
+ * Every step is recorded and reported with the target, and the caps are restored for the next target.
+ */
+public class MemoryGovernor {
+    public static final int INSTANTIATION = 0;
+    public static final int APPLICATION = 1;
+    private static final long INTERVAL = 200;
+    private static final long COOLDOWN = 2000;
+    private static final int DEFAULT_APPLY_GROUNDINGS = 1000;
+    private static final int DEFAULT_TOP_INS_RULES = 200;
+
+    private static boolean running = false;
+    private static int applyGroundings, topInsRules, suggestionCap, insRuleCap;
+    private static List<String> degradations = new ArrayList<>();
+    private static long peakBytes = 0;
+    private static Sampler sampler = null;
+
+    /**
+     * Records the caps of the current target, if a heap budget is set.
+     */
+    public static void start() {
+        running = Settings.HEAP_BUDGET_MB > 0;
+        degradations = new ArrayList<>();
+        peakBytes = 0;
+        applyGroundings = Settings.APPLY_GROUNDINGS;
+        topInsRules = Settings.TOP_INS_RULES;
+        suggestionCap = Settings.SUGGESTION_CAP;
+        insRuleCap = Settings.INS_RULE_CAP;
+    }
+
+    public static void watch(int stage) {
+        if(running && sampler == null) sampler = new Sampler(stage);
+    }
+
+    public static void unwatch() {
+        if(sampler == null) return;
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        sampler = null;
+    }
+
+    /**
+     * Restores the caps of the target and reports the degradations.
+     */
+    public static void finish() {
+        if(!running) return;
+        unwatch();
+        Settings.APPLY_GROUNDINGS = applyGroundings;
+        Settings.TOP_INS_RULES = topInsRules;
+        Settings.SUGGESTION_CAP = suggestionCap;
+        Settings.INS_RULE_CAP = insRuleCap;
+        Logger.println(MessageFormat.format("# Memory Budget: {0}MB | Peak: {1}MB | Degradations: {2}"
+                , Settings.HEAP_BUDGET_MB, peakBytes / 1048576, degradations.size()), 1);
+        for (String degradation : degradations) Logger.println("# " + degradation, 1);
+        running = false;
+    }
+
+    /**
+     * If the caps of the current target have been tightened.
+     */
+    public static boolean degraded() {
+        return !degradations.isEmpty();
+    }
+
+    static long usedBytes() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage retained = pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsage() : null;
+            used += retained != null ? retained.getUsed() : pool.getUsage().getUsed();
+        }
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if(pool.getName().equals("direct")) used += pool.getMemoryUsed();
+        return used;
+    }
+
+    static long budgetBytes() {
+        return Math.min(Settings.HEAP_BUDGET_MB * 1048576L, Runtime.getRuntime().maxMemory());
+    }
+
+    private static synchronized void tighten(int stage, long used) {
+        String reason = MessageFormat.format("{0}MB of {1}MB used", used / 1048576, budgetBytes() / 1048576);
+        if(GroundingCache.enabled()) GroundingCache.clear();
+        GroundingExecutor.cancel();
+        if(stage == INSTANTIATION) {
+            if(Settings.INS_RULE_CAP <= GenOps.getGlobalInsRuleCounter()) return;
+            Settings.INS_RULE_CAP = GenOps.getGlobalInsRuleCounter();
+            degradations.add(MessageFormat.format("Instantiation: {0}, Instantiated Rule Cap -> {1}"
+                    , reason, Settings.INS_RULE_CAP));
+        } else if(Settings.APPLY_GROUNDINGS > 1 || Settings.TOP_INS_RULES > 1) {
+            Settings.APPLY_GROUNDINGS = halve(Settings.APPLY_GROUNDINGS, DEFAULT_APPLY_GROUNDINGS);
+            Settings.TOP_INS_RULES = halve(Settings.TOP_INS_RULES, DEFAULT_TOP_INS_RULES);
+            degradations.add(MessageFormat.format("Application: {0}, Apply Groundings -> {1} | Top Instantiated Rules -> {2}"
+                    , reason, Settings.APPLY_GROUNDINGS, Settings.TOP_INS_RULES));
+        } else if(Settings.SUGGESTION_CAP > GenOps.getPredictionCounter()) {
+            Settings.SUGGESTION_CAP = GenOps.getPredictionCounter();
+            degradations.add(MessageFormat.format("Application: {0}, Suggestion Cap -> {1}"
+                    , reason, Settings.SUGGESTION_CAP));
+        }
+    }
+
+    /**
+     * Half the cap, or the default if uncapped.
+     */
+    static int halve(int cap, int uncapped) {
+        if(cap == Integer.MAX_VALUE) return uncapped;
+        return Math.max(1, cap / 2);
+    }
+
+    static class Sampler extends Thread {
+        final int stage;
+
+        Sampler(int stage) {
+            super();
+            this.stage = stage;
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            long lastStep = 0;
+            while(!isInterrupted()) {
+                long used = usedBytes();
+                peakBytes = Math.max(peakBytes, used);
+                long now = System.currentTimeMillis();
+                if(used > Settings.MEMORY_PRESSURE * budgetBytes() && now - lastStep >= COOLDOWN) {
+                    tighten(stage, used);
+                    lastStep = now;
+                }
+                try {
+                    Thread.sleep(INTERVAL);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.utils.AliasTable;
+import ac.uk.ncl.utils.Randomness;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Samples k relationships of a node for the random walkers without copying the adjacency of the
+ * node into a list. Selected by {@link Settings#RANDOM_WALKER}:
+ * 1 = Uniform: k distinct positions in [0, degree) are drawn with Floyd's algorithm, sorted, and
+ * picked in a single pass over the relationships.
+ * 2 = Type weighted: a relationship type of the node is drawn with probability proportional to the
+ * square root of its degree at the node, damping dominant types, then a relationship of that type
+ * is drawn uniformly.
+ * 3 = Degree weighted: a relationship is drawn with probability inversely proportional to the log
+ * degree of its other node, so walks are less often absorbed by hubs.
+ *
+ * Weighted draws use alias tables, which are computed once per node and kept for nodes with at
+ * least {@link #CACHED_DEGREE} relationships. Weighted samples are drawn with replacement and
+ * deduplicated, so fewer than k relationships may be returned.
+ */
+public class NeighbourSampler {
+    static final int CACHED_DEGREE = 100;
+    private static final Map<Long, TypeTable> typeTables = new ConcurrentHashMap<>();
+    private static final Map<Long, DegreeTable> degreeTables = new ConcurrentHashMap<>();
+
+    public static Iterable<Relationship> sample(Node node, int k) {
+        if(k == -1 || node.getDegree() <= k) return node.getRelationships();
+        Random rand = Randomness.get();
+        switch (Settings.RANDOM_WALKER) {
+            case 2: return typeWeighted(node, k, rand);
+            case 3: return degreeWeighted(node, k, rand);
+            default: return uniform(node.getRelationships(), node.getDegree(), k, rand);
+        }
+    }
+
+    /**
+     * Drops cached tables, as relationships of masked instances no longer exist.
+     */
+    public static void invalidate() {
+        typeTables.clear();
+        degreeTables.clear();
+    }
+
+    static List<Relationship> uniform(Iterable<Relationship> relationships, int degree, int k, Random rand) {
+        int[] positions = floyd(degree, k, rand);
+        return pick(relationships, positions, k);
+    }
+
+    /**
+     * Floyd's algorithm for k distinct integers in [0, n), returned in ascending order.
+     */
+    static int[] floyd(int n, int k, Random rand) {
+        int[] selected = new int[k];
+        int size = 0;
+        for (int j = n - k; j < n; j++) {
+            int t = rand.nextInt(j + 1);
+            boolean contained = false;
+            for (int i = 0; i < size; i++) if(selected[i] == t) { contained = true; break; }
+            selected[size++] = contained ? j : t;
+        }
+        Arrays.sort(selected);
+        return selected;
+    }
+
+    private static List<Relationship> pick(Iterable<Relationship> relationships, int[] positions, int size) {
+        List<Relationship> results = new ArrayList<>(size);
+        int position = 0, next = 0;
+        for (Relationship relationship : relationships) {
+            if(next == size) break;
+            if(position++ == positions[next]) {
+                results.add(relationship);
+                next++;
+            }
+        }
+        return results;
+    }
+
+    private static List<Relationship> typeWeighted(Node node, int k, Random rand) {
+        TypeTable table = typeTables.get(node.getId());
+        if(table == null) {
+            table = new TypeTable(node);
+            if(node.getDegree() >= CACHED_DEGREE) typeTables.put(node.getId(), table);
+        }
+
+        int[] draws = new int[table.types.length];
+        for (int i = 0; i < k; i++) draws[table.alias.sample(rand)]++;
+        List<Relationship> results = new ArrayList<>(k);
+        for (int t = 0; t < draws.length; t++) {
+            if(draws[t] == 0) continue;
+            int degree = table.degrees[t];
+            int count = Math.min(draws[t], degree);
+            Iterable<Relationship> relationships = node.getRelationships(table.types[t]);
+            results.addAll(count == degree ? pick(relationships, range(degree), degree) : uniform(relationships, degree, count, rand));
+        }
+        return results;
+    }
+
+    private static List<Relationship> degreeWeighted(Node node, int k, Random rand) {
+        DegreeTable table = degreeTables.get(node.getId());
+        if(table == null) {
+            table = new DegreeTable(node);
+            if(table.relationships.length >= CACHED_DEGREE) degreeTables.put(node.getId(), table);
+        }
+        Set<Relationship> results = new HashSet<>();
+        for (int i = 0; i < k; i++) results.add(table.relationships[table.alias.sample(rand)]);
+        return new ArrayList<>(results);
+    }
+
+    private static int[] range(int n) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) values[i] = i;
+        return values;
+    }
+
+    static class TypeTable {
+        final RelationshipType[] types;
+        final int[] degrees;
+        final AliasTable alias;
+
+        TypeTable(Node node) {
+            List<RelationshipType> list = new ArrayList<>();
+            node.getRelationshipTypes().forEach(list::add);
+            types = list.toArray(new RelationshipType[0]);
+            degrees = new int[types.length];
+            double[] weights = new double[types.length];
+            for (int i = 0; i < types.length; i++) {
+                degrees[i] = node.getDegree(types[i]);
+                weights[i] = Math.sqrt(degrees[i]);
+            }
+            alias = new AliasTable(weights);
+        }
+    }
+
+    static class DegreeTable {
+        final Relationship[] relationships;
+        final AliasTable alias;
+
+        DegreeTable(Node node) {
+            List<Relationship> list = new ArrayList<>(node.getDegree());
+            node.getRelationships().forEach(list::add);
+            relationships = list.toArray(new Relationship[0]);
+            double[] weights = new double[relationships.length];
+            for (int i = 0; i < relationships.length; i++)
+                weights[i] = 1d / Math.log(2 + relationships[i].getOtherNode(node).getDegree());
+            alias = new AliasTable(weights);
+        }
+    }
+}
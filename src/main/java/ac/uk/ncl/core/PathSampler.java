@@ -0,0 +1,189 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.Atom;
+import ac.uk.ncl.structure.Instance;
+import ac.uk.ncl.structure.Rule;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.*;
+
+/**
+ * A path sampler for {@link Engine#regularPathSampler} that replaces the traversal framework.
+ * Paths of an instance are walked depth first in fixed size node and relationship buffers
+ * and are never materialized. The inclusion rules are those of {@link GraphOps#toDepthNoTrivial}
+ * under node unique paths. Every visited path packs its (relationship type, direction) sequence,
+ * its origin and whether it is closed into a long key. Abstract rules are built once per key
+ * and counted in {@link GenOps#ruleFrequency} for every path, as {@link GenOps#abstraction} does.
+ *
+ * At most fanOut relationships are sampled from every node. With {@link Settings#PATH_BUDGET} > 0,
+ * an instance yields at most that many paths, and the remaining budget of a node is split evenly
+ * over its sampled relationships, so no single branch exhausts it.
+ */
+public class PathSampler {
+    private final Map<String, Integer> typeIds = new HashMap<>();
+    private final Map<Long, Rule> rules = new HashMap<>();
+    private final int depth, fanOut, bits;
+
+    private final Node[] nodes;
+    private final long[] nodeIds;
+    private final Relationship[] relationships;
+    private final long[] keys;
+    private final List<List<Relationship>> selections = new ArrayList<>();
+    private int targetType;
+    private Instance instance;
+    private boolean fromSource;
+
+    private Rule[] sampledRules = new Rule[1024];
+    private long[] sampledTails = new long[1024];
+    private int size;
+
+    public PathSampler(GraphDatabaseService graph, int depth, int fanOut) {
+        try(Transaction tx = graph.beginTx()) {
+            graph.getAllRelationshipTypes().forEach(type -> typeIds.put(type.name(), typeIds.size()));
+            tx.success();
+        }
+        this.depth = depth;
+        this.fanOut = fanOut;
+        bits = depth == 0 ? 0 : 62 / depth;
+        nodes = new Node[depth + 1];
+        nodeIds = new long[depth + 1];
+        for (int i = 0; i < depth; i++) selections.add(new ArrayList<>());
+        relationships = new Relationship[depth];
+        keys = new long[depth + 1];
+    }
+
+    /**
+     * If the step codes of all relationship types fit in the keys of paths of the depth.
+     */
+    public static boolean supports(GraphDatabaseService graph, int depth) {
+        if(depth == 0) return false;
+        long types;
+        try(Transaction tx = graph.beginTx()) {
+            types = graph.getAllRelationshipTypes().stream().count();
+            tx.success();
+        }
+        return 2 * types + 2 <= 1L << (62 / depth);
+    }
+
+    /**
+     * Samples the paths of the instance, which are then accessible by {@link #rule} and {@link #tail}.
+     * @return the number of sampled paths
+     */
+    public int sample(GraphDatabaseService graph, Instance instance) {
+        this.instance = instance;
+        targetType = typeId(instance.type.name());
+        size = 0;
+        long budget = Settings.PATH_BUDGET > 0 ? Settings.PATH_BUDGET : Long.MAX_VALUE;
+        long half = budget == Long.MAX_VALUE ? budget : (budget + 1) / 2;
+
+        fromSource = true;
+        nodes[0] = graph.getNodeById(instance.startNodeId);
+        nodeIds[0] = instance.startNodeId;
+        keys[0] = 0;
+        visit(0, half);
+
+        fromSource = false;
+        nodes[0] = graph.getNodeById(instance.endNodeId);
+        nodeIds[0] = instance.endNodeId;
+        keys[0] = 0;
+        visit(0, budget == Long.MAX_VALUE ? budget : budget - size);
+        return size;
+    }
+
+    public Rule rule(int i) {
+        return sampledRules[i];
+    }
+
+    public long tail(int i) {
+        return sampledTails[i];
+    }
+
+    /**
+     * Extends the path in the buffers of the length within the budget, returns the number of paths emitted.
+     */
+    private long visit(int length, long budget) {
+        Node current = nodes[length];
+        List<Relationship> selected = selections.get(length);
+        selected.clear();
+        for (Relationship relationship : GraphOps.sampleRelationships(current, fanOut)) selected.add(relationship);
+
+        long used = 0;
+        for (int i = 0; i < selected.size() && used < budget; i++) {
+            Relationship relationship = selected.get(i);
+            boolean outgoing = relationship.getStartNodeId() == nodeIds[length];
+            long other = outgoing ? relationship.getEndNodeId() : relationship.getStartNodeId();
+            if(onPath(other, length)) continue;
+            nodes[length + 1] = relationship.getOtherNode(current);
+            nodeIds[length + 1] = other;
+            relationships[length] = relationship;
+            int type = typeId(relationship.getType().name());
+            keys[length + 1] = (keys[length] << bits) | (2 * type + (outgoing ? 1 : 2));
+
+            int evaluation = evaluate(length + 1, relationship, type);
+            if((evaluation & INCLUDE) != 0) {
+                emit(length + 1);
+                used++;
+            }
+            if((evaluation & CONTINUE) != 0) {
+                long share = (budget - used) / (selected.size() - i);
+                used += visit(length + 1, Math.max(1, share));
+            }
+        }
+        return used;
+    }
+
+    private static final int INCLUDE = 1;
+    private static final int CONTINUE = 2;
+
+    private int evaluate(int length, Relationship last, int type) {
+        long end = nodeIds[length];
+        boolean closed = fromSource ? end == instance.endNodeId : end == instance.startNodeId;
+        if(Settings.MEET_IN_THE_MIDDLE && closed) return 0;
+
+        boolean hasTargetRelation = type == targetType;
+        if(length == 1 && hasTargetRelation
+                && last.getStartNodeId() == instance.endNodeId && last.getEndNodeId() == instance.startNodeId)
+            return INCLUDE;
+        if(length == 1 && hasTargetRelation && closed) return 0;
+        if(closed) return fromSource ? INCLUDE : 0;
+        return (length <= depth ? INCLUDE : 0) | (length < depth ? CONTINUE : 0);
+    }
+
+    private void emit(int length) {
+        long key = (keys[length] << 1 | (fromSource ? 1 : 0)) << 1 | (isClosed(length) ? 1 : 0);
+        Rule rule = rules.get(key);
+        if(rule == null) {
+            List<Atom> bodyAtoms = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) bodyAtoms.add(new Atom(nodes[i], relationships[i]));
+            rule = new AbstractRule(new Atom(instance), bodyAtoms);
+            rules.put(key, rule);
+        }
+        GenOps.countAbstraction(rule);
+
+        if(size == sampledRules.length) {
+            sampledRules = Arrays.copyOf(sampledRules, size * 2);
+            sampledTails = Arrays.copyOf(sampledTails, size * 2);
+        }
+        sampledRules[size] = rule;
+        sampledTails[size++] = nodeIds[length];
+    }
+
+    private int typeId(String name) {
+        return typeIds.computeIfAbsent(name, k -> typeIds.size());
+    }
+
+    private boolean isClosed(int length) {
+        long end = nodeIds[length];
+        return end == instance.startNodeId || end == instance.endNodeId;
+    }
+
+    private boolean onPath(long node, int length) {
+        for (int i = 0; i <= length; i++) if(nodeIds[i] == node) return true;
+        return false;
+    }
+}
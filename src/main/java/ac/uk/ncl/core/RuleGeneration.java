@@ -3,6 +3,7 @@ package ac.uk.ncl.core;
 import ac.uk.ncl.structure.Instance;
 import ac.uk.ncl.structure.InstantiatedRule;
 import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Randomness;
 import ac.uk.ncl.utils.Timer;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Path;
@@ -22,7 +23,7 @@ public class RuleGeneration {
             Set<Rule> currentClosedRules = new HashSet<>();
             Set<Rule> openRules = new HashSet<>();
             Set<Rule> currentOpenRules = new HashSet<>();
-            Random rand = new Random();
+            Random rand = Randomness.get();
             Timer timer = new Timer(1, 20);
 
             int visitedPaths = 0;
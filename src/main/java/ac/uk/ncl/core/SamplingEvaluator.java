@@ -0,0 +1,176 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.core.AdjacencyIndex.SparseMatrix;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Logger;
+import ac.uk.ncl.utils.Randomness;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Estimated statistics of closed abstract rules from random samples, instead of the first groundings
+ * in graph iteration order. The body pairs of a rule are grouped by their start nodes: start nodes are
+ * drawn uniformly without replacement from the nodes with an edge of the first body atom, and all body
+ * ends of a sampled start are found layer by layer over the adjacency matrices, see {@link AdjacencyIndex}.
+ * Pairs connecting a node to itself are excluded, and other pairs are counted under the walk semantics,
+ * i.e., including walks that revisit a node, which are not groundings of the DFS for bodies of length >= 3.
+ *
+ * With x the body pairs and y the correct predictions of a start, the body size and support are
+ * estimated by N * mean(x) and N * mean(y) over N start nodes, and the confidence by the ratio
+ * sum(y) / sum(x), with a normal confidence interval from the linearized variance of the ratio and
+ * the finite population correction. Sampling of a rule stops when:
+ * - TIGHT: the half width of the interval is at most SAMPLE_PRECISION
+ * - BELOW: the upper bound of the interval is below STANDARD_CONF
+ * - EXHAUSTED: all start nodes are sampled, so the statistics are exact
+ * - BUDGET: LEARN_GROUNDINGS body pairs are found
+ * Intervals are only checked after SAMPLE_MIN start nodes with body pairs.
+ */
+public class SamplingEvaluator {
+    public enum Stop { TIGHT, BELOW, EXHAUSTED, BUDGET }
+
+    private static final double Z = 1.96;
+
+    public static void evaluate(GraphDatabaseService graph, Collection<Rule> closedRules, Set<Pair> groundTruth) {
+        long s = System.currentTimeMillis();
+        Map<String, int[]> startNodes = new HashMap<>();
+        Random random = Randomness.get();
+        Map<Stop, Integer> stops = new EnumMap<>(Stop.class);
+        long sampled = 0, bodyPairs = 0;
+        for (Rule rule : closedRules) {
+            SparseMatrix[] matrices = new SparseMatrix[rule.bodyLength()];
+            for (int i = 0; i < matrices.length; i++) matrices[i] = AdjacencyIndex.get(graph, rule.bodyAtoms.get(i));
+            int[] starts = startNodes.computeIfAbsent(rule.bodyAtoms.get(0).getPredicate(), k -> starts(matrices[0]));
+            Estimate estimate = new Estimate(starts.length);
+            int[] ends = new int[0];
+
+            for (int i = 0; estimate.stop == null; i++) {
+                if(i == starts.length) {
+                    estimate.stop = Stop.EXHAUSTED;
+                    break;
+                }
+                int j = i + random.nextInt(starts.length - i);
+                int start = starts[j];
+                starts[j] = starts[i];
+                starts[i] = start;
+
+                ends = ends(matrices, start, ends);
+                int x = 0, y = 0;
+                for (int end : ends) {
+                    if(end == -1) break;
+                    if(end == start) continue;
+                    x++;
+                    long startId = AdjacencyIndex.id(start), endId = AdjacencyIndex.id(end);
+                    Pair pair = rule.isFromSubject() ? new Pair(startId, endId) : new Pair(endId, startId);
+                    if(groundTruth.contains(pair)) y++;
+                }
+                estimate.add(x, y);
+                if(estimate.x >= Settings.LEARN_GROUNDINGS) estimate.stop = Stop.BUDGET;
+                else estimate.check();
+            }
+
+            rule.setStats(estimate.support(), estimate.bodySize(), groundTruth.size());
+            rule.stats.scMargin = estimate.margin();
+            rule.stats.stop = estimate.stop;
+            stops.merge(estimate.stop, 1, Integer::sum);
+            sampled += estimate.n;
+            bodyPairs += (long) estimate.x;
+        }
+
+        Logger.println(MessageFormat.format("# Sample Evaluated Closed Rules: {0} | Sampled Starts: {1} | Body Pairs: {2} | Stops: {3} | {4}s"
+                , closedRules.size(), sampled, bodyPairs, stops, (System.currentTimeMillis() - s) / 1000d), 2);
+    }
+
+    private static int[] starts(SparseMatrix matrix) {
+        int count = 0;
+        for (int r = 0; r < matrix.size; r++) if(matrix.rowPointers[r + 1] > matrix.rowPointers[r]) count++;
+        int[] starts = new int[count];
+        count = 0;
+        for (int r = 0; r < matrix.size; r++) if(matrix.rowPointers[r + 1] > matrix.rowPointers[r]) starts[count++] = r;
+        return starts;
+    }
+
+    /**
+     * The distinct body ends of the start node, followed by -1 if the buffer is not full.
+     */
+    private static int[] ends(SparseMatrix[] matrices, int start, int[] buffer) {
+        int[] frontier = new int[]{start};
+        int size = 1;
+        for (SparseMatrix matrix : matrices) {
+            int next = 0;
+            for (int i = 0; i < size; i++) next += matrix.rowPointers[frontier[i] + 1] - matrix.rowPointers[frontier[i]];
+            int[] reached = buffer.length >= next ? buffer : new int[next];
+            next = 0;
+            for (int i = 0; i < size; i++)
+                for (int k = matrix.rowPointers[frontier[i]]; k < matrix.rowPointers[frontier[i] + 1]; k++)
+                    reached[next++] = matrix.columns[k];
+            Arrays.sort(reached, 0, next);
+            int distinct = 0;
+            for (int i = 0; i < next; i++) if(i == 0 || reached[i] != reached[i - 1]) reached[distinct++] = reached[i];
+            buffer = frontier;
+            frontier = reached;
+            size = distinct;
+        }
+        if(size < frontier.length) frontier[size] = -1;
+        return frontier;
+    }
+
+    /**
+     * Running sums of the start nodes sampled for a rule.
+     */
+    static class Estimate {
+        final int population;
+        int n = 0, nonEmpty = 0;
+        double x = 0, y = 0, xx = 0, xy = 0, yy = 0;
+        Stop stop = null;
+
+        Estimate(int population) {
+            this.population = population;
+        }
+
+        void add(int x, int y) {
+            n++;
+            if(x > 0) nonEmpty++;
+            this.x += x;
+            this.y += y;
+            xx += (double) x * x;
+            xy += (double) x * y;
+            yy += (double) y * y;
+        }
+
+        double confidence() {
+            return x == 0 ? 0 : y / x;
+        }
+
+        double bodySize() {
+            return n == 0 ? 0 : population * x / n;
+        }
+
+        double support() {
+            return n == 0 ? 0 : population * y / n;
+        }
+
+        /**
+         * The half width of the confidence interval of the ratio estimate.
+         */
+        double margin() {
+            if(n == population) return 0;
+            if(n < 2 || x == 0) return Double.MAX_VALUE;
+            double ratio = confidence();
+            double residuals = yy - 2 * ratio * xy + ratio * ratio * xx;
+            double meanX = x / n;
+            double variance = (1 - (double) n / population) * residuals / (n - 1) / (n * meanX * meanX);
+            return Z * Math.sqrt(Math.max(0, variance));
+        }
+
+        void check() {
+            if(nonEmpty < Settings.SAMPLE_MIN) return;
+            double margin = margin();
+            if(margin <= Settings.SAMPLE_PRECISION) stop = Stop.TIGHT;
+            else if(confidence() + margin < Settings.STANDARD_CONF) stop = Stop.BELOW;
+        }
+    }
+}
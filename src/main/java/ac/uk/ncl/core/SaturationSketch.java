@@ -0,0 +1,103 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Rule;
+
+import java.util.Arrays;
+
+/**
+ * The saturation of path sampling, i.e., the ratio of the rules of a batch already seen in previous
+ * batches, tracked on 64-bit rule fingerprints instead of rule objects, see {@link Rule#fingerprint()}.
+ *
+ * With {@link Settings#SKETCH_SATURATION}, the seen fingerprints are an adaptive hash sample of at most
+ * SKETCH_SIZE fingerprints: a fingerprint is kept if the first level bits of its mixed hash are zero,
+ * and the level is raised, dropping half of the sample, whenever the sample is full. The ratio of a
+ * batch is then estimated on its fingerprints kept at the current level. Otherwise all fingerprints
+ * are kept and the ratio is exact up to fingerprint collisions.
+ */
+public class SaturationSketch {
+    private final int capacity;
+    private long[] seen = new long[1024];
+    int size = 0;
+    int level = 0;
+    private long[] batch = new long[256];
+    private int batchSize = 0;
+    private double saturation = 0d;
+
+    public SaturationSketch() {
+        capacity = Settings.SKETCH_SATURATION ? Settings.SKETCH_SIZE : Integer.MAX_VALUE;
+    }
+
+    public void add(Rule rule) {
+        if(batchSize == batch.length) batch = Arrays.copyOf(batch, batchSize * 2);
+        batch[batchSize++] = mix(rule.fingerprint());
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Closes the current batch and adds its rules to the seen ones.
+     * @return the ratio of the distinct rules of the batch seen before, or the last ratio if the batch has no kept rules
+     */
+    public double close() {
+        Arrays.sort(batch, 0, batchSize);
+        int sampled = 0, overlap = 0;
+        for (int i = 0; i < batchSize; i++) {
+            if((i > 0 && batch[i] == batch[i - 1]) || !kept(batch[i])) continue;
+            sampled++;
+            if(contains(batch[i])) overlap++;
+        }
+        for (int i = 0; i < batchSize; i++) if(kept(batch[i])) insert(batch[i]);
+        batchSize = 0;
+        if(sampled > 0) saturation = (double) overlap / sampled;
+        return saturation;
+    }
+
+    private boolean kept(long hash) {
+        return level == 0 || (hash >>> (64 - level)) == 0;
+    }
+
+    private boolean contains(long hash) {
+        int mask = seen.length - 1;
+        for (int slot = (int) hash & mask; seen[slot] != 0; slot = (slot + 1) & mask)
+            if(seen[slot] == hash) return true;
+        return false;
+    }
+
+    private void insert(long hash) {
+        int mask = seen.length - 1;
+        int slot = (int) hash & mask;
+        for (; seen[slot] != 0; slot = (slot + 1) & mask)
+            if(seen[slot] == hash) return;
+        seen[slot] = hash;
+        size++;
+        if(size > capacity) {
+            level++;
+            rebuild(seen.length);
+        } else if(2 * size > seen.length) rebuild(seen.length * 2);
+    }
+
+    private void rebuild(int length) {
+        long[] old = seen;
+        seen = new long[length];
+        size = 0;
+        int mask = length - 1;
+        for (long hash : old) {
+            if(hash == 0 || !kept(hash)) continue;
+            int slot = (int) hash & mask;
+            while(seen[slot] != 0) slot = (slot + 1) & mask;
+            seen[slot] = hash;
+            size++;
+        }
+    }
+
+    private static long mix(long fingerprint) {
+        long z = fingerprint;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return z == 0 ? 1 : z;
+    }
+}
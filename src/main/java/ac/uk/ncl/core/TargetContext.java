@@ -0,0 +1,97 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.structure.Pair;
+import com.google.common.collect.ImmutableSetMultimap;
+
+import java.util.*;
+
+/**
+ * What instantiated rule generation needs from the training instances of the current target. It only
+ * depends on the target, so it is built once before the instantiation tasks start and shared read-only
+ * by all abstract rules. The entities of the instances get dense ids, and for both orientations of rules,
+ * i.e., rules predicting objects from anchored subjects and the inverse, the context holds:
+ * - the anchorings ranked by their number of instances, at most HEAD_CAP
+ * - the originals of every ranked anchoring, and the number of ranked anchorings of every original
+ * - the ground truth of every ranked anchoring as a bitmap over the dense ids of its originals
+ */
+public class TargetContext {
+    public final Set<Pair> groundTruth;
+    private final Map<Long, Integer> denseIds = new HashMap<>();
+    private final Orientation subject;
+    private final Orientation object;
+
+    public TargetContext(Set<Pair> groundTruth, List<Long> subRankedAnchorings, List<Long> objRankedAnchorings) {
+        this.groundTruth = groundTruth;
+        for (Pair pair : groundTruth) {
+            denseIds.putIfAbsent(pair.sub, denseIds.size());
+            denseIds.putIfAbsent(pair.obj, denseIds.size());
+        }
+        subject = new Orientation(true, subRankedAnchorings);
+        object = new Orientation(false, objRankedAnchorings);
+    }
+
+    /**
+     * The context of rules with the orientation, see {@link ac.uk.ncl.structure.Rule#isFromSubject()}.
+     */
+    public Orientation of(boolean fromSubject) {
+        return fromSubject ? subject : object;
+    }
+
+    public int size() {
+        return groundTruth.size();
+    }
+
+    public int denseId(long entity) {
+        return denseIds.getOrDefault(entity, -1);
+    }
+
+    /**
+     * The instances of the target seen from the anchorings, as (anchoring, original) pairs.
+     */
+    public interface GroundTruth {
+        boolean contains(long anchoring, long original);
+    }
+
+    public class Orientation implements GroundTruth {
+        public final List<Long> rankedAnchorings;
+        public final ImmutableSetMultimap<Long, Long> anchoringToOriginal;
+        public final Map<Long, Integer> originalToAnchoringCount;
+        /**
+         * If the anchorings are in descending order of their ground truth counts.
+         */
+        public final boolean ranked;
+        private final Map<Long, BitSet> truths = new HashMap<>();
+
+        Orientation(boolean fromSubject, List<Long> anchorings) {
+            rankedAnchorings = Collections.unmodifiableList(new ArrayList<>(anchorings));
+            Set<Long> anchoringSet = new HashSet<>(anchorings);
+            ImmutableSetMultimap.Builder<Long, Long> builder = ImmutableSetMultimap.builder();
+            for (Pair pair : groundTruth) {
+                long original = fromSubject ? pair.sub : pair.obj;
+                long anchoring = fromSubject ? pair.obj : pair.sub;
+                if(!anchoringSet.contains(anchoring)) continue;
+                builder.put(anchoring, original);
+                truths.computeIfAbsent(anchoring, k -> new BitSet()).set(denseIds.get(original));
+            }
+            anchoringToOriginal = builder.build();
+
+            Map<Long, Integer> counts = new HashMap<>();
+            anchoringToOriginal.values().forEach(original -> counts.merge(original, 1, Integer::sum));
+            originalToAnchoringCount = Collections.unmodifiableMap(counts);
+
+            boolean descending = true;
+            for (int i = 1; i < rankedAnchorings.size() && descending; i++)
+                descending = anchoringToOriginal.get(rankedAnchorings.get(i)).size()
+                        <= anchoringToOriginal.get(rankedAnchorings.get(i - 1)).size();
+            ranked = descending;
+        }
+
+        @Override
+        public boolean contains(long anchoring, long original) {
+            BitSet truth = truths.get(anchoring);
+            if(truth == null) return false;
+            int id = denseId(original);
+            return id != -1 && truth.get(id);
+        }
+    }
+}
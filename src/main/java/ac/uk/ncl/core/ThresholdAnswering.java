@@ -0,0 +1,266 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.InstantiatedRule;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Deadline;
+import ac.uk.ncl.utils.IO;
+import ac.uk.ncl.utils.MathUtils;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.*;
+
+/**
+ * Rule application by answering the test queries one at a time with a threshold algorithm, instead
+ * of applying every rule to all queries. Candidates are ranked by their rule confidences sorted in
+ * descending order and compared lexicographically, see {@link Engine#rankCandidates}. Rules are applied
+ * to a query in descending order of confidence, so the score vectors of candidates only grow at the end
+ * and a candidate found later starts with a lower score than all the scores seen so far.
+ *
+ * After every confidence level, the top TOP_K of a query is decided when at least TOP_K candidates are
+ * found and no two adjacent candidates among the first TOP_K + 1 have the same score vector: any two
+ * candidates already differ at a fixed position, or one vector is a prefix of the other and can only
+ * be extended by lower scores. The remaining rules are then skipped for the query.
+ *
+ * The rankings below TOP_K are made from the rules applied so far, so they are partial for decided
+ * queries. Only hits@k for k <= TOP_K and MRR truncated at TOP_K are thus reported, see {@link Engine#reported}.
+ * Queries left when the deadline expires are not answered and counted as skipped.
+ */
+public class ThresholdAnswering {
+    private final GraphDatabaseService graph;
+    private final List<Rule> rules;
+    private final Set<Pair> train;
+    private final List<Set<Long>> others;
+
+    public ThresholdAnswering(GraphDatabaseService graph, Collection<Rule> abstractRules, Set<Pair> train, Set<Pair> test) {
+        this.graph = graph;
+        this.train = train;
+        rules = appliedRules(abstractRules);
+
+        Set<Long> subs = new HashSet<>(), objs = new HashSet<>();
+        for (Pair pair : test) {
+            subs.add(pair.sub);
+            objs.add(pair.obj);
+        }
+        others = Arrays.asList(objs, subs);
+    }
+
+    /**
+     * The rules suggesting candidates in rule application, i.e., the closed abstract rules and the top
+     * TOP_INS_RULES instantiated rules of every type, in descending order of standard confidence.
+     */
+    static List<Rule> appliedRules(Collection<Rule> abstractRules) {
+        List<Rule> selected = new ArrayList<>();
+        for (Rule rule : abstractRules) {
+            if(rule.isClosed()) {
+                selected.add(rule);
+                continue;
+            }
+            AbstractRule abstractRule = (AbstractRule) rule;
+            selected.addAll(top(abstractRule.headRules.ranked()));
+            selected.addAll(top(abstractRule.tailRules.ranked()));
+            selected.addAll(top(abstractRule.bothRules.ranked()));
+        }
+        return IO.rankedRulesBySC(selected);
+    }
+
+    private static List<Rule> top(List<Rule> ranked) {
+        return ranked.subList(0, Math.min(ranked.size(), Settings.TOP_INS_RULES));
+    }
+
+    /**
+     * Answers the subject and object queries of the test set in parallel.
+     * @return the rules suggesting every candidate
+     */
+    public Multimap<Pair, Rule> answer() {
+        Multimap<Pair, Rule> candidates = MultimapBuilder.hashKeys().hashSetValues().build();
+        List<long[]> queries = new ArrayList<>();
+        for (int option = 0; option < 2; option++)
+            for (long entity : others.get(1 - option)) queries.add(new long[]{entity, option});
+        if(queries.isEmpty()) return candidates;
+
+        int threadNum = Math.min(Settings.THREAD_NUMBER, queries.size());
+        int[][] intervals = MathUtils.createIntervals(queries.size(), threadNum);
+        Answerer[] answerers = new Answerer[threadNum];
+        for (int i = 0; i < threadNum; i++)
+            answerers[i] = new Answerer(queries.subList(intervals[i][0], intervals[i][1]));
+        try {
+            for (Answerer answerer : answerers) answerer.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        for (Answerer answerer : answerers) {
+            candidates.putAll(answerer.candidates);
+            answered += answerer.answered;
+            skipped += answerer.queries.size() - answerer.answered;
+            decided += answerer.decided;
+            applied += answerer.applied;
+        }
+        return candidates;
+    }
+
+    private long answered = 0, decided = 0, applied = 0, skipped = 0;
+
+    public long getAnswered() {
+        return answered;
+    }
+
+    public long getDecided() {
+        return decided;
+    }
+
+    /**
+     * The number of queries not answered as the deadline expired.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public double getAverageRules() {
+        return answered == 0 ? 0 : (double) applied / answered;
+    }
+
+    public int getRules() {
+        return rules.size();
+    }
+
+    class Answerer extends Thread {
+        final List<long[]> queries;
+        final Multimap<Pair, Rule> candidates = MultimapBuilder.hashKeys().hashSetValues().build();
+        long answered = 0, decided = 0, applied = 0;
+
+        Answerer(List<long[]> queries) {
+            super();
+            this.queries = queries;
+            start();
+        }
+
+        @Override
+        public void run() {
+            try(Transaction tx = graph.beginTx()) {
+                for (long[] query : queries) {
+                    if(Deadline.expired()) break;
+                    answer(query[0], (int) query[1]);
+                }
+                tx.success();
+            }
+        }
+
+        private void answer(long query, int option) {
+            Map<Long, Scores> scores = new HashMap<>();
+            for (int i = 0; i < rules.size(); i++) {
+                Rule rule = rules.get(i);
+                applied++;
+                for (long candidate : apply(rule, query, option)) {
+                    Pair pair = option == 0 ? new Pair(query, candidate) : new Pair(candidate, query);
+                    if(query == candidate || train.contains(pair)) continue;
+                    candidates.put(pair, rule);
+                    scores.computeIfAbsent(candidate, k -> new Scores()).add(rule.stats.sc);
+                }
+                double next = i + 1 < rules.size() ? rules.get(i + 1).stats.sc : -1;
+                if(next < rule.stats.sc && i + 1 < rules.size() && decided(scores.values())) {
+                    decided++;
+                    break;
+                }
+            }
+            answered++;
+        }
+
+        /**
+         * The candidates the rule suggests for the query, where option = 0 for (query, ?) and = 1 for (?, query).
+         */
+        private Collection<Long> apply(Rule rule, long query, int option) {
+            boolean onOrigin = (option == 0) == rule.isFromSubject();
+            int type = rule instanceof InstantiatedRule ? ((InstantiatedRule) rule).getType() : -1;
+            int cap = Settings.APPLY_GROUNDINGS == 0 ? Integer.MAX_VALUE : Settings.APPLY_GROUNDINGS;
+            switch (type) {
+                case 0:
+                    if(onOrigin) return reaches(rule, query, -1) ? Collections.singleton(rule.getAnchoring()) : Collections.emptySet();
+                    if(query != rule.getAnchoring()) return Collections.emptySet();
+                    Set<Long> originals = new HashSet<>();
+                    for (Pair grounding : GraphOps.bodyGroundings(graph, rule, true)) originals.add(grounding.sub);
+                    return originals;
+                case 1:
+                    if(onOrigin) return reaches(rule, query, rule.getTail()) ? others.get(option) : Collections.emptySet();
+                    return walk(rule, rule.getTail(), true, cap);
+                case 2:
+                    if(onOrigin) return reaches(rule, query, rule.getTail()) ? Collections.singleton(rule.getAnchoring()) : Collections.emptySet();
+                    if(query != rule.getAnchoring()) return Collections.emptySet();
+                    return walk(rule, rule.getTail(), true, cap);
+                default:
+                    return walk(rule, query, !onOrigin, cap);
+            }
+        }
+
+        private boolean reaches(Rule rule, long from, long tail) {
+            return ThresholdAnswering.reaches(graph, rule, from, tail);
+        }
+
+        /**
+         * The other ends of the body groundings from the node, walking from the last atom if backward.
+         */
+        private Set<Long> walk(Rule rule, long from, boolean backward, int cap) {
+            GroundingPlanner.Walk walk = new GroundingPlanner.Walk(rule.bodyAtoms, backward, -1, cap)
+                    .from(graph.getNodeById(from), rule);
+            Set<Long> ends = new HashSet<>();
+            for (int i = 0; i < walk.endpoints.size(); i++) ends.add(backward ? walk.endpoints.first(i) : walk.endpoints.second(i));
+            return ends;
+        }
+    }
+
+    /**
+     * If the body of the rule has a grounding from the node, ending at the tail unless tail = -1.
+     */
+    static boolean reaches(GraphDatabaseService graph, Rule rule, long from, long tail) {
+        return new GroundingPlanner.Walk(rule.bodyAtoms, false, tail, 1).from(graph.getNodeById(from), rule)
+                .endpoints.size() > 0;
+    }
+
+    /**
+     * If the order of the first TOP_K candidates can no longer change.
+     */
+    static boolean decided(Collection<Scores> scores) {
+        int k = Settings.TOP_K;
+        if(scores.size() < k) return false;
+        PriorityQueue<Scores> best = new PriorityQueue<>(k + 2);
+        for (Scores candidate : scores) {
+            best.add(candidate);
+            if(best.size() > k + 1) best.poll();
+        }
+        List<Scores> leading = new ArrayList<>(best);
+        leading.sort(Collections.reverseOrder());
+        for (int i = 0; i + 1 < leading.size(); i++)
+            if(leading.get(i).compareTo(leading.get(i + 1)) == 0) return false;
+        return true;
+    }
+
+    /**
+     * The confidences of the rules suggesting a candidate in descending order, ordered lexicographically.
+     */
+    static class Scores implements Comparable<Scores> {
+        double[] values = new double[4];
+        int size = 0;
+
+        void add(double value) {
+            if(size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        @Override
+        public int compareTo(Scores o) {
+            for (int i = 0; i < Math.max(size, o.size); i++) {
+                double p = i < size ? values[i] : -1;
+                double q = i < o.size ? o.values[i] : -1;
+                if(p != q) return Double.compare(p, q);
+            }
+            return 0;
+        }
+    }
+}
@@ -55,11 +55,13 @@ public class AnyBURL extends Engine {
             long ruleApplicationTimer = System.currentTimeMillis();
             GraphOps.removeRelationshipAPI(graph, train);
             Multimap<Pair, Rule> candidates = ruleApplication(trainPairs, testPairs, refinedAbstractRules);
-            GraphOps.addRelationshipAPI(graph, train, trainFile);
+            boolean explaining = lazy != null;
+            if(!explaining) GraphOps.addRelationshipAPI(graph, train, trainFile);
             globalRuleApplicationTimer += System.currentTimeMillis() - ruleApplicationTimer;
 
             long ruleEvaluationTimer = System.currentTimeMillis();
             modelEvaluation(testPairs, candidates);
+            if(explaining) GraphOps.addRelationshipAPI(graph, train, trainFile);
             globalRuleEvaluationTimer += System.currentTimeMillis() - ruleEvaluationTimer;
 
             tx.success();
@@ -5,12 +5,15 @@ import ac.uk.ncl.analysis.Validation;
 import ac.uk.ncl.core.Engine;
 import ac.uk.ncl.core.GenOps;
 import ac.uk.ncl.core.GraphOps;
+import ac.uk.ncl.core.MemoryGovernor;
 import ac.uk.ncl.structure.Instance;
 import ac.uk.ncl.structure.Pair;
 import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Deadline;
 import ac.uk.ncl.utils.Helpers;
 import ac.uk.ncl.utils.IO;
 import ac.uk.ncl.utils.Logger;
+import ac.uk.ncl.utils.Randomness;
 import com.google.common.collect.Multimap;
 import org.neo4j.graphdb.Transaction;
 
@@ -41,13 +44,15 @@ public class GPFL2 extends Engine {
                 return;
             }
             totalTargetsLearned++;
+            Deadline.start();
+            MemoryGovernor.start();
 
             Set<Pair> trainPairs = train.stream().map(Instance::toPair).collect(Collectors.toSet());
             Set<Pair> testPairs = test.stream().map(Instance::toPair).collect(Collectors.toSet());
 
             long ruleLearningTimer = System.currentTimeMillis();
             GraphOps.removeRelationshipAPI(graph, test);
-            Set<Rule> abstractRules = regularPathSampler(train, false);
+            Set<Rule> abstractRules = generateAbstractRules(train);
             Logger.println("# Generated Abstract Rules: " + abstractRules.size(), 1);
 
             if(Settings.VALIDATE_EXP1 || Settings.VALIDATE_EXP2) {
@@ -59,6 +64,22 @@ public class GPFL2 extends Engine {
             else abstractRules = new HashSet<>(sampleRankedAbstractRules(Settings.TOP_ABS_RULES));
 
             Logger.println("# Selected Abstract Rules: " + abstractRules.size(), 1);
+            Double reused = reusedEvaluation(abstractRules);
+            if(reused != null) {
+                globalRuleLearningTimer += System.currentTimeMillis() - ruleLearningTimer;
+                GraphOps.addRelationshipAPI(graph, test, testFile);
+                Logger.println("# Reused Evaluation of Identical Selected Rules: MRR = " + reused, 1);
+                globalMRR.add(reused);
+                if(Settings.VALIDATE_EXP1 || Settings.VALIDATE_EXP2) {
+                    Validation.record(format.format(reused) + "\n");
+                    Validation.currentMRR = Double.parseDouble(format.format(reused));
+                }
+                Deadline.report();
+                MemoryGovernor.finish();
+                tx.success();
+                return;
+            }
+
             Set<Rule> instantiatedRules = instantiateRules(abstractRules, trainPairs);
             globalInstantiatedRuleCount += instantiatedRules.size();
             globalAbstractRuleCount += abstractRules.size();
@@ -72,14 +93,24 @@ public class GPFL2 extends Engine {
             GraphOps.removeRelationshipAPI(graph, train);
             Multimap<Pair, Rule> candidates = ruleApplication(trainPairs, testPairs, refinedAbstractRules);
 
-            GraphOps.addRelationshipAPI(graph, train, trainFile);
-            GraphOps.addRelationshipAPI(graph, test, testFile);
+            boolean explaining = lazy != null;
+            if(!explaining) {
+                GraphOps.addRelationshipAPI(graph, train, trainFile);
+                GraphOps.addRelationshipAPI(graph, test, testFile);
+            }
 
             globalRuleApplicationTimer += System.currentTimeMillis() - ruleApplicationTimer;
 
             long ruleEvaluationTimer = System.currentTimeMillis();
             Multimap<Pair, Rule> verifications = modelEvaluation(testPairs, candidates);
+            if(explaining) {
+                GraphOps.addRelationshipAPI(graph, train, trainFile);
+                GraphOps.addRelationshipAPI(graph, test, testFile);
+            }
             globalRuleEvaluationTimer += System.currentTimeMillis() - ruleEvaluationTimer;
+            if(!globalMRR.isEmpty()) onEvaluated(globalMRR.get(globalMRR.size() - 1));
+            Deadline.report();
+            MemoryGovernor.finish();
 
             if(Settings.RULE_GRAPH) {
                 long s = System.currentTimeMillis();
@@ -91,6 +122,27 @@ public class GPFL2 extends Engine {
         }
     }
 
+    /**
+     * Samples the abstract rules of the target, with their frequencies in {@link GenOps#ruleFrequency}.
+     */
+    protected Set<Rule> generateAbstractRules(List<Instance> train) {
+        return regularPathSampler(train, false);
+    }
+
+    /**
+     * The MRR of an earlier run that selected the same abstract rules, in which case rule instantiation,
+     * application and evaluation are skipped. Never reused by default.
+     */
+    protected Double reusedEvaluation(Set<Rule> selectedAbstractRules) {
+        return null;
+    }
+
+    /**
+     * Called with the MRR of every evaluated run, before the caps of the target are restored.
+     */
+    protected void onEvaluated(double mrr) {
+    }
+
     public Set<Rule> sampleRankedAbstractRules(int sampleSize) {
         if(sampleSize == 0 || sampleSize >= GenOps.ruleFrequency.keySet().size()) return GenOps.ruleFrequency.keySet();
 
@@ -116,7 +168,7 @@ public class GPFL2 extends Engine {
 
         Set<Rule> results = new HashSet<>();
         List<Rule> pool = new ArrayList<>(openRules);
-        Random rand = new Random();
+        Random rand = Randomness.get();
         while (results.size() < sampleSize) results.add(pool.get(rand.nextInt(pool.size())));
         results.addAll(closedRules);
         return results;
@@ -3,7 +3,8 @@ package ac.uk.ncl.structure;
 import ac.uk.ncl.Settings;
 import ac.uk.ncl.core.GenOps;
 import ac.uk.ncl.core.GraphOps;
-import ac.uk.ncl.utils.IO;
+import ac.uk.ncl.core.TargetContext;
+import ac.uk.ncl.utils.Randomness;
 import com.google.common.collect.*;
 import org.neo4j.graphdb.*;
 
@@ -11,9 +12,10 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 public class AbstractRule extends Rule {
-    public Set<Rule> headRules = Sets.newHashSet();
-    public Set<Rule> tailRules = Sets.newHashSet();
-    public Set<Rule> bothRules = Sets.newHashSet();
+    public TopRuleSet headRules = new TopRuleSet();
+    public TopRuleSet tailRules = new TopRuleSet();
+    public TopRuleSet bothRules = new TopRuleSet();
+    private long fingerprint = 0;
 
     public AbstractRule(Atom h, List<Atom> b) {
         super( h, b );
@@ -40,8 +42,7 @@ public class AbstractRule extends Rule {
      */
     public Set<Rule> GenSharedMethod(GraphDatabaseService graph, Set<Pair> groundTruth) {
         Set<Rule> result = Sets.newHashSet();
-        Set<Pair> bodyGroundings = GraphOps.GPFLPathToPairAdaptor(
-                GraphOps.bodyGroundingCoreAPI(graph, this, false));
+        Set<Pair> bodyGroundings = GraphOps.bodyGroundings(graph, this, false);
         if(closed) {
             int totalPrediction = 0, correctPrediction = 0;
             for (Pair grounding : bodyGroundings) {
@@ -51,13 +52,15 @@ public class AbstractRule extends Rule {
             }
             setStats(correctPrediction, totalPrediction, groundTruth.size());
         } else {
+            TargetContext.GroundTruth truth = (anchoring, original) ->
+                    groundTruth.contains(fromSubject ? new Pair(original, anchoring) : new Pair(anchoring, original));
             for (Rule rule : GenOps.deHierarchy.get(this)) {
                 InstantiatedRule instantiatedRule = (InstantiatedRule) rule;
                 if(instantiatedRule.getType() == 0 && Settings.USE_HEAD_RULES) {
                     Counter headPredictions= new Counter();
                     long anchoring = instantiatedRule.getAnchoring();
                     Set<Long> originals = bodyGroundings.stream().map(pair -> pair.sub).collect(Collectors.toSet());
-                    evaluateRule(rule, groundTruth, anchoring, originals, headRules, headPredictions);
+                    evaluateRule(rule, truth, groundTruth.size(), anchoring, originals, headRules, headPredictions);
                 }
                 else if(instantiatedRule.getType() == 1 && Settings.USE_TAIL_RULES) {
                     Counter tailPredictions = new Counter();
@@ -65,7 +68,7 @@ public class AbstractRule extends Rule {
                     Set<Long> originals = new HashSet<>();
                     for (Pair bodyGrounding : bodyGroundings) if(bodyGrounding.obj == tail) originals.add(bodyGrounding.sub);
                     List<Long> anchorings = new ArrayList<>(GenOps.ruleToAnchorings.get(this));
-                    evaluateTailRules(rule, groundTruth, anchorings, originals, tailRules, tailPredictions);
+                    evaluateTailRules(rule, truth, groundTruth.size(), anchorings, originals, tailRules, tailPredictions);
                 }
                 else if(instantiatedRule.getType() == 2 && Settings.USE_BOTH_RULES) {
                     Counter bothPredictions = new Counter();
@@ -74,7 +77,7 @@ public class AbstractRule extends Rule {
                     Set<Long> originals = new HashSet<>();
                     for (Pair bodyGrounding : bodyGroundings)
                         if(bodyGrounding.obj == tail) originals.add(bodyGrounding.sub);
-                    evaluateRule(rule, groundTruth, anchoring, originals, bothRules, bothPredictions);
+                    evaluateRule(rule, truth, groundTruth.size(), anchoring, originals, bothRules, bothPredictions);
                 }
             }
             evaluateOpenRule();
@@ -90,15 +93,19 @@ public class AbstractRule extends Rule {
      * uses the shared body grounding to mitigate the inefficiency introduced by
      * oversaturation. In detail, for each abstract rule, the system will create
      * instantiated rules using the anchorings extracted directly from the training dataset
-     * and the tails from the body grounding.
+     * and the tails from the body grounding. The anchorings and ground truth are shared by all
+     * abstract rules of the target in the context.
      */
-    public Set<Rule> GenSpecSharedMethod(GraphDatabaseService graph, Set<Pair> groundTruth, List<Long> anchorings) {
+    public Set<Rule> GenSpecSharedMethod(GraphDatabaseService graph, TargetContext context) {
         Set<Rule> result = Sets.newHashSet();
-        Set<Pair> bodyGroundings = GraphOps.GPFLPathToPairAdaptor(
-                GraphOps.bodyGroundingCoreAPI(graph, this, false));
-        Set<Long> originals = bodyGroundings.stream().map(pair -> pair.sub).collect(Collectors.toSet());
+        Set<Pair> groundTruth = context.groundTruth;
+        TargetContext.Orientation target = context.of(fromSubject);
+        List<Long> anchorings = target.rankedAnchorings;
+        Multimap<Long, Long> anchoringToOriginal = target.anchoringToOriginal;
+        Map<Long, Integer> originalToAnchoringCount = target.originalToAnchoringCount;
 
-        Multimap<Long, Long> anchoringToOriginal = getAnchoringToOriginal(groundTruth, anchorings);
+        Set<Pair> bodyGroundings = GraphOps.bodyGroundings(graph, this, false);
+        Set<Long> originals = bodyGroundings.stream().map(pair -> pair.sub).collect(Collectors.toSet());
         Multimap<Long, Long> tailToOriginal = getTailToOriginal(bodyGroundings);
 
         List<Long> tails = getRankedTails(bodyGroundings);
@@ -115,23 +122,40 @@ public class AbstractRule extends Rule {
         } else {
             if(Settings.USE_HEAD_RULES) {
                 Counter headPredictions = new Counter();
-                for (Long anchoring : anchorings) {
+                boolean ranked = target.ranked;
+                for (int i = 0; i < anchorings.size(); i++) {
+                    long anchoring = anchorings.get(i);
+                    long predictions = Math.min(originals.size(), Math.max(1, Settings.PREDICTION_CAP - headPredictions.count));
+                    if(!reachable(Math.min(anchoringToOriginal.get(anchoring).size(), predictions), predictions)) {
+                        if(!ranked) {
+                            GenOps.tickPrunedRules(0, 1);
+                            continue;
+                        }
+                        GenOps.tickPrunedRules(0, anchorings.size() - i);
+                        break;
+                    }
                     if(GenOps.getGlobalInsRuleCounter() > Settings.INS_RULE_CAP) break;
                     GenOps.tickGlobalInsRuleCounter();
-                    String[] anchoringName = {(String) graph.getNodeById(anchoring).getProperty(Settings.NEO4J_IDENTIFIER)};
-                    Rule headRule = new InstantiatedRule(this, anchoringName, new long[]{anchoring}, 0);
-                    if (evaluateRule(headRule, groundTruth, anchoring, originals, headRules, headPredictions)) break;
+                    Rule headRule = new InstantiatedRule(this, new long[]{anchoring}, 0);
+                    if (evaluateRule(headRule, target, context.size(), anchoring, originals, headRules, headPredictions)) break;
                 }
             }
 
             if(Settings.USE_TAIL_RULES) {
                 Counter tailPredictions = new Counter();
                 for (Long tail : tails) {
+                    Collection<Long> tailOriginals = tailToOriginal.get(tail);
+                    int bound = 0;
+                    for (Long original : tailOriginals) bound += originalToAnchoringCount.getOrDefault(original, 0);
+                    long predictions = (long) anchorings.size() * tailOriginals.size();
+                    if(!reachable(bound, Math.min(predictions, Math.max(1, Settings.PREDICTION_CAP - tailPredictions.count)))) {
+                        GenOps.tickPrunedRules(1, 1);
+                        continue;
+                    }
                     if(GenOps.getGlobalInsRuleCounter() > Settings.INS_RULE_CAP) break;
                     GenOps.tickGlobalInsRuleCounter();
-                    String[] tailName = {(String) graph.getNodeById(tail).getProperty(Settings.NEO4J_IDENTIFIER)};
-                    Rule tailRule = new InstantiatedRule(this, tailName, new long[]{tail}, 1);
-                    if (evaluateTailRules(tailRule, groundTruth, anchorings, tailToOriginal.get(tail), tailRules, tailPredictions))
+                    Rule tailRule = new InstantiatedRule(this, new long[]{tail}, 1);
+                    if (evaluateTailRules(tailRule, target, context.size(), anchorings, tailToOriginal.get(tail), tailRules, tailPredictions))
                         break;
                 }
             }
@@ -140,13 +164,16 @@ public class AbstractRule extends Rule {
                 Counter bothPredictions = new Counter();
                 for(Pair pair : createBothRuleInstances(tailToOriginal, anchoringToOriginal)) {
                     if(isTrivial(pair)) continue;
+                    long predictions = Math.min(tailToOriginal.get(pair.obj).size(), Math.max(1, Settings.PREDICTION_CAP - bothPredictions.count));
+                    if(!reachable(Math.min(anchoringToOriginal.get(pair.sub).size(), predictions), predictions)) {
+                        GenOps.tickPrunedRules(2, 1);
+                        continue;
+                    }
                     if(GenOps.getGlobalInsRuleCounter() > Settings.INS_RULE_CAP) break;
                     GenOps.tickGlobalInsRuleCounter();
-                    String[] ins = {(String) graph.getNodeById(pair.sub).getProperty(Settings.NEO4J_IDENTIFIER)
-                            , (String) graph.getNodeById(pair.obj).getProperty(Settings.NEO4J_IDENTIFIER)};
-                    Rule bothRule = new InstantiatedRule(this, ins, new long[]{pair.sub, pair.obj}, 2);
-                    if (evaluateRule(bothRule, groundTruth, pair.sub
-                            , new HashSet<>(tailToOriginal.get(pair.obj)), bothRules, bothPredictions)) break;
+                    Rule bothRule = new InstantiatedRule(this, new long[]{pair.sub, pair.obj}, 2);
+                    if (evaluateRule(bothRule, target, context.size(), pair.sub
+                            , tailToOriginal.get(pair.obj), bothRules, bothPredictions)) break;
                 }
             }
 
@@ -172,14 +199,13 @@ public class AbstractRule extends Rule {
         return rankedEntries.stream().map(Map.Entry::getKey).collect(Collectors.toList());
     }
 
-    private Multimap<Long, Long> getAnchoringToOriginal(Set<Pair> groundTruth, List<Long> anchorings) {
-        Multimap<Long, Long> anchoringToOriginal = MultimapBuilder.hashKeys().hashSetValues().build();
-        for (Pair pair : groundTruth) {
-            Long original = fromSubject ? pair.sub : pair.obj;
-            Long anchoring = fromSubject ? pair.obj : pair.sub;
-            if(anchorings.contains(anchoring)) anchoringToOriginal.put(anchoring, original);
-        }
-        return anchoringToOriginal;
+    /**
+     * If a rule with at most maxSupport correct predictions out of at least minPredictions
+     * predictions can still meet the support and confidence thresholds.
+     */
+    private boolean reachable(long maxSupport, long minPredictions) {
+        return maxSupport >= Settings.SUPPORT
+                && (double) maxSupport / (minPredictions + Settings.CONFIDENCE_OFFSET) >= Settings.STANDARD_CONF;
     }
 
     private Multimap<Long, Long> getTailToOriginal(Set<Pair> bodyGroundings) {
@@ -207,41 +233,41 @@ public class AbstractRule extends Rule {
      * @param graph the graph database service
      */
     public Multimap<Pair, Rule> applyRule(GraphDatabaseService graph, Set<Pair> train, Set<Pair> test) {
-        Set<Pair> bodyGroundings = GraphOps.GPFLPathToPairAdaptor(GraphOps.bodyGroundingCoreAPI(graph, this, true));
-        Set<Long> anchorings = test.stream().map(pair -> fromSubject ? pair.obj : pair.sub).collect(Collectors.toSet());
+        Set<Pair> bodyGroundings = GraphOps.bodyGroundings(graph, this, true);
         Multimap<Pair, Rule> map = MultimapBuilder.hashKeys().hashSetValues().build();
 
-        List<Rule> sampledHeadRules = IO.rankedRulesBySC(headRules).subList(0, Math.min(headRules.size(), Settings.TOP_INS_RULES));
-        List<Rule> sampledTailRules = IO.rankedRulesBySC(tailRules).subList(0, Math.min(tailRules.size(), Settings.TOP_INS_RULES));
-        List<Rule> sampledBothRules = IO.rankedRulesBySC(bothRules).subList(0, Math.min(bothRules.size(), Settings.TOP_INS_RULES));
-
         if(closed) applyClosedRule(train, bodyGroundings, map);
         else {
+            List<Rule> sampledHeadRules = headRules.ranked().subList(0, Math.min(headRules.size(), Settings.TOP_INS_RULES));
+            List<Rule> sampledTailRules = tailRules.ranked().subList(0, Math.min(tailRules.size(), Settings.TOP_INS_RULES));
+            List<Rule> sampledBothRules = bothRules.ranked().subList(0, Math.min(bothRules.size(), Settings.TOP_INS_RULES));
+            GroundingIndex index = new GroundingIndex(bodyGroundings);
+            long[] anchorings = test.stream().mapToLong(pair -> fromSubject ? pair.obj : pair.sub).distinct().toArray();
+
             for (Rule headRule : sampledHeadRules) {
                 if(GenOps.getPredictionCounter() > Settings.SUGGESTION_CAP) break;
-                applyHeadAnchoredRules(headRule, train, bodyGroundings, map);
+                applyHeadAnchoredRules(headRule, train, index, map);
             }
 
             for (Rule tailRule : sampledTailRules) {
                 if(GenOps.getPredictionCounter() > Settings.SUGGESTION_CAP) break;
-                applyTailAnchoredRules(tailRule, train, anchorings, bodyGroundings, map);
+                applyTailAnchoredRules(tailRule, train, anchorings, index, map);
             }
 
             for (Rule bothRule : sampledBothRules) {
                 if(GenOps.getPredictionCounter() > Settings.SUGGESTION_CAP) break;
-                applyBothAnchoredRules(bothRule, train, bodyGroundings, map);
+                applyBothAnchoredRules(bothRule, train, index, map);
             }
         }
         return map;
     }
 
-    private boolean evaluateTailRules(Rule rule, Set<Pair> groundTruth, List<Long> anchorings, Collection<Long> originals, Set<Rule> rules, Counter ruleCount) {
+    private boolean evaluateTailRules(Rule rule, TargetContext.GroundTruth groundTruth, int groundTruthSize, List<Long> anchorings, Collection<Long> originals, Set<Rule> rules, Counter ruleCount) {
         boolean earlyStop = false;
         int totalPrediction = 0, correctPrediction = 0;
-        for (Long anchoring : anchorings) {
-            for (Long original : originals) {
-                Pair prediction = fromSubject ? new Pair(original, anchoring) : new Pair(anchoring, original);
-                if(groundTruth.contains(prediction)) correctPrediction++;
+        for (long anchoring : anchorings) {
+            for (long original : originals) {
+                if(groundTruth.contains(anchoring, original)) correctPrediction++;
                 totalPrediction++;
                 ruleCount.tick();
                 if(ruleCount.count > Settings.PREDICTION_CAP) {
@@ -251,17 +277,16 @@ public class AbstractRule extends Rule {
             }
             if(earlyStop) break;
         }
-        rule.setStats(correctPrediction, totalPrediction, groundTruth.size());
+        rule.setStats(correctPrediction, totalPrediction, groundTruthSize);
         if(qualified(rule)) rules.add(rule);
         return earlyStop;
     }
 
-    private boolean evaluateRule(Rule rule, Set<Pair> groundTruth, long anchoring, Set<Long> originals, Set<Rule> rules, Counter ruleCount) {
+    private boolean evaluateRule(Rule rule, TargetContext.GroundTruth groundTruth, int groundTruthSize, long anchoring, Collection<Long> originals, Set<Rule> rules, Counter ruleCount) {
         boolean earlyStop = false;
         int totalPrediction = 0, correctPrediction = 0;
-        for (Long original : originals) {
-            Pair prediction = fromSubject ? new Pair(original, anchoring) : new Pair(anchoring, original);
-            if(groundTruth.contains(prediction)) correctPrediction++;
+        for (long original : originals) {
+            if(groundTruth.contains(anchoring, original)) correctPrediction++;
             totalPrediction++;
             ruleCount.tick();
             if(ruleCount.count > Settings.PREDICTION_CAP) {
@@ -269,7 +294,7 @@ public class AbstractRule extends Rule {
                 break;
             }
         }
-        rule.setStats(correctPrediction, totalPrediction, groundTruth.size());
+        rule.setStats(correctPrediction, totalPrediction, groundTruthSize);
         if(qualified(rule)) rules.add(rule);
         return earlyStop;
     }
@@ -333,7 +358,7 @@ public class AbstractRule extends Rule {
                 : pairs.stream().map(pair -> pair.sub).collect(Collectors.toSet());
         if(sampleSize > source.size()) return source;
         else {
-            Random rand = new Random();
+            Random rand = Randomness.get();
             Set<Integer> selected = new HashSet<>();
             List<Long> list = new ArrayList<>(source);
             while(selected.size() < sampleSize) {
@@ -347,48 +372,37 @@ public class AbstractRule extends Rule {
         return result;
     }
 
-    private void applyTailAnchoredRules(Rule rule, Set<Pair> train, Set<Long> anchored, Set<Pair> bodyGroundings, Multimap<Pair, Rule> map) {
-        Multimap<Long, Long> tailToOriginal = MultimapBuilder.hashKeys().hashSetValues().build();
-        for(Pair pair : bodyGroundings) tailToOriginal.put(pair.obj, pair.sub);
-        for(long anchor : anchored) for(long original : tailToOriginal.get(rule.getTail())) {
-            Pair pair = fromSubject ? new Pair(original, anchor) : new Pair(anchor, original);
-            if(pairCheck(train, pair)) {
-                map.put(pair,rule);
-                GenOps.tickPredictionCounter();
-                if(GenOps.getPredictionCounter() > Settings.SUGGESTION_CAP) break;
-            }
-        }
+    private void applyTailAnchoredRules(Rule rule, Set<Pair> train, long[] anchored, GroundingIndex index, Multimap<Pair, Rule> map) {
+        int t = index.find(rule.getTail());
+        if(t < 0) return;
+        for (long anchor : anchored)
+            for (int k = index.offsets[t]; k < index.offsets[t + 1]; k++)
+                if(suggest(rule, index.tailOriginals[k], anchor, train, map)) return;
     }
 
-    private void applyHeadAnchoredRules(Rule rule, Set<Pair> train, Set<Pair> bodyGroundings, Multimap<Pair, Rule> map) {
-        Set<Long> originals = Sets.newHashSet();
-        bodyGroundings.forEach(body -> originals.add(body.sub));
-        for (Long original : originals) {
-            Pair pair = fromSubject ? new Pair(original, rule.head.getObjectId()) :
-                    new Pair(rule.head.getSubjectId(), original);
-            if(pairCheck(train, pair)) {
-                map.put(pair, rule);
-                GenOps.tickPredictionCounter();
-                if(GenOps.getPredictionCounter() > Settings.SUGGESTION_CAP) break;
-            }
-        }
+    private void applyHeadAnchoredRules(Rule rule, Set<Pair> train, GroundingIndex index, Multimap<Pair, Rule> map) {
+        long anchoring = rule.getAnchoring();
+        for (long original : index.originals)
+            if(suggest(rule, original, anchoring, train, map)) return;
     }
 
-    private void applyBothAnchoredRules(Rule rule, Set<Pair> train, Set<Pair> bodyGroundings, Multimap<Pair, Rule> map) {
-        Set<Long> originals = new HashSet<>();
-        for(Pair pair : bodyGroundings) {
-            if (pair.obj == rule.getTail())
-                originals.add(pair.sub);
-        }
-        for (Long original : originals) {
-            Pair pair = isFromSubject() ? new Pair(original, rule.getAnchoring())
-                    : new Pair(rule.getAnchoring(), original);
-            if(pairCheck(train, pair)) {
-                map.put(pair, rule);
-                GenOps.tickPredictionCounter();
-                if(GenOps.getPredictionCounter() > Settings.SUGGESTION_CAP) break;
-            }
-        }
+    private void applyBothAnchoredRules(Rule rule, Set<Pair> train, GroundingIndex index, Multimap<Pair, Rule> map) {
+        int t = index.find(rule.getTail());
+        if(t < 0) return;
+        long anchoring = rule.getAnchoring();
+        for (int k = index.offsets[t]; k < index.offsets[t + 1]; k++)
+            if(suggest(rule, index.tailOriginals[k], anchoring, train, map)) return;
+    }
+
+    /**
+     * Suggests the candidate of the rule, returns true if the suggestion cap is reached.
+     */
+    private boolean suggest(Rule rule, long original, long anchoring, Set<Pair> train, Multimap<Pair, Rule> map) {
+        Pair pair = fromSubject ? new Pair(original, anchoring) : new Pair(anchoring, original);
+        if(!pairCheck(train, pair)) return false;
+        map.put(pair, rule);
+        GenOps.tickPredictionCounter();
+        return GenOps.getPredictionCounter() > Settings.SUGGESTION_CAP;
     }
 
     private void applyClosedRule(Set<Pair> train, Set<Pair> bodyGroundings, Multimap<Pair, Rule> map) {
@@ -400,14 +414,17 @@ public class AbstractRule extends Rule {
     }
 
     private void evaluateOpenRule() {
-        double correctPredictions = 0, totalPredictions = 0, groundTruthSize = 0;
-        for (Rule rule : headRules) {
-            correctPredictions += rule.stats.support;
-            totalPredictions += rule.stats.totalPredictions;
-            groundTruthSize = rule.stats.groundTruth;
-        }
-        stats.headAnchoredSize = headRules.size();
-        setStats(correctPredictions, totalPredictions, groundTruthSize);
+        stats.headAnchoredSize = headRules.getSeen();
+        setStats(headRules.getSupport(), headRules.getTotalPredictions(), headRules.getGroundTruth());
+    }
+
+    /**
+     * Cached, as the instantiated rules of the abstract rule derive their fingerprints from it.
+     */
+    @Override
+    public long fingerprint() {
+        if(fingerprint == 0) fingerprint = super.fingerprint();
+        return fingerprint;
     }
 
     @Override
@@ -416,6 +433,47 @@ public class AbstractRule extends Rule {
         return header + super.toString();
     }
 
+    /**
+     * The body groundings of an open rule indexed once for all its instantiated rules: the distinct
+     * originals, and the originals of every tail in CSR layout over the tails sorted by id.
+     */
+    static class GroundingIndex {
+        final long[] originals;
+        final long[] tails;
+        final int[] offsets;
+        final long[] tailOriginals;
+
+        GroundingIndex(Set<Pair> bodyGroundings) {
+            Pair[] pairs = bodyGroundings.toArray(new Pair[0]);
+            Arrays.sort(pairs, (a, b) -> a.obj != b.obj ? Long.compare(a.obj, b.obj) : Long.compare(a.sub, b.sub));
+            tailOriginals = new long[pairs.length];
+            long[] distinctTails = new long[pairs.length];
+            int[] starts = new int[pairs.length + 1];
+            int size = 0;
+            for (int i = 0; i < pairs.length; i++) {
+                tailOriginals[i] = pairs[i].sub;
+                if(i == 0 || pairs[i].obj != pairs[i - 1].obj) {
+                    distinctTails[size] = pairs[i].obj;
+                    starts[size++] = i;
+                }
+            }
+            starts[size] = pairs.length;
+            tails = Arrays.copyOf(distinctTails, size);
+            offsets = Arrays.copyOf(starts, size + 1);
+
+            long[] subs = tailOriginals.clone();
+            Arrays.sort(subs);
+            int distinct = 0;
+            for (int i = 0; i < subs.length; i++)
+                if(i == 0 || subs[i] != subs[i - 1]) subs[distinct++] = subs[i];
+            originals = Arrays.copyOf(subs, distinct);
+        }
+
+        int find(long tail) {
+            return Arrays.binarySearch(tails, tail);
+        }
+    }
+
     class Counter {
         int count = 0;
         public void tick() { count++; }
@@ -1,12 +1,24 @@
 package ac.uk.ncl.structure;
 
-import ac.uk.ncl.Settings;
 import org.neo4j.graphdb.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.LongFunction;
 
+/**
+ * Instantiated rules created from an abstract rule share the atoms of their parent and only keep
+ * the instantiated constants as node ids. Atoms with constants and the string form are materialized
+ * on demand, e.g., when writing rules and verifications, with the node names from {@link #setNames}.
+ */
 public class InstantiatedRule extends Rule {
-    private int type;
+    private static LongFunction<String> names = String::valueOf;
+
+    private final AbstractRule parent;
+    private final byte type;
+    private final long anchoring;
+    private final long tail;
+    private final int hash;
 
     /**
      * The option indicates which type of instantiation will be performed:
@@ -19,7 +31,11 @@ public class InstantiatedRule extends Rule {
      */
     public InstantiatedRule(Atom h, List<Atom> b, int type) {
         super( h, b );
-        this.type = type;
+        this.type = (byte) type;
+        parent = null;
+        anchoring = -1;
+        tail = -1;
+        hash = 0;
         if ( closed ) throw new RuntimeException("#Closed path should not be instantiated.");
 
         Atom firstAtom = bodyAtoms.get( 0 );
@@ -50,67 +66,109 @@ public class InstantiatedRule extends Rule {
     }
 
     /**
-     * Type: 0 - head anchoring, ins[0] contains the constant
-     * 1 - tail anchoring, ins[0]
-     * 2 - head and tail, ins[0] the head, int[1] the tail
+     * Type: 0 - head anchoring, ids[0] contains the constant
+     * 1 - tail anchoring, ids[0]
+     * 2 - head and tail, ids[0] the head, ids[1] the tail
      * @param base
-     * @param ins
+     * @param ids
      * @param type
      */
-    public InstantiatedRule(AbstractRule base, String[] ins, long[] ids, int type) {
-        super( base.copyHead(), base.copyBody() );
-        this.type = type;
+    public InstantiatedRule(AbstractRule base, long[] ids, int type) {
+        this( base, type == 1 ? -1 : ids[0], type == 0 ? -1 : ids[type == 1 ? 0 : 1], type );
         if ( closed ) throw new RuntimeException("#Closed path should not be instantiated.");
-
-        if ( type == 0 || type == 2 ) {
-            if ( fromSubject ) {
-                head.setObject( ins[0] );
-                head.setObjectId(ids[0]);
-            }
-            else {
-                head.setSubject( ins[0] );
-                head.setSubjectId(ids[0]);
-            }
-        }
-
-        if ( type == 1 ) {
-            bodyAtoms.get(bodyAtoms.size() - 1).setObject(ins[0]);
-            bodyAtoms.get(bodyAtoms.size() - 1).setObjectId(ids[0]);
-        }
-        else if ( type == 2 ) {
-            bodyAtoms.get(bodyAtoms.size() - 1).setObject(ins[1]);
-            bodyAtoms.get(bodyAtoms.size() - 1).setObjectId(ids[1]);
-        }
     }
 
     public InstantiatedRule(Rule base, Instance instance, Path path, int type) {
-        super(base.copyHead(), base.copyBody());
-        this.type = type;
-
-        if ( type == 0 || type == 2 ) {
-            if ( fromSubject ) {
-                head.setObject(instance.endNodeName);
-                head.setObjectId(instance.endNodeId);
-            }
-            else {
-                head.setSubject(instance.startNodeName);
-                head.setSubjectId(instance.startNodeId);
-            }
-        }
+        this( base, instance, path.endNode().getId(), type );
+    }
 
-        Node endNode = path.endNode();
-        String endNodeName = (String) endNode.getProperty(Settings.NEO4J_IDENTIFIER);
+    public InstantiatedRule(Rule base, Instance instance, long tail, int type) {
+        this( (AbstractRule) base
+                , type == 1 ? -1 : base.isFromSubject() ? instance.endNodeId : instance.startNodeId
+                , type == 0 ? -1 : tail
+                , type );
+    }
 
-        if ( type == 1 || type == 2 ) {
-            bodyAtoms.get(bodyAtoms.size() - 1).setObject(endNodeName);
-            bodyAtoms.get(bodyAtoms.size() - 1).setObjectId(endNode.getId());
-        }
+    private InstantiatedRule(AbstractRule base, long anchoring, long tail, int type) {
+        super( base );
+        parent = base;
+        this.type = (byte) type;
+        this.anchoring = anchoring;
+        this.tail = tail;
+        hash = 31 * (31 * (31 * base.hashCode() + type) + Long.hashCode(anchoring)) + Long.hashCode(tail);
+    }
+
+    /**
+     * Sets how node ids are resolved into names when rules are materialized.
+     */
+    public static void setNames(LongFunction<String> resolver) {
+        names = resolver;
     }
 
     public int getType() {
         return type;
     }
 
+    @Override
+    public long getTail() {
+        return parent == null || tail == -1 ? super.getTail() : tail;
+    }
+
+    @Override
+    public long getAnchoring() {
+        return parent == null || anchoring == -1 ? super.getAnchoring() : anchoring;
+    }
+
+    @Override
+    public Atom getHead() {
+        if ( parent == null || anchoring == -1 ) return head;
+        Atom atom = new Atom( head );
+        if ( fromSubject ) {
+            atom.setObject( names.apply(anchoring) );
+            atom.setObjectId( anchoring );
+        } else {
+            atom.setSubject( names.apply(anchoring) );
+            atom.setSubjectId( anchoring );
+        }
+        return atom;
+    }
+
+    @Override
+    public List<Atom> getBody() {
+        if ( parent == null || tail == -1 ) return bodyAtoms;
+        List<Atom> body = new ArrayList<>();
+        bodyAtoms.forEach( atom -> body.add( new Atom(atom) ) );
+        Atom lastAtom = body.get( body.size() - 1 );
+        lastAtom.setObject( names.apply(tail) );
+        lastAtom.setObjectId( tail );
+        return body;
+    }
+
+    @Override
+    public long fingerprint() {
+        if(parent == null) return (super.fingerprint() ^ (type + 1)) * 0x100000001b3L;
+        long hash = parent.fingerprint();
+        hash = (hash ^ type) * 0x100000001b3L;
+        hash = (hash ^ anchoring) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ tail) * 0xBF58476D1CE4E5B9L;
+        return hash ^ (hash >>> 31);
+    }
+
+    @Override
+    public int hashCode() {
+        return parent == null ? super.hashCode() : hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( obj instanceof InstantiatedRule && parent != null && ((InstantiatedRule) obj).parent != null ) {
+            InstantiatedRule right = (InstantiatedRule) obj;
+            return type == right.type && anchoring == right.anchoring && tail == right.tail
+                    && (parent == right.parent || parent.equals(right.parent));
+        }
+        return super.equals(obj);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
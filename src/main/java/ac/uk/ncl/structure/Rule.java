@@ -25,6 +25,16 @@ public abstract class Rule {
         fromSubject = head.getSubjectId() == firstAtom.getSubjectId();
     }
 
+    /**
+     * Shares the atoms of the base rule instead of copying them.
+     */
+    Rule(Rule base) {
+        head = base.head;
+        bodyAtoms = base.bodyAtoms;
+        closed = base.closed;
+        fromSubject = base.fromSubject;
+    }
+
     public void setStats(double support, double totalPredictions, double groundTruth) {
         stats.support = support;
         stats.totalPredictions = totalPredictions;
@@ -44,21 +54,29 @@ public abstract class Rule {
         return fromSubject;
     }
 
+    public Atom getHead() {
+        return head;
+    }
+
+    public List<Atom> getBody() {
+        return bodyAtoms;
+    }
+
     public Atom copyHead() {
-        return new Atom( head );
+        return new Atom( getHead() );
     }
 
     public List<Atom> copyBody() {
         List<Atom> result = Lists.newArrayList();
-        bodyAtoms.forEach( atom -> result.add( new Atom(atom)));
+        getBody().forEach( atom -> result.add( new Atom(atom)));
         return result;
     }
 
     @Override
     public String toString() {
-        String str = head + " <- ";
+        String str = getHead() + " <- ";
         List<String> atoms = new ArrayList<>();
-        bodyAtoms.forEach( atom -> {
+        getBody().forEach( atom -> {
             if(atom.direction.equals(Direction.INCOMING))
                 atoms.add(atom.getBasePredicate() + "(" + atom.getObject() + "," + atom.getSubject() + ")");
             else atoms.add(atom.toString());
@@ -85,6 +103,30 @@ public abstract class Rule {
         return false;
     }
 
+    /**
+     * A 64-bit hash of the rule, equal for equal rules. The terms of {@link #toString()} are hashed
+     * in the same order without building the string.
+     */
+    public long fingerprint() {
+        long hash = fnv(0xcbf29ce484222325L, closed ? "C" : "O");
+        if(head.isInverse()) hash = fnv(hash, "_");
+        hash = fnv(fnv(fnv(hash, head.getBasePredicate()), head.getSubject()), head.getObject());
+        for (Atom atom : bodyAtoms) {
+            hash = fnv(hash, atom.getBasePredicate());
+            if(atom.isInverse()) hash = fnv(fnv(hash, atom.getObject()), atom.getSubject());
+            else hash = fnv(fnv(hash, atom.getSubject()), atom.getObject());
+        }
+        return hash;
+    }
+
+    /**
+     * FNV-1a over the characters of the term followed by a separator.
+     */
+    private static long fnv(long hash, String term) {
+        for (int i = 0; i < term.length(); i++) hash = (hash ^ term.charAt(i)) * 0x100000001b3L;
+        return (hash ^ 0xFFFF) * 0x100000001b3L;
+    }
+
     public long getTail() {
         return bodyAtoms.get(bodyAtoms.size() - 1).getObjectId();
     }
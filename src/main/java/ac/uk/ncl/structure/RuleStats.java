@@ -1,6 +1,7 @@
 package ac.uk.ncl.structure;
 
 import ac.uk.ncl.Settings;
+import ac.uk.ncl.core.SamplingEvaluator;
 
 import java.text.MessageFormat;
 
@@ -14,6 +15,9 @@ public class RuleStats {
     public double totalPredictions; //biased Body Grounding
     public double headAnchoredSize;
     public double localAvgSupport = 0;
+    public boolean truncated = false; //body groundings stopped by the grounding budget
+    public double scMargin = 0; //half width of the sc confidence interval when estimated by sampling
+    public SamplingEvaluator.Stop stop = null; //why sampling of the rule stopped
 
     public RuleStats(Rule b) { base = b; }
 
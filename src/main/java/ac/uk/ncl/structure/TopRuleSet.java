@@ -0,0 +1,94 @@
+package ac.uk.ncl.structure;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.utils.IO;
+
+import java.util.*;
+
+/**
+ * The qualified instantiated rules of one type of an abstract rule. Only the best rules by standard
+ * confidence, as many as TOP_INS_RULES, are retained in a min-heap, unless WRITE_ALL_INS_RULES asks
+ * for all of them. The support and predictions of every rule added are aggregated, retained or not,
+ * for evaluating the abstract rule.
+ */
+public class TopRuleSet extends AbstractSet<Rule> {
+    private final int capacity;
+    private final PriorityQueue<Rule> heap;
+    private final Set<Rule> members = new HashSet<>();
+    private List<Rule> ranked = null;
+
+    private int seen = 0;
+    private double support = 0, totalPredictions = 0, groundTruth = 0;
+
+    public TopRuleSet() {
+        this(Settings.WRITE_ALL_INS_RULES ? Integer.MAX_VALUE : Settings.TOP_INS_RULES);
+    }
+
+    public TopRuleSet(int capacity) {
+        this.capacity = capacity;
+        heap = new PriorityQueue<>(IO.ruleComparatorBySC().reversed());
+    }
+
+    /**
+     * @return true if the rule is retained
+     */
+    @Override
+    public boolean add(Rule rule) {
+        if(members.contains(rule)) return false;
+        seen++;
+        support += rule.stats.support;
+        totalPredictions += rule.stats.totalPredictions;
+        groundTruth = rule.stats.groundTruth;
+
+        if(heap.size() >= capacity) {
+            if(capacity == 0 || heap.peek().stats.sc >= rule.stats.sc) return false;
+            members.remove(heap.poll());
+        }
+        heap.add(rule);
+        members.add(rule);
+        ranked = null;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return members.contains(o);
+    }
+
+    @Override
+    public Iterator<Rule> iterator() {
+        return Collections.unmodifiableCollection(heap).iterator();
+    }
+
+    @Override
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * The retained rules in descending order of standard confidence.
+     */
+    public List<Rule> ranked() {
+        if(ranked == null) ranked = Collections.unmodifiableList(IO.rankedRulesBySC(heap));
+        return ranked;
+    }
+
+    /**
+     * The number of distinct rules added, including the ones not retained.
+     */
+    public int getSeen() {
+        return seen;
+    }
+
+    public double getSupport() {
+        return support;
+    }
+
+    public double getTotalPredictions() {
+        return totalPredictions;
+    }
+
+    public double getGroundTruth() {
+        return groundTruth;
+    }
+}
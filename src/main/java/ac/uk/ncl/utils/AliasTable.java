@@ -0,0 +1,49 @@
+package ac.uk.ncl.utils;
+
+import java.util.Random;
+
+/**
+ * Vose's alias method: after O(n) preprocessing of the weights, draws an index with
+ * probability proportional to its weight in O(1).
+ */
+public class AliasTable {
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        probabilities = new double[n];
+        aliases = new int[n];
+
+        double sum = 0;
+        for (double weight : weights) sum += weight;
+        double[] scaled = new double[n];
+        int[] small = new int[n], large = new int[n];
+        int smallSize = 0, largeSize = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = sum == 0 ? 1 : weights[i] * n / sum;
+            if(scaled[i] < 1) small[smallSize++] = i;
+            else large[largeSize++] = i;
+        }
+
+        while(smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize], more = large[--largeSize];
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if(scaled[more] < 1) small[smallSize++] = more;
+            else large[largeSize++] = more;
+        }
+        while(largeSize > 0) probabilities[large[--largeSize]] = 1;
+        while(smallSize > 0) probabilities[small[--smallSize]] = 1;
+    }
+
+    public int sample(Random rand) {
+        int column = rand.nextInt(probabilities.length);
+        return rand.nextDouble() < probabilities[column] ? column : aliases[column];
+    }
+
+    public int size() {
+        return probabilities.length;
+    }
+}
@@ -0,0 +1,95 @@
+package ac.uk.ncl.utils;
+
+import ac.uk.ncl.Settings;
+
+import java.text.MessageFormat;
+
+/**
+ * Wall-clock budget of a target, see {@link Settings#TIME_BUDGET}. The budget is split across
+ * the stages of rule learning by {@link Settings#SAMPLING_SHARE} and {@link Settings#INSTANTIATION_SHARE},
+ * the remaining share goes to rule application. Stage deadlines are cumulative, so time left over
+ * by a stage is available to the following stages.
+ *
+ * Stages poll {@link #expired()} and, when the deadline passes, stop and keep the results
+ * produced so far. The time spent and the quality reached by every stage are reported per target.
+ */
+public class Deadline {
+    public static final int SAMPLING = 0;
+    public static final int INSTANTIATION = 1;
+    public static final int APPLICATION = 2;
+    private static final String[] names = {"Sampling", "Instantiation", "Application"};
+
+    private static boolean running = false;
+    private static long begin;
+    private static volatile long end = Long.MAX_VALUE;
+    private static int stage = -1;
+    private static long stageBegin;
+    private static long[] spent = new long[names.length];
+    private static long[] allotted = new long[names.length];
+    private static boolean[] expiredStages = new boolean[names.length];
+    private static String[] qualities = new String[names.length];
+
+    /**
+     * Starts the budget of the current target, if one is set.
+     */
+    public static void start() {
+        running = Settings.TIME_BUDGET > 0;
+        begin = System.currentTimeMillis();
+        end = Long.MAX_VALUE;
+        stage = -1;
+        spent = new long[names.length];
+        allotted = new long[names.length];
+        expiredStages = new boolean[names.length];
+        qualities = new String[names.length];
+    }
+
+    public static boolean active() {
+        return running;
+    }
+
+    public static void enter(int s) {
+        if(!running) return;
+        stage = s;
+        stageBegin = System.currentTimeMillis();
+        long budget = Settings.TIME_BUDGET * 1000L;
+        double[] shares = {Settings.SAMPLING_SHARE, Settings.INSTANTIATION_SHARE, 1d};
+        double cumulative = 1d;
+        if(s < APPLICATION) {
+            cumulative = 0d;
+            for (int i = 0; i <= s; i++) cumulative += shares[i];
+        }
+        end = begin + (long) (Math.min(1d, cumulative) * budget);
+        allotted[s] = Math.max(0, end - stageBegin);
+    }
+
+    /**
+     * If the deadline of the current stage has passed. Always false without a running budget.
+     */
+    public static boolean expired() {
+        return System.currentTimeMillis() >= end;
+    }
+
+    /**
+     * Closes the current stage with a summary of the quality it reached.
+     */
+    public static void leave(String quality) {
+        if(!running || stage == -1) return;
+        spent[stage] = System.currentTimeMillis() - stageBegin;
+        expiredStages[stage] = expired();
+        qualities[stage] = quality;
+        end = Long.MAX_VALUE;
+        stage = -1;
+    }
+
+    public static void report() {
+        if(!running) return;
+        Logger.println(MessageFormat.format("# Time Budget: {0}s | Spent: {1}s", Settings.TIME_BUDGET
+                , (System.currentTimeMillis() - begin) / 1000d), 1);
+        for (int i = 0; i < names.length; i++) {
+            if(qualities[i] == null) continue;
+            Logger.println(MessageFormat.format("# {0}: {1}s of {2}s{3} | {4}", names[i], spent[i] / 1000d
+                    , allotted[i] / 1000d, expiredStages[i] ? " (Deadline Reached)" : "", qualities[i]), 1);
+        }
+        running = false;
+    }
+}
@@ -61,6 +61,11 @@ public class Helpers {
         else return defaultValue;
     }
 
+    public static long readSetting(JSONObject args, String key, long defaultValue) {
+        if(args.has(key)) return args.getLong(key);
+        else return defaultValue;
+    }
+
     public static double readSetting(JSONObject args, String key, double defaultValue) {
         if(args.has(key)) return args.getDouble(key);
         else return defaultValue;
@@ -61,7 +61,7 @@ public class IO {
             }
             tx.success();
         }
-        Collections.shuffle(instances);
+        Randomness.shuffle(instances);
         return instances;
     }
 
@@ -177,6 +177,37 @@ public class IO {
         }
     }
 
+    /**
+     * Writes the top TOP_K predictions of each query with their top VERIFY_RULE_SIZE rules into the binary file,
+     * in place of the prediction and verification files.
+     * @return the verifications, i.e., the top rules of the top VERIFY_PREDICTION_SIZE predictions of each query
+     */
+    public static Multimap<Pair, Rule> writeBinaryPredictions(GraphDatabaseService graph, File binaryPredictionFile
+            , List<Map<Long, List<Pair>>> rankedMap, Multimap<Pair, Rule> candidates) {
+        Multimap<Pair, Rule> verifications = MultimapBuilder.hashKeys().hashSetValues().build();
+        try (PredictionWriter writer = new PredictionWriter(binaryPredictionFile, graph)) {
+            for (int i = 0; i < 2; i++) {
+                for (Map.Entry<Long, List<Pair>> entry : rankedMap.get(i).entrySet()) {
+                    List<Pair> localPairs = entry.getValue();
+                    localPairs = localPairs.size() > Settings.TOP_K
+                            ? localPairs.subList(0, Settings.TOP_K) : localPairs;
+                    int rank = 1;
+                    for (Pair pair : localPairs) {
+                        List<Rule> rules = rankedRulesBySC(candidates.get(pair));
+                        rules = rules.subList(0, Math.min(rules.size(), Settings.VERIFY_RULE_SIZE));
+                        if(rank <= Settings.VERIFY_PREDICTION_SIZE) verifications.putAll(pair, rules);
+                        writer.add(entry.getKey(), i, rank++, i == 0 ? pair.obj : pair.sub, pair.scores, rules);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        rankedMap.clear();
+        return verifications;
+    }
+
     public static Multimap<Pair, Rule> writeVerifications(GraphDatabaseService graph, File verificationFile
             , List<Map<Long, List<Pair>>> rankedMap, Multimap<Pair, Rule> candidates) {
         Multimap<Pair, Rule> verifications = MultimapBuilder.hashKeys().hashSetValues().build();
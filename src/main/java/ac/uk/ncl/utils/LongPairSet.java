@@ -0,0 +1,94 @@
+package ac.uk.ncl.utils;
+
+import ac.uk.ncl.structure.Pair;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An insertion ordered set of (long, long) pairs with open addressing over primitive arrays.
+ * Pairs are stored interleaved in {@link #endpoints}, the i-th pair at 2i and 2i + 1.
+ */
+public class LongPairSet {
+    public long[] endpoints;
+    private int[] slots;
+    private int size = 0;
+
+    public LongPairSet() {
+        this(16);
+    }
+
+    public LongPairSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) * 2;
+        slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        endpoints = new long[Math.max(4, expected) * 2];
+    }
+
+    /**
+     * @return true if the pair was not in the set
+     */
+    public boolean add(long first, long second) {
+        int mask = slots.length - 1;
+        int slot = hash(first, second) & mask;
+        while(slots[slot] != -1) {
+            int i = slots[slot];
+            if(endpoints[2 * i] == first && endpoints[2 * i + 1] == second) return false;
+            slot = (slot + 1) & mask;
+        }
+        if(2 * size + 2 > endpoints.length) endpoints = Arrays.copyOf(endpoints, endpoints.length * 2);
+        endpoints[2 * size] = first;
+        endpoints[2 * size + 1] = second;
+        slots[slot] = size++;
+        if(2 * size > slots.length) rehash();
+        return true;
+    }
+
+    public boolean contains(long first, long second) {
+        int mask = slots.length - 1;
+        int slot = hash(first, second) & mask;
+        while(slots[slot] != -1) {
+            int i = slots[slot];
+            if(endpoints[2 * i] == first && endpoints[2 * i + 1] == second) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long first(int i) {
+        return endpoints[2 * i];
+    }
+
+    public long second(int i) {
+        return endpoints[2 * i + 1];
+    }
+
+    public Set<Pair> toPairs() {
+        Set<Pair> pairs = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++) pairs.add(new Pair(endpoints[2 * i], endpoints[2 * i + 1]));
+        return pairs;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, -1);
+        int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(endpoints[2 * i], endpoints[2 * i + 1]) & mask;
+            while(slots[slot] != -1) slot = (slot + 1) & mask;
+            slots[slot] = i;
+        }
+    }
+
+    private static int hash(long first, long second) {
+        long z = first * 0x9E3779B97F4A7C15L + second;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (z ^ (z >>> 31));
+    }
+}
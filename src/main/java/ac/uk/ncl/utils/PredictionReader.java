@@ -0,0 +1,206 @@
+package ac.uk.ncl.utils;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streams predictions written by {@link PredictionWriter}. Only the dictionaries and the
+ * current block are held in memory, rows are decoded one block at a time:
+ * <pre>
+ * try(PredictionReader reader = new PredictionReader(file)) {
+ *     while(reader.hasNext()) {
+ *         PredictionReader.Prediction p = reader.next();
+ *         String query = reader.entityName(p.query);
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class PredictionReader implements Iterator<PredictionReader.Prediction>, Closeable {
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+
+    private long[] entityIds;
+    private String[] entityNames;
+    private String[] rules;
+    private double[] ruleConfidences;
+
+    private int rows = 0, cursor = 0;
+    private boolean exhausted = false;
+    private int[] queries, ranks, candidates;
+    private byte[] directions, widths;
+    private float[][] scores;
+    private int[][] ruleIds;
+
+    public PredictionReader(File file) throws IOException {
+        readDictionaries(file);
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        byte[] magic = new byte[PredictionWriter.MAGIC.length];
+        in.readFully(magic);
+        if(!Arrays.equals(magic, PredictionWriter.MAGIC)) {
+            in.close();
+            throw new IOException("Not a GPFL binary prediction file: " + file.getPath());
+        }
+    }
+
+    private void readDictionaries(File file) throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] magic = new byte[PredictionWriter.MAGIC.length];
+            raf.seek(raf.length() - magic.length);
+            raf.readFully(magic);
+            if(!Arrays.equals(magic, PredictionWriter.MAGIC))
+                throw new IOException("Not a GPFL binary prediction file: " + file.getPath());
+            raf.seek(raf.length() - magic.length - 8);
+            raf.seek(raf.readLong());
+
+            int entitySize = raf.readInt();
+            try(DataInputStream dictionary = inflate(raf)) {
+                entityIds = new long[entitySize];
+                entityNames = new String[entitySize];
+                for (int i = 0; i < entitySize; i++) {
+                    entityIds[i] = dictionary.readLong();
+                    entityNames[i] = dictionary.readUTF();
+                }
+            }
+
+            int ruleSize = raf.readInt();
+            try(DataInputStream dictionary = inflate(raf)) {
+                rules = new String[ruleSize];
+                ruleConfidences = new double[ruleSize];
+                for (int i = 0; i < ruleSize; i++) {
+                    rules[i] = dictionary.readUTF();
+                    ruleConfidences[i] = dictionary.readDouble();
+                }
+            }
+        }
+    }
+
+    private DataInputStream inflate(DataInput source) throws IOException {
+        int rawLength = source.readInt();
+        byte[] compressed = new byte[source.readInt()];
+        source.readFully(compressed);
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int offset = 0;
+            while(offset < rawLength) {
+                int n = inflater.inflate(raw, offset, rawLength - offset);
+                if(n == 0 && (inflater.finished() || inflater.needsInput())) break;
+                offset += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        return new DataInputStream(new ByteArrayInputStream(raw));
+    }
+
+    private void readBlock() throws IOException {
+        rows = in.readInt();
+        cursor = 0;
+        if(rows == 0) {
+            exhausted = true;
+            return;
+        }
+        try(DataInputStream columns = inflate(in)) {
+            queries = new int[rows];
+            directions = new byte[rows];
+            ranks = new int[rows];
+            candidates = new int[rows];
+            widths = new byte[rows];
+            scores = new float[rows][];
+            ruleIds = new int[rows][];
+            for (int i = 0; i < rows; i++) queries[i] = readVarInt(columns);
+            columns.readFully(directions);
+            for (int i = 0; i < rows; i++) ranks[i] = readVarInt(columns);
+            for (int i = 0; i < rows; i++) candidates[i] = readVarInt(columns);
+            columns.readFully(widths);
+            for (int i = 0; i < rows; i++) {
+                scores[i] = new float[widths[i]];
+                for (int j = 0; j < widths[i]; j++) scores[i][j] = columns.readFloat();
+            }
+            for (int i = 0; i < rows; i++) {
+                ruleIds[i] = new int[readVarInt(columns)];
+                for (int j = 0; j < ruleIds[i].length; j++) ruleIds[i][j] = readVarInt(columns);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(cursor < rows) return true;
+        if(exhausted) return false;
+        try {
+            readBlock();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return cursor < rows;
+    }
+
+    @Override
+    public Prediction next() {
+        if(!hasNext()) throw new NoSuchElementException();
+        int i = cursor++;
+        return new Prediction(queries[i], directions[i], ranks[i], candidates[i], scores[i], ruleIds[i]);
+    }
+
+    public long entityId(int entity) {
+        return entityIds[entity];
+    }
+
+    public String entityName(int entity) {
+        return entityNames[entity];
+    }
+
+    public String rule(int rule) {
+        return rules[rule];
+    }
+
+    public double ruleConfidence(int rule) {
+        return ruleConfidences[rule];
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0, shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * A decoded prediction row. Entities and rules are dictionary ids, resolve them with
+     * {@link #entityName(int)}, {@link #entityId(int)} and {@link #rule(int)}.
+     */
+    public static class Prediction {
+        public final int query;
+        public final int direction;
+        public final int rank;
+        public final int candidate;
+        public final float[] scores;
+        public final int[] rules;
+
+        Prediction(int query, int direction, int rank, int candidate, float[] scores, int[] rules) {
+            this.query = query;
+            this.direction = direction;
+            this.rank = rank;
+            this.candidate = candidate;
+            this.scores = scores;
+            this.rules = rules;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package ac.uk.ncl.utils;
+
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Rule;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.LongFunction;
+import java.util.zip.Deflater;
+
+/**
+ * Writes ranked predictions into a compact columnar binary file. Rows are buffered into
+ * blocks of {@link #BLOCK_SIZE} predictions, each block is laid out column by column
+ * (query, direction, rank, candidate, score width, scores, rule ids) and deflated.
+ * Entities and rules are dictionary-encoded, the dictionaries are appended after the
+ * last block and located through a fixed size footer:
+ *
+ * MAGIC | block* | 0 | entity dictionary | rule dictionary | dictionary offset | MAGIC
+ *
+ * A block is written as (rows, raw length, compressed length, compressed bytes).
+ * Entity names are resolved when an entity is first added, so {@link #close()} does not
+ * depend on an open transaction. Use {@link PredictionReader} to iterate the file.
+ */
+public class PredictionWriter implements Closeable {
+    static final byte[] MAGIC = "GPFLPRD1".getBytes();
+    static final int BLOCK_SIZE = 4096;
+
+    private final LongFunction<String> names;
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private long position = 0;
+
+    private final Map<Long, Integer> entities = new HashMap<>();
+    private final List<Long> entityIds = new ArrayList<>();
+    private final List<String> entityNames = new ArrayList<>();
+    private final Map<Rule, Integer> rules = new IdentityHashMap<>();
+    private final List<Rule> ruleList = new ArrayList<>();
+
+    private int rows = 0;
+    private final int[] queries = new int[BLOCK_SIZE];
+    private final byte[] directions = new byte[BLOCK_SIZE];
+    private final int[] ranks = new int[BLOCK_SIZE];
+    private final int[] candidates = new int[BLOCK_SIZE];
+    private final byte[] widths = new byte[BLOCK_SIZE];
+    private final List<float[]> scores = new ArrayList<>();
+    private final List<int[]> ruleIds = new ArrayList<>();
+
+    public PredictionWriter(File file, GraphDatabaseService graph) throws IOException {
+        this(file, id -> String.valueOf(graph.getNodeById(id).getProperty(Settings.NEO4J_IDENTIFIER)));
+    }
+
+    /**
+     * @param names resolves node ids into entity names, called in {@link #add} for new entities
+     */
+    public PredictionWriter(File file, LongFunction<String> names) throws IOException {
+        this.names = names;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        write(MAGIC);
+    }
+
+    /**
+     * @param query the constant of the query
+     * @param direction = 0 for queries of the form (query, ?), = 1 for (?, query)
+     * @param rank 1-based rank of the candidate in the query answer
+     * @param candidate the predicted entity
+     * @param topScores the leading scores of the candidate, in descending order. At most
+     *                  {@link Settings#VERIFY_RULE_SIZE} of them are written, as many as the rules
+     * @param topRules the rules producing the leading scores, may be shorter than the scores
+     */
+    public void add(long query, int direction, int rank, long candidate, Double[] topScores, List<Rule> topRules) {
+        int width = Math.min(Math.min(topScores.length, Settings.VERIFY_RULE_SIZE), Byte.MAX_VALUE);
+        float[] s = new float[width];
+        for (int i = 0; i < width; i++) s[i] = topScores[i].floatValue();
+        int ruleWidth = Math.min(width, topRules.size());
+        int[] r = new int[ruleWidth];
+        for (int i = 0; i < ruleWidth; i++) r[i] = ruleId(topRules.get(i));
+
+        queries[rows] = entityId(query);
+        directions[rows] = (byte) direction;
+        ranks[rows] = rank;
+        candidates[rows] = entityId(candidate);
+        widths[rows] = (byte) width;
+        scores.add(s);
+        ruleIds.add(r);
+        if(++rows == BLOCK_SIZE) flushBlock();
+    }
+
+    private int entityId(long id) {
+        Integer dense = entities.get(id);
+        if(dense == null) {
+            dense = entityIds.size();
+            entities.put(id, dense);
+            entityIds.add(id);
+            entityNames.add(names.apply(id));
+        }
+        return dense;
+    }
+
+    private int ruleId(Rule rule) {
+        Integer id = rules.get(rule);
+        if(id == null) {
+            id = ruleList.size();
+            rules.put(rule, id);
+            ruleList.add(rule);
+        }
+        return id;
+    }
+
+    private void flushBlock() {
+        if(rows == 0) return;
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(rows * 16);
+        try(DataOutputStream columns = new DataOutputStream(raw)) {
+            for (int i = 0; i < rows; i++) writeVarInt(columns, queries[i]);
+            columns.write(directions, 0, rows);
+            for (int i = 0; i < rows; i++) writeVarInt(columns, ranks[i]);
+            for (int i = 0; i < rows; i++) writeVarInt(columns, candidates[i]);
+            columns.write(widths, 0, rows);
+            for (float[] s : scores) for (float v : s) columns.writeFloat(v);
+            for (int[] r : ruleIds) {
+                writeVarInt(columns, r.length);
+                for (int v : r) writeVarInt(columns, v);
+            }
+            writeCompressed(rows, raw.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rows = 0;
+        scores.clear();
+        ruleIds.clear();
+    }
+
+    private void writeCompressed(int header, byte[] raw) throws IOException {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[1 << 16];
+        while(!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            compressed.write(buffer, 0, n);
+        }
+        writeInt(header);
+        writeInt(raw.length);
+        writeInt(compressed.size());
+        write(compressed.toByteArray());
+    }
+
+    private void writeDictionaries() throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try(DataOutputStream dictionary = new DataOutputStream(raw)) {
+            for (int i = 0; i < entityIds.size(); i++) {
+                dictionary.writeLong(entityIds.get(i));
+                dictionary.writeUTF(entityNames.get(i));
+            }
+        }
+        writeCompressed(entityIds.size(), raw.toByteArray());
+
+        raw = new ByteArrayOutputStream();
+        try(DataOutputStream dictionary = new DataOutputStream(raw)) {
+            for (Rule rule : ruleList) {
+                dictionary.writeUTF(rule.toString());
+                dictionary.writeDouble(rule.stats.sc);
+            }
+        }
+        writeCompressed(ruleList.size(), raw.toByteArray());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            writeInt(0);
+            long dictionaryOffset = position;
+            writeDictionaries();
+            out.writeLong(dictionaryOffset);
+            write(MAGIC);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.writeInt(v);
+        position += 4;
+    }
+
+    static void writeVarInt(DataOutputStream out, int v) throws IOException {
+        while((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+}
@@ -0,0 +1,125 @@
+package ac.uk.ncl.utils;
+
+import ac.uk.ncl.Settings;
+
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * The random number service of the system. All randomness is drawn from streams split off a root
+ * {@link SplittableRandom} seeded with {@link Settings#RANDOM_SEED}, so that runs with the same
+ * seed are reproducible:
+ * - The root is reseeded for every target with the seed, the target name and the attempt number,
+ * thus the results of a target do not depend on the targets learned before it, and repeated
+ * attempts on a target draw different samples.
+ * - Every thread draws from its own stream through {@link #get()}. Worker threads should be handed
+ * a stream split on the spawning thread with {@link #split()} and {@link #bind(Random)} it, so
+ * that the streams of workers do not depend on thread scheduling.
+ * When the seed is = -1, the root is seeded randomly.
+ */
+public class Randomness {
+    private static SplittableRandom root = new SplittableRandom();
+    private static volatile int generation = 0;
+    private static final ThreadLocal<Stream> streams = new ThreadLocal<>();
+
+    public static void reseed(String target) {
+        reseed(target, 0);
+    }
+
+    /**
+     * @param attempt the number of the repeated run of the target, starting from 0
+     */
+    public static synchronized void reseed(String target, int attempt) {
+        long seed = Settings.RANDOM_SEED;
+        root = seed == -1 ? new SplittableRandom()
+                : new SplittableRandom(seed * 31 + target.hashCode() + attempt * 0x9E3779B97F4A7C15L);
+        generation++;
+    }
+
+    /**
+     * A new stream split off the root.
+     */
+    public static synchronized Random split() {
+        return new SplitRandom(root.split());
+    }
+
+    public static void bind(Random random) {
+        streams.set(new Stream(generation, random));
+    }
+
+    /**
+     * The stream of the current thread, split off the root on first use after a reseed.
+     */
+    public static Random get() {
+        Stream stream = streams.get();
+        if(stream == null || stream.generation != generation) {
+            stream = new Stream(generation, split());
+            streams.set(stream);
+        }
+        return stream.random;
+    }
+
+    /**
+     * Fisher-Yates shuffle with the stream of the current thread.
+     */
+    public static <T> void shuffle(List<T> list) {
+        Random rand = get();
+        for (int i = list.size() - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            list.set(i, list.set(j, list.get(i)));
+        }
+    }
+
+    static class Stream {
+        final int generation;
+        final Random random;
+
+        Stream(int generation, Random random) {
+            this.generation = generation;
+            this.random = random;
+        }
+    }
+
+    /**
+     * Exposes a {@link SplittableRandom} as a {@link Random} for the existing samplers. Not thread-safe,
+     * which is fine as streams are confined to threads.
+     */
+    static class SplitRandom extends Random {
+        private final SplittableRandom source;
+
+        SplitRandom(SplittableRandom source) {
+            this.source = source;
+        }
+
+        @Override
+        protected int next(int bits) {
+            return source.nextInt() >>> (32 - bits);
+        }
+
+        @Override
+        public int nextInt() {
+            return source.nextInt();
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return source.nextInt(bound);
+        }
+
+        @Override
+        public long nextLong() {
+            return source.nextLong();
+        }
+
+        @Override
+        public double nextDouble() {
+            return source.nextDouble();
+        }
+
+        @Override
+        public boolean nextBoolean() {
+            return source.nextBoolean();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ac.uk.ncl.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Space-Saving heavy hitter counter: the frequencies of a stream are counted in a fixed
+ * number of counters kept in an indexed min-heap. An item without a counter takes over the
+ * counter of the least frequent item and its count plus one, so counts never underestimate,
+ * and every item more frequent than n / capacity after n offers is guaranteed to be counted.
+ */
+public class SpaceSaving<T> {
+    private final Object[] items;
+    private final int[] counts;
+    private final Map<T, Integer> positions = new HashMap<>();
+    private int size = 0;
+
+    public SpaceSaving(int capacity) {
+        items = new Object[Math.max(1, capacity)];
+        counts = new int[items.length];
+    }
+
+    public void offer(T item) {
+        Integer position = positions.get(item);
+        if(position != null) {
+            counts[position]++;
+            siftDown(position);
+        } else if(size < items.length) {
+            items[size] = item;
+            counts[size] = 1;
+            positions.put(item, size);
+            siftUp(size++);
+        } else {
+            positions.remove(items[0]);
+            items[0] = item;
+            counts[0]++;
+            positions.put(item, 0);
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The counted items and their counts, overestimated by at most the smallest count.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<T, Integer> counts() {
+        Map<T, Integer> result = new HashMap<>();
+        for (int i = 0; i < size; i++) result.put((T) items[i], counts[i]);
+        return result;
+    }
+
+    private void siftUp(int i) {
+        while(i > 0) {
+            int parent = (i - 1) / 2;
+            if(counts[parent] <= counts[i]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size) break;
+            if(child + 1 < size && counts[child + 1] < counts[child]) child++;
+            if(counts[i] <= counts[child]) break;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void swap(int i, int j) {
+        Object item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+        int count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        positions.put((T) items[i], i);
+        positions.put((T) items[j], j);
+    }
+}
@@ -2,6 +2,7 @@ import ac.uk.ncl.Settings;
 import ac.uk.ncl.core.GenOps;
 import ac.uk.ncl.core.GraphOps;
 import ac.uk.ncl.structure.*;
+import ac.uk.ncl.utils.LongPairSet;
 import ac.uk.ncl.utils.MathUtils;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
@@ -384,7 +385,7 @@ public class GeneralProfile {
 
             s = System.currentTimeMillis();
             for (Rule pattern : abstractRules) {
-                List<LocalPath> results3 = new ArrayList<>(GraphOps.bodyGroundingCoreAPI(graph, pattern, false));
+                LongPairSet results3 = GraphOps.bodyGroundingCoreAPI(graph, pattern, false);
             }
             System.out.println("API: " + (double) (System.currentTimeMillis() - s) / 1000d);
 
@@ -392,7 +393,7 @@ public class GeneralProfile {
             System.out.println("InsPattern Size: " + insPatterns.size());
             s = System.currentTimeMillis();
             for (Rule insPattern : insPatterns) {
-                List<LocalPath> results4 = new ArrayList<>(GraphOps.bodyGroundingCoreAPI(graph, insPattern, false));
+                LongPairSet results4 = GraphOps.bodyGroundingCoreAPI(graph, insPattern, false);
             }
             System.out.println("API for instantiated rules: " + (double) (System.currentTimeMillis() - s) / 1000d);
 
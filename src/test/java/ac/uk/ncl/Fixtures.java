@@ -0,0 +1,200 @@
+package ac.uk.ncl;
+
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.Atom;
+import ac.uk.ncl.structure.Instance;
+import ac.uk.ncl.structure.InstantiatedRule;
+import ac.uk.ncl.structure.Rule;
+import org.neo4j.graphdb.*;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Nodes, relationships and rules for unit tests without a graph database. Nodes and relationships
+ * are proxies answering only the accessors used to build instances and atoms. The name of node i is "e" + i.
+ * Graphs are proxies over lists of relationships answering the accessors used to ground rule bodies.
+ */
+public class Fixtures {
+
+    public static Node node(long id) {
+        return (Node) Proxy.newProxyInstance(Node.class.getClassLoader(), new Class[]{Node.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId": return id;
+                case "getProperty": return "e" + id;
+                case "hashCode": return Long.hashCode(id);
+                case "equals": return args[0] instanceof Node && ((Node) args[0]).getId() == id;
+                case "toString": return "(" + id + ")";
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    public static Relationship relationship(String type, long start, long end) {
+        Node startNode = node(start), endNode = node(end);
+        RelationshipType relationshipType = RelationshipType.withName(type);
+        return (Relationship) Proxy.newProxyInstance(Relationship.class.getClassLoader(), new Class[]{Relationship.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getType": return relationshipType;
+                case "getStartNode": return startNode;
+                case "getEndNode": return endNode;
+                case "getStartNodeId": return start;
+                case "getEndNodeId": return end;
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                case "toString": return "(" + start + ")-[" + type + "]->(" + end + ")";
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * An in-memory graph of a chain of the given length over relationships of the type.
+     */
+    public static GraphDatabaseService chain(String type, int length) {
+        String[] relationships = new String[length];
+        for (int i = 0; i < length; i++) relationships[i] = type + " " + i + " " + (i + 1);
+        return graph(relationships);
+    }
+
+    /**
+     * Runs the task on a thread with a small stack, so that recursion proportional to the input fails.
+     */
+    public static void onSmallStack(Runnable task) throws InterruptedException {
+        Throwable[] error = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                error[0] = e;
+            }
+        }, "small stack", 1 << 16);
+        thread.start();
+        thread.join();
+        if(error[0] instanceof Error) throw (Error) error[0];
+        if(error[0] != null) throw new RuntimeException(error[0]);
+    }
+
+    /**
+     * An in-memory graph of the relationships "type start end", iterated in the given order.
+     * Nodes are the ends of the relationships.
+     */
+    public static GraphDatabaseService graph(String... relationships) {
+        List<Relationship> all = new ArrayList<>();
+        Map<Long, Node> nodes = new TreeMap<>();
+        for (String relationship : relationships) {
+            String[] words = relationship.split(" ");
+            long start = Long.parseLong(words[1]), end = Long.parseLong(words[2]);
+            Node startNode = nodes.computeIfAbsent(start, id -> graphNode(id, all));
+            Node endNode = nodes.computeIfAbsent(end, id -> graphNode(id, all));
+            all.add(graphRelationship(all.size(), RelationshipType.withName(words[0]), startNode, endNode));
+        }
+        return (GraphDatabaseService) Proxy.newProxyInstance(GraphDatabaseService.class.getClassLoader()
+                , new Class[]{GraphDatabaseService.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "beginTx": return transaction();
+                case "getNodeById": return nodes.get((Long) args[0]);
+                case "getAllRelationships": return iterable(all);
+                case "getAllNodes": return iterable(new ArrayList<>(nodes.values()));
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static Node graphNode(long id, List<Relationship> all) {
+        return (Node) Proxy.newProxyInstance(Node.class.getClassLoader(), new Class[]{Node.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId": return id;
+                case "getProperty": return "e" + id;
+                case "getRelationships": {
+                    Direction direction = (Direction) args[0];
+                    Set<String> types = Arrays.stream((RelationshipType[]) args[1]).map(RelationshipType::name).collect(Collectors.toSet());
+                    return all.stream().filter(r -> types.contains(r.getType().name()))
+                            .filter(r -> direction != Direction.INCOMING && r.getStartNodeId() == id
+                                    || direction != Direction.OUTGOING && r.getEndNodeId() == id)
+                            .collect(Collectors.toList());
+                }
+                case "hashCode": return Long.hashCode(id);
+                case "equals": return args[0] instanceof Node && ((Node) args[0]).getId() == id;
+                case "toString": return "(" + id + ")";
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static Relationship graphRelationship(int index, RelationshipType type, Node start, Node end) {
+        return (Relationship) Proxy.newProxyInstance(Relationship.class.getClassLoader(), new Class[]{Relationship.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getType": return type;
+                case "getStartNode": return start;
+                case "getEndNode": return end;
+                case "getStartNodeId": return start.getId();
+                case "getEndNodeId": return end.getId();
+                case "getOtherNode": return ((Node) args[0]).getId() == start.getId() ? end : start;
+                case "getOtherNodeId": return (Long) args[0] == start.getId() ? end.getId() : start.getId();
+                case "hashCode": return index;
+                case "equals": return proxy == args[0];
+                case "toString": return start + "-[" + type.name() + "]->" + end;
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static Transaction transaction() {
+        return (Transaction) Proxy.newProxyInstance(Transaction.class.getClassLoader(), new Class[]{Transaction.class}
+                , (proxy, method, args) -> null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ResourceIterable<T> iterable(List<T> list) {
+        return (ResourceIterable<T>) Proxy.newProxyInstance(ResourceIterable.class.getClassLoader()
+                , new Class[]{ResourceIterable.class}, (proxy, method, args) -> {
+            if(!method.getName().equals("iterator")) throw new UnsupportedOperationException(method.getName());
+            Iterator<T> iterator = list.iterator();
+            return Proxy.newProxyInstance(ResourceIterator.class.getClassLoader(), new Class[]{ResourceIterator.class}
+                    , (p, m, a) -> {
+                switch (m.getName()) {
+                    case "hasNext": return iterator.hasNext();
+                    case "next": return iterator.next();
+                    case "close": return null;
+                    default: throw new UnsupportedOperationException(m.getName());
+                }
+            });
+        });
+    }
+
+    public static Instance instance(String type, long sub, long obj) {
+        return new Instance(relationship(type, sub, obj));
+    }
+
+    /**
+     * The abstract rule of the path from the subject of the instance through the nodes, where the
+     * i-th body atom follows an outgoing relationship of the i-th type.
+     */
+    public static AbstractRule abstractRule(Instance head, String[] types, long... nodes) {
+        List<Atom> body = new ArrayList<>();
+        long from = head.startNodeId;
+        for (int i = 0; i < types.length; i++) {
+            body.add(new Atom(node(from), relationship(types[i], from, nodes[i])));
+            from = nodes[i];
+        }
+        return new AbstractRule(new Atom(head), body);
+    }
+
+    /**
+     * An open abstract rule target(X,Y) <- body(X,V1) and head anchored instantiations of it with
+     * the standard confidence set.
+     */
+    public static AbstractRule openRule(String body) {
+        return abstractRule(instance("target", 1, 2), new String[]{body}, 3);
+    }
+
+    public static Rule headRule(AbstractRule base, long anchoring, double support, double totalPredictions) {
+        Rule rule = new InstantiatedRule(base, new long[]{anchoring}, 0);
+        rule.setStats(support, totalPredictions, 100);
+        return rule;
+    }
+}
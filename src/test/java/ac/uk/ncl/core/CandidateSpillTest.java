@@ -0,0 +1,99 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CandidateSpillTest {
+    private int spillRecords;
+    private CandidateSpill spill;
+    private final List<Rule> rules = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        spillRecords = Settings.SPILL_RECORDS;
+        Settings.SPILL_RECORDS = 2;
+        File home = Files.createTempDirectory("spill").toFile();
+        spill = new CandidateSpill(home, new HashSet<>(Arrays.asList(new Pair(1, 50), new Pair(2, 60))));
+        AbstractRule base = Fixtures.openRule("r");
+        for (int i = 0; i < 4; i++) rules.add(Fixtures.headRule(base, 100 + i, i + 1, 10));
+    }
+
+    @After
+    public void tearDown() {
+        spill.close();
+        Settings.SPILL_RECORDS = spillRecords;
+    }
+
+    @Test
+    public void mergesGroupsAcrossRuns() {
+        fill();
+        assertTrue(spill.getRuns() > 2);
+        spill.reduce(0, 2);
+        assertEquals(2, spill.getRuns());
+        assertGrouped(collect(0));
+    }
+
+    @Test
+    public void mergesWithoutReduction() {
+        fill();
+        assertGrouped(collect(0));
+        assertTrue(collect(1).isEmpty());
+    }
+
+    private void fill() {
+        CandidateSpill.Buffer a = spill.buffer(), b = spill.buffer();
+        a.add(new Pair(1, 10), rules.get(0));
+        a.add(new Pair(1, 11), rules.get(1));
+        a.add(new Pair(2, 12), rules.get(2));
+        a.add(new Pair(1, 10), rules.get(2));
+        a.add(new Pair(1, 10), rules.get(0));
+        b.add(new Pair(1, 10), rules.get(3));
+        b.add(new Pair(2, 12), rules.get(0));
+        b.add(new Pair(1, 11), rules.get(1));
+        a.flush();
+        b.flush();
+    }
+
+    /**
+     * The rules of every (query, candidate) in the order handed over.
+     */
+    private Map<String, List<Rule>> collect(int direction) {
+        Map<String, List<Rule>> groups = new LinkedHashMap<>();
+        long[] last = {-1};
+        spill.forEachQuery(direction, (query, candidates, ruleIds) -> {
+            assertTrue(query > last[0]);
+            last[0] = query;
+            for (Pair pair : candidates) {
+                List<Rule> group = new ArrayList<>();
+                int[] ids = ruleIds.get(pair);
+                assertEquals(ids.length, pair.scores.length);
+                for (int i = 0; i < ids.length; i++) {
+                    group.add(spill.rule(ids[i]));
+                    assertEquals(spill.rule(ids[i]).stats.sc, pair.scores[i], 0d);
+                }
+                groups.put(pair.sub + "-" + pair.obj, group);
+            }
+        });
+        return groups;
+    }
+
+    private void assertGrouped(Map<String, List<Rule>> groups) {
+        assertEquals(3, groups.size());
+        assertEquals(Arrays.asList(rules.get(3), rules.get(2), rules.get(0)), groups.get("1-10"));
+        assertEquals(Collections.singletonList(rules.get(1)), groups.get("1-11"));
+        assertEquals(Arrays.asList(rules.get(2), rules.get(0)), groups.get("2-12"));
+    }
+}
@@ -0,0 +1,100 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ClosedRuleEvaluatorTest {
+    // node ids beyond the int range, as dense ids are used for the matrices
+    static final long B = 10_000_000_000L;
+
+    private int learnGroundings;
+    private GraphDatabaseService graph;
+    private Set<Pair> groundTruth;
+
+    @Before
+    public void setUp() throws IOException {
+        Logger.init(File.createTempFile("log", ".txt"), false);
+        learnGroundings = Settings.LEARN_GROUNDINGS;
+        Settings.LEARN_GROUNDINGS = 0;
+        AdjacencyIndex.clear();
+        // self loops on 2, a path back to the start 1 -> 2 -> 1, and (1, 5) reached through 2 and 3
+        graph = Fixtures.graph(edge("p", 1, 2), edge("p", 1, 3), edge("p", 2, 2), edge("p", 4, 2)
+                , edge("q", 2, 5), edge("q", 3, 5), edge("q", 2, 1), edge("q", 2, 2), edge("q", 5, 4)
+                , edge("r", 5, 6), edge("r", 1, 6), edge("r", 4, 4));
+        groundTruth = new HashSet<>(Arrays.asList(new Pair(B + 1, B + 5), new Pair(B + 2, B + 5)
+                , new Pair(B + 4, B + 1), new Pair(B + 1, B + 2), new Pair(B + 2, B + 2)));
+    }
+
+    @After
+    public void tearDown() {
+        AdjacencyIndex.clear();
+        Settings.LEARN_GROUNDINGS = learnGroundings;
+    }
+
+    @Test
+    public void matchesGroundingsForShortBodies() {
+        String[][] bodies = {{"p"}, {"q"}, {"r"}, {"p", "q"}, {"q", "p"}, {"q", "r"}, {"p", "p"}, {"q", "q"}};
+        List<Rule> evaluated = new ArrayList<>(), grounded = new ArrayList<>();
+        for (String[] body : bodies) {
+            evaluated.add(closedRule(body));
+            grounded.add(closedRule(body));
+        }
+        assertTrue(ClosedRuleEvaluator.evaluate(graph, evaluated, groundTruth).isEmpty());
+
+        for (int i = 0; i < bodies.length; i++) {
+            int total = 0, correct = 0;
+            for (Pair grounding : GraphOps.bodyGroundingCoreAPI(graph, grounded.get(i), false).toPairs()) {
+                total++;
+                if(groundTruth.contains(grounding)) correct++;
+            }
+            String message = Arrays.toString(bodies[i]);
+            assertTrue(message, evaluated.get(i).isClosed());
+            assertEquals(message, total, evaluated.get(i).stats.totalPredictions, 0);
+            assertEquals(message, correct, evaluated.get(i).stats.support, 0);
+        }
+    }
+
+    @Test
+    public void leavesLongerBodiesToGrounding() {
+        Rule rule = closedRule(new String[]{"p", "q", "r"});
+        List<Rule> remaining = ClosedRuleEvaluator.evaluate(graph, Arrays.asList(closedRule(new String[]{"p"}), rule), groundTruth);
+        assertEquals(1, remaining.size());
+        assertSame(rule, remaining.get(0));
+    }
+
+    @Test
+    public void mapsNodeIdsToDenseIds() {
+        AdjacencyIndex.get(graph, "p", false);
+        assertEquals(0, AdjacencyIndex.dense(B + 1));
+        assertEquals(B + 6, AdjacencyIndex.id(AdjacencyIndex.dense(B + 6)));
+        assertEquals(-1, AdjacencyIndex.dense(7));
+        assertEquals(6, AdjacencyIndex.get(graph, "p", false).size);
+    }
+
+    private static String edge(String type, long start, long end) {
+        return type + " " + (B + start) + " " + (B + end);
+    }
+
+    /**
+     * The closed rule target(X, Y) <- body, with X the first node.
+     */
+    private static Rule closedRule(String[] body) {
+        long[] nodes = new long[body.length];
+        for (int i = 0; i < body.length; i++) nodes[i] = B + 100 + i;
+        nodes[body.length - 1] = B + 200;
+        return Fixtures.abstractRule(Fixtures.instance("target", B + 99, B + 200), body, nodes);
+    }
+}
@@ -0,0 +1,133 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class GroundingCacheTest {
+    private int budget;
+
+    @Before
+    public void setUp() {
+        budget = Settings.GROUNDING_CACHE_MB;
+        Settings.GROUNDING_CACHE_MB = 1;
+        GroundingCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        GroundingCache.clear();
+        Settings.GROUNDING_CACHE_MB = budget;
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        // 1MB holds 65536 groundings of 16 bytes, so only two entries of 30000 fit
+        Rule a = pattern("a"), b = pattern("b"), c = pattern("c");
+        put(a, 30000, false);
+        put(b, 30000, false);
+        assertNotNull(GroundingCache.get(a, 30000));
+        put(c, 30000, false);
+
+        assertTrue(GroundingCache.contains(a, 30000));
+        assertFalse(GroundingCache.contains(b, 30000));
+        assertTrue(GroundingCache.contains(c, 30000));
+    }
+
+    @Test
+    public void reusesBlocksOfEvictedEntries() {
+        // 1MB is 256 blocks of 256 groundings, each entry of 30000 groundings takes 118 of them
+        for (int i = 0; i < 20; i++) put(pattern("t" + i), 30000, false);
+        assertEquals(256, GroundingCache.allocatedBlocks());
+        assertTrue(GroundingCache.contains(pattern("t19"), 30000));
+        assertEquals(30000, GroundingCache.get(pattern("t18"), 30000).size());
+        assertTrue(GroundingCache.get(pattern("t18"), 30000).contains(new Pair(29999, 30999)));
+    }
+
+    @Test
+    public void keysMaskSignaturesByBodyAtom() {
+        // masking the same node pair in the first or the second body type must not give the same key
+        Rule ab = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"a", "b"}, 3, 4);
+        GroundingCache.mask(Collections.singletonList(Fixtures.instance("a", 5, 6)), true);
+        put(ab, 10, false);
+        GroundingCache.mask(Collections.singletonList(Fixtures.instance("a", 5, 6)), false);
+        GroundingCache.mask(Collections.singletonList(Fixtures.instance("b", 5, 6)), true);
+        assertNull(GroundingCache.get(ab, 10));
+        GroundingCache.mask(Collections.singletonList(Fixtures.instance("b", 5, 6)), false);
+    }
+
+    @Test
+    public void skipsEntriesOverBudget() {
+        Rule a = pattern("a");
+        put(a, 70000, false);
+        assertFalse(GroundingCache.contains(a, 70000));
+    }
+
+    @Test
+    public void maskInvalidatesTouchedTypes() {
+        Rule a = pattern("a"), b = pattern("b");
+        put(a, 10, false);
+        put(b, 10, false);
+
+        GroundingCache.mask(Collections.singletonList(Fixtures.instance("a", 5, 6)), true);
+        assertNull(GroundingCache.get(a, 10));
+        assertNotNull(GroundingCache.get(b, 10));
+
+        GroundingCache.mask(Collections.singletonList(Fixtures.instance("a", 5, 6)), false);
+        assertNotNull(GroundingCache.get(a, 10));
+    }
+
+    @Test
+    public void servesSmallerCapsFromPrefix() {
+        Rule a = pattern("a");
+        put(a, 10, false);
+
+        Set<Pair> prefix = GroundingCache.get(a, 4);
+        assertEquals(4, prefix.size());
+        for (long i = 0; i < 4; i++) assertTrue(prefix.contains(new Pair(i, i + 1000)));
+        assertEquals(10, GroundingCache.get(a, 10).size());
+        assertNull(GroundingCache.get(a, 11));
+    }
+
+    @Test
+    public void servesAnyCapWhenComplete() {
+        Rule a = pattern("a");
+        put(a, 10, true);
+        assertEquals(10, GroundingCache.get(a, 1000).size());
+    }
+
+    @Test
+    public void servesSameCapWhenTruncatedBelowIt() {
+        // an incomplete search that found fewer groundings than its cap still answers that cap
+        Rule a = pattern("a");
+        GroundingCache.put(a, 20, false, endpoints(5), 5);
+        assertEquals(5, GroundingCache.get(a, 20).size());
+        assertNull(GroundingCache.get(a, 30));
+    }
+
+    private static Rule pattern(String type) {
+        return Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{type}, 3);
+    }
+
+    private static void put(Rule pattern, int size, boolean complete) {
+        GroundingCache.put(pattern, size, complete, endpoints(size), size);
+    }
+
+    private static long[] endpoints(int size) {
+        long[] endpoints = new long[size * 2];
+        for (int i = 0; i < size; i++) {
+            endpoints[2 * i] = i;
+            endpoints[2 * i + 1] = i + 1000;
+        }
+        return endpoints;
+    }
+}
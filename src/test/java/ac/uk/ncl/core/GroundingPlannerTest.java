@@ -0,0 +1,148 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.InstantiatedRule;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class GroundingPlannerTest {
+    private int learnGroundings, attempts;
+    private GraphDatabaseService graph;
+
+    @Before
+    public void setUp() {
+        learnGroundings = Settings.LEARN_GROUNDINGS;
+        attempts = Settings.GROUNDING_ATTEMPTS;
+        graph = Fixtures.graph("p 1 2", "p 1 3", "p 4 2", "p 5 6"
+                , "q 2 7", "q 2 8", "q 2 1", "q 3 7", "q 6 7"
+                , "r 7 9", "r 8 9", "r 7 10");
+    }
+
+    @After
+    public void tearDown() {
+        Settings.LEARN_GROUNDINGS = learnGroundings;
+        Settings.GROUNDING_ATTEMPTS = attempts;
+    }
+
+    @Test
+    public void everyPlanFindsTheExecutorGroundingsWhenComplete() {
+        Settings.LEARN_GROUNDINGS = 0;
+        for (Rule pattern : patterns()) {
+            Set<Pair> expected = GraphOps.bodyGroundingCoreAPI(graph, pattern, false).toPairs();
+            for (int plan : plans(pattern)) {
+                GroundingPlanner.Walk walk = ground(pattern, Integer.MAX_VALUE, plan);
+                assertEquals(pattern + " plan " + plan, expected, walk.toPairs());
+                assertTrue(walk.cacheable());
+            }
+        }
+    }
+
+    @Test
+    public void capsPlansOnDistinctPairs() {
+        for (int cap = 1; cap <= 4; cap++) {
+            Settings.LEARN_GROUNDINGS = 0;
+            List<Set<Pair>> complete = new ArrayList<>();
+            for (Rule pattern : patterns()) complete.add(GraphOps.bodyGroundingCoreAPI(graph, pattern, false).toPairs());
+            Settings.LEARN_GROUNDINGS = cap;
+            List<Rule> patterns = patterns();
+            for (int i = 0; i < patterns.size(); i++) {
+                Rule pattern = patterns.get(i);
+                Set<Pair> capped = GraphOps.bodyGroundingCoreAPI(graph, pattern, false).toPairs();
+                for (int plan : plans(pattern)) {
+                    String message = pattern + " plan " + plan + " cap " + cap;
+                    GroundingPlanner.Walk walk = ground(pattern, cap, plan);
+                    Set<Pair> pairs = walk.toPairs();
+                    assertEquals(message, Math.min(cap, complete.get(i).size()), pairs.size());
+                    assertTrue(message, complete.get(i).containsAll(pairs));
+                    if(plan == GroundingPlanner.FORWARD) assertEquals(message, capped, pairs);
+                    else if(walk.stopped) assertFalse(message, walk.cacheable());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void forwardPlanTruncatesAsExecutor() {
+        Settings.LEARN_GROUNDINGS = 0;
+        boolean truncated = false;
+        for (int budget = 1; budget <= 12; budget++) {
+            Settings.GROUNDING_ATTEMPTS = budget;
+            List<Rule> single = patterns(), planned = patterns();
+            for (int i = 0; i < single.size(); i++) {
+                Set<Pair> expected = GraphOps.bodyGroundingCoreAPI(graph, single.get(i), false).toPairs();
+                GroundingPlanner.Walk walk = ground(planned.get(i), Integer.MAX_VALUE, GroundingPlanner.FORWARD);
+                assertEquals(expected, walk.toPairs());
+                assertEquals(single.get(i).stats.truncated, planned.get(i).stats.truncated);
+                assertEquals(!walk.budget.truncated, walk.cacheable());
+                truncated |= walk.budget.truncated;
+            }
+        }
+        assertTrue(truncated);
+    }
+
+    @Test
+    public void walksLongBodiesOnSmallStacks() throws InterruptedException {
+        Settings.LEARN_GROUNDINGS = 0;
+        int length = 300;
+        GraphDatabaseService chain = Fixtures.chain("p", length);
+        AbstractRule body = chainRule(length);
+        Rule pattern = new InstantiatedRule(body, new long[]{length}, 1);
+        Set<Pair> expected = Collections.singleton(new Pair(0, length));
+        Fixtures.onSmallStack(() -> {
+            for (int plan : plans(pattern))
+                assertEquals("plan " + plan, expected, GroundingPlanner.ground(chain, pattern, true, Integer.MAX_VALUE, plan).toPairs());
+            assertTrue(ThresholdAnswering.reaches(chain, body, 0, length));
+        });
+    }
+
+    @Test
+    public void walksFromNodeMarkTruncation() {
+        Settings.GROUNDING_ATTEMPTS = 2;
+        Rule pattern = patterns().get(1);
+        GroundingPlanner.Walk walk = new GroundingPlanner.Walk(pattern.bodyAtoms, false, -1, Integer.MAX_VALUE)
+                .from(graph.getNodeById(1L), pattern);
+        assertTrue(walk.budget.truncated);
+        assertTrue(walk.stopped);
+        assertTrue(pattern.stats.truncated);
+    }
+
+    private GroundingPlanner.Walk ground(Rule pattern, int cap, int plan) {
+        return GroundingPlanner.ground(graph, pattern, GraphOps.checksTail(pattern), cap, plan);
+    }
+
+    private static int[] plans(Rule pattern) {
+        return GraphOps.checksTail(pattern)
+                ? new int[]{GroundingPlanner.FORWARD, GroundingPlanner.BACKWARD, GroundingPlanner.FROM_TAIL}
+                : new int[]{GroundingPlanner.FORWARD, GroundingPlanner.BACKWARD};
+    }
+
+    static AbstractRule chainRule(int length) {
+        String[] types = new String[length];
+        long[] nodes = new long[length];
+        for (int i = 0; i < length; i++) {
+            types[i] = "p";
+            nodes[i] = 100_000 + i;
+        }
+        return Fixtures.abstractRule(Fixtures.instance("target", 99_999, 99_998), types, nodes);
+    }
+
+    /**
+     * Abstract rules and tail anchored rules over the bodies of the fixture graph.
+     */
+    private static List<Rule> patterns() {
+        AbstractRule pq = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"p", "q"}, 100, 101);
+        AbstractRule pqr = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"p", "q", "r"}, 100, 101, 102);
+        AbstractRule qr = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"q", "r"}, 100, 101);
+        return Arrays.asList(pq, pqr, qr, new InstantiatedRule(pq, new long[]{7}, 1), new InstantiatedRule(pqr, new long[]{9}, 1));
+    }
+}
@@ -0,0 +1,125 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.Deadline;
+import ac.uk.ncl.utils.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class GroundingTrieTest {
+    static final String[][] BODIES = {{"p"}, {"p", "q"}, {"p", "q", "r"}, {"p", "r"}, {"q", "r"}, {"q"}};
+
+    private int learnGroundings, attempts, threads, cacheMB, timeBudget;
+    private double samplingShare;
+    private GraphDatabaseService graph;
+
+    @Before
+    public void setUp() throws IOException {
+        Logger.init(File.createTempFile("log", ".txt"), false);
+        learnGroundings = Settings.LEARN_GROUNDINGS;
+        attempts = Settings.GROUNDING_ATTEMPTS;
+        threads = Settings.THREAD_NUMBER;
+        cacheMB = Settings.GROUNDING_CACHE_MB;
+        timeBudget = Settings.TIME_BUDGET;
+        samplingShare = Settings.SAMPLING_SHARE;
+        Settings.THREAD_NUMBER = 2;
+        Settings.GROUNDING_CACHE_MB = 0;
+        // (1, 7) is reached through both 2 and 3, and 1 -> 2 -> 1 revisits the start
+        graph = Fixtures.graph("p 1 2", "p 1 3", "p 4 2", "p 5 6"
+                , "q 2 7", "q 2 8", "q 2 1", "q 3 7", "q 6 7"
+                , "r 7 9", "r 8 9", "r 7 10");
+    }
+
+    @After
+    public void tearDown() {
+        GroundingTrie.clear();
+        Settings.LEARN_GROUNDINGS = learnGroundings;
+        Settings.GROUNDING_ATTEMPTS = attempts;
+        Settings.THREAD_NUMBER = threads;
+        Settings.GROUNDING_CACHE_MB = cacheMB;
+        Settings.TIME_BUDGET = timeBudget;
+        Settings.SAMPLING_SHARE = samplingShare;
+        Deadline.start();
+    }
+
+    @Test
+    public void capsOnDistinctPairs() {
+        Settings.LEARN_GROUNDINGS = 3;
+        List<Rule> rules = rules();
+        GroundingTrie.prefetch(graph, rules, false);
+        Set<Pair> expected = new HashSet<>(Arrays.asList(new Pair(1, 7), new Pair(1, 8), new Pair(4, 7)));
+        assertEquals(expected, GroundingTrie.take(rules.get(1), false));
+    }
+
+    @Test
+    public void matchesExecutorUnderCaps() {
+        for (int cap : new int[]{0, 1, 2, 3, 5}) {
+            Settings.LEARN_GROUNDINGS = cap;
+            compare("cap " + cap);
+        }
+    }
+
+    @Test
+    public void matchesExecutorUnderAttemptBudgets() {
+        boolean truncated = false;
+        for (int budget = 1; budget <= 16; budget++) {
+            Settings.GROUNDING_ATTEMPTS = budget;
+            truncated |= compare("attempts " + budget);
+        }
+        assertTrue(truncated);
+    }
+
+    @Test
+    public void truncatesRulesWhenTheStageExpires() {
+        // a sampling share of zero puts the deadline of the stage at the start of the budget
+        Settings.TIME_BUDGET = 60;
+        Settings.SAMPLING_SHARE = 0;
+        Deadline.start();
+        Deadline.enter(Deadline.SAMPLING);
+        List<Rule> rules = rules();
+        GroundingTrie.prefetch(graph, rules, false);
+        for (Rule rule : rules) {
+            assertTrue(rule.stats.truncated);
+            assertTrue(GroundingTrie.take(rule, false).isEmpty());
+        }
+    }
+
+    /**
+     * Compares the prefetched groundings and truncation of every rule with the executor.
+     * @return if a rule was truncated
+     */
+    private boolean compare(String setting) {
+        List<Rule> batched = rules(), single = rules();
+        GroundingTrie.prefetch(graph, batched, false);
+        boolean truncated = false;
+        for (int i = 0; i < BODIES.length; i++) {
+            Set<Pair> expected = GraphOps.bodyGroundingCoreAPI(graph, single.get(i), false).toPairs();
+            String message = setting + ", body " + Arrays.toString(BODIES[i]);
+            assertEquals(message, expected, GroundingTrie.take(batched.get(i), false));
+            assertEquals(message, single.get(i).stats.truncated, batched.get(i).stats.truncated);
+            truncated |= single.get(i).stats.truncated;
+        }
+        return truncated;
+    }
+
+    private static List<Rule> rules() {
+        List<Rule> rules = new ArrayList<>();
+        for (String[] body : BODIES) {
+            long[] nodes = new long[body.length];
+            for (int i = 0; i < body.length; i++) nodes[i] = 100 + i;
+            rules.add(Fixtures.abstractRule(Fixtures.instance("target", 1, 2), body, nodes));
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,120 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.InstantiatedRule;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class JoinGroundingTest {
+    static final long B = 10_000_000_000L;
+
+    private int learnGroundings, attempts, cacheMB;
+    private boolean joinGrounding;
+    private GraphDatabaseService graph;
+
+    @Before
+    public void setUp() {
+        learnGroundings = Settings.LEARN_GROUNDINGS;
+        attempts = Settings.GROUNDING_ATTEMPTS;
+        cacheMB = Settings.GROUNDING_CACHE_MB;
+        joinGrounding = Settings.JOIN_GROUNDING;
+        Settings.LEARN_GROUNDINGS = 0;
+        AdjacencyIndex.clear();
+        GroundingCache.clear();
+        // a self loop on 2 ahead of q, a path back to the start 1 -> 2 -> 1, and several starts reaching 5
+        graph = Fixtures.graph(edge("p", 1, 2), edge("p", 1, 3), edge("p", 2, 2), edge("p", 4, 2), edge("p", 6, 3)
+                , edge("q", 2, 5), edge("q", 3, 5), edge("q", 2, 1), edge("q", 5, 4)
+                , edge("r", 5, 6), edge("r", 1, 6), edge("r", 4, 4));
+    }
+
+    @After
+    public void tearDown() {
+        AdjacencyIndex.clear();
+        GroundingCache.clear();
+        Settings.LEARN_GROUNDINGS = learnGroundings;
+        Settings.GROUNDING_ATTEMPTS = attempts;
+        Settings.GROUNDING_CACHE_MB = cacheMB;
+        Settings.JOIN_GROUNDING = joinGrounding;
+    }
+
+    @Test
+    public void matchesExecutorWhenComplete() {
+        for (Rule pattern : patterns()) {
+            Set<Pair> expected = GraphOps.bodyGroundingCoreAPI(graph, pattern, false).toPairs();
+            JoinGrounding.Join join = JoinGrounding.ground(graph, pattern, Integer.MAX_VALUE);
+            assertEquals(pattern.toString(), expected, join.toPairs());
+            assertTrue(join.cacheable());
+        }
+    }
+
+    @Test
+    public void capsOnDistinctStarts() {
+        Rule pattern = patterns().get(0);
+        Set<Pair> complete = GraphOps.bodyGroundingCoreAPI(graph, pattern, false).toPairs();
+        assertEquals(4, complete.size());
+        for (int cap = 1; cap < 4; cap++) {
+            JoinGrounding.Join join = JoinGrounding.ground(graph, pattern, cap);
+            assertEquals(cap, join.endpoints.size());
+            assertTrue(complete.containsAll(join.toPairs()));
+            assertFalse(join.cacheable());
+        }
+    }
+
+    @Test
+    public void marksRulesTruncatedByTheirBudget() {
+        Settings.GROUNDING_ATTEMPTS = 3;
+        Rule pattern = patterns().get(1);
+        JoinGrounding.Join join = JoinGrounding.ground(graph, pattern, Integer.MAX_VALUE);
+        assertTrue(join.budget.truncated);
+        assertTrue(pattern.stats.truncated);
+        assertFalse(join.cacheable());
+    }
+
+    @Test
+    public void joinsLongBodiesOnSmallStacks() throws InterruptedException {
+        int length = 300;
+        GraphDatabaseService chain = Fixtures.chain("p", length);
+        Rule pattern = new InstantiatedRule(GroundingPlannerTest.chainRule(length), new long[]{length}, 1);
+        Fixtures.onSmallStack(() -> {
+            JoinGrounding.Join join = JoinGrounding.ground(chain, pattern, Integer.MAX_VALUE);
+            assertEquals(Collections.singleton(new Pair(0, length)), join.toPairs());
+            assertTrue(JoinGrounding.exists(chain, pattern, 0));
+            assertFalse(JoinGrounding.exists(chain, pattern, 1));
+        });
+    }
+
+    @Test
+    public void cachesCompleteGroundings() {
+        Settings.JOIN_GROUNDING = true;
+        Settings.GROUNDING_CACHE_MB = 1;
+        Rule pattern = patterns().get(0);
+        Set<Pair> groundings = GraphOps.bodyGroundings(graph, pattern, false);
+        assertTrue(GroundingCache.contains(pattern, Integer.MAX_VALUE));
+        assertEquals(groundings, GroundingCache.get(pattern, Integer.MAX_VALUE));
+    }
+
+    private static String edge(String type, long start, long end) {
+        return type + " " + (B + start) + " " + (B + end);
+    }
+
+    /**
+     * Tail anchored rules of the bodies p.q ending at 5, p.q.r ending at 6 and q.r ending at 6.
+     */
+    private static List<Rule> patterns() {
+        AbstractRule pq = Fixtures.abstractRule(Fixtures.instance("target", B + 99, B + 98), new String[]{"p", "q"}, B + 100, B + 101);
+        AbstractRule pqr = Fixtures.abstractRule(Fixtures.instance("target", B + 99, B + 98), new String[]{"p", "q", "r"}, B + 100, B + 101, B + 102);
+        AbstractRule qr = Fixtures.abstractRule(Fixtures.instance("target", B + 99, B + 98), new String[]{"q", "r"}, B + 100, B + 101);
+        return Arrays.asList(new InstantiatedRule(pq, new long[]{B + 5}, 1), new InstantiatedRule(pqr, new long[]{B + 6}, 1)
+                , new InstantiatedRule(qr, new long[]{B + 6}, 1));
+    }
+}
@@ -0,0 +1,132 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.InstantiatedRule;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import ac.uk.ncl.utils.IO;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LazyExplanationsTest {
+    private int ruleSize, predictionSize, applyGroundings;
+    private boolean binary;
+    private GraphDatabaseService graph;
+    private List<Rule> abstractRules;
+    private Set<Pair> train, test;
+
+    @Before
+    public void setUp() {
+        ruleSize = Settings.VERIFY_RULE_SIZE;
+        predictionSize = Settings.VERIFY_PREDICTION_SIZE;
+        applyGroundings = Settings.APPLY_GROUNDINGS;
+        binary = Settings.BINARY_PREDICTIONS;
+        Settings.VERIFY_PREDICTION_SIZE = 100;
+        Settings.APPLY_GROUNDINGS = 0;
+        Settings.BINARY_PREDICTIONS = false;
+        GenOps.reset();
+        graph = Fixtures.graph("p 1 2", "p 3 2", "p 5 6", "p 7 6", "p 9 2", "p 11 6"
+                , "q 2 4", "q 6 8", "q 2 10", "q 6 12");
+
+        // the head rules anchored at 10 and 12 and the tail rule of 4 share a confidence
+        AbstractRule p = Fixtures.abstractRule(Fixtures.instance("target", 1, 4), new String[]{"p"}, 2);
+        p.headRules.add(rule(new InstantiatedRule(p, new long[]{4}, 0), 0.9));
+        p.headRules.add(rule(new InstantiatedRule(p, new long[]{8}, 0), 0.8));
+        p.headRules.add(rule(new InstantiatedRule(p, new long[]{10}, 0), 0.7));
+        p.headRules.add(rule(new InstantiatedRule(p, new long[]{12}, 0), 0.7));
+        AbstractRule pq = Fixtures.abstractRule(Fixtures.instance("target", 1, 4), new String[]{"p", "q"}, 2, 5);
+        pq.tailRules.add(rule(new InstantiatedRule(pq, new long[]{4}, 1), 0.7));
+        pq.tailRules.add(rule(new InstantiatedRule(pq, new long[]{8}, 1), 0.85));
+        pq.bothRules.add(rule(new InstantiatedRule(pq, new long[]{12, 12}, 2), 0.5));
+        pq.bothRules.add(rule(new InstantiatedRule(pq, new long[]{4, 10}, 2), 0.9));
+        AbstractRule closed = Fixtures.abstractRule(Fixtures.instance("target", 1, 4), new String[]{"p", "q"}, 2, 4);
+        rule(closed, 0.75);
+        abstractRules = Arrays.asList(p, pq, closed);
+
+        train = new HashSet<>(Collections.singletonList(new Pair(9, 4)));
+        test = new HashSet<>(Arrays.asList(new Pair(1, 4), new Pair(5, 8), new Pair(3, 10), new Pair(7, 12)));
+    }
+
+    @After
+    public void tearDown() {
+        GenOps.reset();
+        Settings.VERIFY_RULE_SIZE = ruleSize;
+        Settings.VERIFY_PREDICTION_SIZE = predictionSize;
+        Settings.APPLY_GROUNDINGS = applyGroundings;
+        Settings.BINARY_PREDICTIONS = binary;
+    }
+
+    @Test
+    public void recoversAllRulesOfEveryPrediction() {
+        Settings.VERIFY_RULE_SIZE = 100;
+        Multimap<Pair, Rule> eager = fullApplication();
+        Multimap<Pair, Rule> lazy = explain(eager);
+        assertEquals(eager.keySet(), lazy.keySet());
+        for (Pair pair : eager.keySet()) assertEquals(pair.toString(), new HashSet<>(eager.get(pair)), new HashSet<>(lazy.get(pair)));
+        // a tail rule explains the pairs of every test anchoring it reaches
+        Rule tail = ((AbstractRule) abstractRules.get(1)).tailRules.ranked().get(1);
+        assertEquals(0.7, tail.stats.sc, 0);
+        assertTrue(lazy.get(new Pair(1, 12)).contains(tail));
+        assertFalse(lazy.get(new Pair(5, 12)).contains(tail));
+    }
+
+    @Test
+    public void recoversTheTopRulesAsEagerVerifications() {
+        for (int size = 1; size <= 3; size++) {
+            Settings.VERIFY_RULE_SIZE = size;
+            Multimap<Pair, Rule> eager = fullApplication();
+            Multimap<Pair, Rule> lazy = explain(eager);
+            for (Pair pair : eager.keySet()) {
+                List<Rule> top = IO.rankedRulesBySC(eager.get(pair));
+                top = top.subList(0, Math.min(top.size(), size));
+                String message = pair + " top " + size;
+                // rules sharing the confidence of the last kept rule may be swapped, their confidences may not
+                assertEquals(message, confidences(top), confidences(lazy.get(pair)));
+                assertTrue(message, eager.get(pair).containsAll(lazy.get(pair)));
+            }
+        }
+    }
+
+    private Multimap<Pair, Rule> fullApplication() {
+        GenOps.reset();
+        Multimap<Pair, Rule> candidates = MultimapBuilder.hashKeys().hashSetValues().build();
+        for (Rule rule : abstractRules) candidates.putAll(((AbstractRule) rule).applyRule(graph, train, test));
+        return candidates;
+    }
+
+    /**
+     * Explains every candidate of the eager application from its scores only.
+     */
+    private Multimap<Pair, Rule> explain(Multimap<Pair, Rule> candidates) {
+        LazyExplanations lazy = new LazyExplanations(graph, abstractRules, test);
+        LazyExplanations.Buffer buffer = lazy.buffer();
+        candidates.forEach((pair, rule) -> buffer.add(new Pair(pair.sub, pair.obj), rule));
+        buffer.flush();
+        Map<Long, List<Pair>> queries = new HashMap<>();
+        for (Pair pair : lazy.rank()) queries.computeIfAbsent(pair.sub, k -> new ArrayList<>()).add(pair);
+        return lazy.explain(Arrays.asList(queries, new HashMap<>()));
+    }
+
+    private static List<Double> confidences(Collection<Rule> rules) {
+        List<Double> confidences = new ArrayList<>();
+        for (Rule rule : rules) confidences.add(rule.stats.sc);
+        confidences.sort(Comparator.reverseOrder());
+        return confidences;
+    }
+
+    private static Rule rule(Rule rule, double confidence) {
+        rule.setStats(1, 1, 10);
+        rule.stats.sc = confidence;
+        return rule;
+    }
+}
@@ -0,0 +1,47 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import org.junit.Test;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NeighbourSamplerTest {
+
+    @Test
+    public void floydDrawsDistinctSortedPositions() {
+        Random rand = new Random(11);
+        int n = 10, k = 4, trials = 50000;
+        double[] frequencies = new double[n];
+        for (int trial = 0; trial < trials; trial++) {
+            int[] positions = NeighbourSampler.floyd(n, k, rand);
+            assertEquals(k, positions.length);
+            for (int i = 0; i < k; i++) {
+                assertTrue(positions[i] >= 0 && positions[i] < n);
+                if(i > 0) assertTrue(positions[i] > positions[i - 1]);
+                frequencies[positions[i]]++;
+            }
+        }
+        for (double frequency : frequencies) assertEquals((double) k / n, frequency / trials, 0.01);
+    }
+
+    @Test
+    public void floydDrawsAllPositionsWhenFull() {
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, NeighbourSampler.floyd(5, 5, new Random(3)));
+    }
+
+    @Test
+    public void uniformPicksDrawnRelationships() {
+        List<Relationship> relationships = new ArrayList<>();
+        for (int i = 0; i < 20; i++) relationships.add(Fixtures.relationship("r", 0, i + 1));
+
+        List<Relationship> picked = NeighbourSampler.uniform(relationships, relationships.size(), 6, new Random(5));
+        int[] positions = NeighbourSampler.floyd(relationships.size(), 6, new Random(5));
+        assertEquals(6, picked.size());
+        for (int i = 0; i < positions.length; i++) assertSame(relationships.get(positions[i]), picked.get(i));
+    }
+}
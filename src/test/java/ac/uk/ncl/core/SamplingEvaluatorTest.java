@@ -0,0 +1,104 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SamplingEvaluatorTest {
+    private double precision, standardConf;
+    private int sampleMin;
+
+    @Before
+    public void setUp() {
+        precision = Settings.SAMPLE_PRECISION;
+        sampleMin = Settings.SAMPLE_MIN;
+        standardConf = Settings.STANDARD_CONF;
+        Settings.SAMPLE_PRECISION = 0.01;
+        Settings.SAMPLE_MIN = 30;
+        Settings.STANDARD_CONF = 0.5;
+    }
+
+    @After
+    public void tearDown() {
+        Settings.SAMPLE_PRECISION = precision;
+        Settings.SAMPLE_MIN = sampleMin;
+        Settings.STANDARD_CONF = standardConf;
+    }
+
+    @Test
+    public void marginIsZeroOnWholePopulation() {
+        SamplingEvaluator.Estimate estimate = new SamplingEvaluator.Estimate(4);
+        estimate.add(1, 0);
+        estimate.add(3, 3);
+        estimate.add(2, 1);
+        assertTrue(estimate.margin() > 0);
+        estimate.add(5, 0);
+        assertEquals(0d, estimate.margin(), 0d);
+        assertEquals(4d / 11, estimate.confidence(), 1e-12);
+        assertEquals(11d, estimate.bodySize(), 1e-12);
+        assertEquals(4d, estimate.support(), 1e-12);
+    }
+
+    @Test
+    public void marginIsUnboundedWithoutEvidence() {
+        SamplingEvaluator.Estimate estimate = new SamplingEvaluator.Estimate(100);
+        assertEquals(Double.MAX_VALUE, estimate.margin(), 0d);
+        estimate.add(2, 1);
+        assertEquals(Double.MAX_VALUE, estimate.margin(), 0d);
+        SamplingEvaluator.Estimate empty = new SamplingEvaluator.Estimate(100);
+        for (int i = 0; i < 50; i++) empty.add(0, 0);
+        assertEquals(Double.MAX_VALUE, empty.margin(), 0d);
+    }
+
+    @Test
+    public void scalesEstimatesToPopulation() {
+        SamplingEvaluator.Estimate estimate = new SamplingEvaluator.Estimate(1000);
+        estimate.add(4, 1);
+        estimate.add(6, 3);
+        assertEquals(5000d, estimate.bodySize(), 1e-9);
+        assertEquals(2000d, estimate.support(), 1e-9);
+        assertEquals(0.4, estimate.confidence(), 1e-12);
+    }
+
+    @Test
+    public void stopsTightOnConsistentSamples() {
+        SamplingEvaluator.Estimate estimate = new SamplingEvaluator.Estimate(1000000);
+        for (int i = 0; i < Settings.SAMPLE_MIN - 1; i++) {
+            estimate.add(2, 2);
+            estimate.check();
+        }
+        assertNull(estimate.stop);
+        estimate.add(0, 0);
+        estimate.check();
+        assertNull(estimate.stop);
+        estimate.add(2, 2);
+        estimate.check();
+        assertEquals(SamplingEvaluator.Stop.TIGHT, estimate.stop);
+    }
+
+    @Test
+    public void stopsBelowOnLowConfidence() {
+        SamplingEvaluator.Estimate estimate = new SamplingEvaluator.Estimate(1000000);
+        for (int i = 0; estimate.stop == null; i++) {
+            estimate.add(1 + i % 2, i % 10 == 0 ? 1 : 0);
+            estimate.check();
+        }
+        assertEquals(SamplingEvaluator.Stop.BELOW, estimate.stop);
+        assertEquals(Settings.SAMPLE_MIN, estimate.nonEmpty);
+        assertTrue(estimate.margin() > Settings.SAMPLE_PRECISION);
+        assertTrue(estimate.confidence() + estimate.margin() < Settings.STANDARD_CONF);
+    }
+
+    @Test
+    public void keepsSamplingUncertainConfidence() {
+        SamplingEvaluator.Estimate estimate = new SamplingEvaluator.Estimate(1000000);
+        for (int i = 0; i < 200; i++) {
+            estimate.add(2, i % 2 == 0 ? 2 : 0);
+            estimate.check();
+        }
+        assertNull(estimate.stop);
+    }
+}
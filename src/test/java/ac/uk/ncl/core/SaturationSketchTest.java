@@ -0,0 +1,80 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.InstantiatedRule;
+import ac.uk.ncl.structure.Rule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SaturationSketchTest {
+    private boolean sketch;
+    private int sketchSize;
+    private final AbstractRule base = Fixtures.openRule("r");
+
+    @Before
+    public void setUp() {
+        sketch = Settings.SKETCH_SATURATION;
+        sketchSize = Settings.SKETCH_SIZE;
+    }
+
+    @After
+    public void tearDown() {
+        Settings.SKETCH_SATURATION = sketch;
+        Settings.SKETCH_SIZE = sketchSize;
+    }
+
+    private Rule rule(long anchoring) {
+        return new InstantiatedRule(base, new long[]{anchoring}, 0);
+    }
+
+    @Test
+    public void measuresExactOverlapWithoutSketch() {
+        Settings.SKETCH_SATURATION = false;
+        SaturationSketch sketch = new SaturationSketch();
+        assertTrue(sketch.isEmpty());
+        for (int i = 0; i < 100; i++) sketch.add(rule(i));
+        assertEquals(0d, sketch.close(), 0d);
+        assertFalse(sketch.isEmpty());
+
+        for (int i = 75; i < 125; i++) {
+            sketch.add(rule(i));
+            sketch.add(rule(i));
+        }
+        assertEquals(0.5, sketch.close(), 0d);
+        assertEquals(125, sketch.size);
+        assertEquals(0, sketch.level);
+    }
+
+    @Test
+    public void keepsLastRatioOnEmptyBatch() {
+        Settings.SKETCH_SATURATION = false;
+        SaturationSketch sketch = new SaturationSketch();
+        for (int i = 0; i < 10; i++) sketch.add(rule(i));
+        sketch.close();
+        for (int i = 0; i < 10; i++) sketch.add(rule(i));
+        assertEquals(1d, sketch.close(), 0d);
+        assertEquals(1d, sketch.close(), 0d);
+    }
+
+    @Test
+    public void raisesLevelToStayWithinSize() {
+        Settings.SKETCH_SATURATION = true;
+        Settings.SKETCH_SIZE = 256;
+        SaturationSketch sketch = new SaturationSketch();
+        for (int i = 0; i < 20000; i++) sketch.add(rule(i));
+        sketch.close();
+        assertTrue(sketch.level > 0);
+        assertTrue(sketch.size <= Settings.SKETCH_SIZE);
+        assertTrue(sketch.size >= Settings.SKETCH_SIZE / 4);
+
+        // half of the next batch was seen before
+        for (int i = 10000; i < 30000; i++) sketch.add(rule(i));
+        assertEquals(0.5, sketch.close(), 0.15);
+        assertTrue(sketch.size <= Settings.SKETCH_SIZE);
+    }
+}
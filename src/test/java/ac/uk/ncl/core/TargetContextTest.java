@@ -0,0 +1,72 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.structure.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TargetContextTest {
+
+    /**
+     * Subjects 1 and 2 with objects 10, 11 and 12, object 10 holding the most instances.
+     */
+    private static TargetContext context() {
+        Set<Pair> truth = new HashSet<>(Arrays.asList(
+                new Pair(1, 10), new Pair(2, 10), new Pair(1, 11), new Pair(2, 12)));
+        return new TargetContext(truth, Arrays.asList(10L, 11L, 12L), Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    public void assignsDenseIds() {
+        TargetContext context = context();
+        Set<Integer> ids = new HashSet<>();
+        for (long entity : new long[]{1, 2, 10, 11, 12}) {
+            int id = context.denseId(entity);
+            assertTrue(id >= 0 && id < 5);
+            ids.add(id);
+        }
+        assertEquals(5, ids.size());
+        assertEquals(-1, context.denseId(99));
+        assertEquals(4, context.size());
+    }
+
+    @Test
+    public void holdsGroundTruthOfBothOrientations() {
+        TargetContext context = context();
+        TargetContext.Orientation subject = context.of(true);
+        assertTrue(subject.contains(10, 1));
+        assertTrue(subject.contains(10, 2));
+        assertTrue(subject.contains(12, 2));
+        assertFalse(subject.contains(12, 1));
+        assertFalse(subject.contains(1, 10));
+        assertFalse(subject.contains(10, 99));
+
+        TargetContext.Orientation object = context.of(false);
+        assertTrue(object.contains(1, 11));
+        assertTrue(object.contains(2, 12));
+        assertFalse(object.contains(1, 12));
+        assertFalse(object.contains(10, 1));
+    }
+
+    @Test
+    public void restrictsToRankedAnchorings() {
+        Set<Pair> truth = new HashSet<>(Arrays.asList(new Pair(1, 10), new Pair(2, 10), new Pair(1, 11)));
+        TargetContext context = new TargetContext(truth, Arrays.asList(10L), Arrays.asList(1L, 2L));
+        TargetContext.Orientation subject = context.of(true);
+        assertFalse(subject.contains(11, 1));
+        assertEquals(2, subject.anchoringToOriginal.get(10L).size());
+        assertEquals(1, (int) subject.originalToAnchoringCount.get(1L));
+        assertNull(subject.originalToAnchoringCount.get(3L));
+    }
+
+    @Test
+    public void detectsRankedAnchorings() {
+        assertTrue(context().of(true).ranked);
+        Set<Pair> truth = new HashSet<>(Arrays.asList(new Pair(1, 10), new Pair(2, 10), new Pair(1, 11)));
+        assertFalse(new TargetContext(truth, Arrays.asList(11L, 10L), Arrays.asList(1L)).of(true).ranked);
+    }
+}
@@ -0,0 +1,154 @@
+package ac.uk.ncl.core;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.InstantiatedRule;
+import ac.uk.ncl.structure.Pair;
+import ac.uk.ncl.structure.Rule;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ThresholdAnsweringTest {
+    private int topK, applyGroundings, threads;
+    private GraphDatabaseService graph;
+    private List<Rule> abstractRules;
+    private Set<Pair> train, test;
+
+    @Before
+    public void setUp() {
+        topK = Settings.TOP_K;
+        applyGroundings = Settings.APPLY_GROUNDINGS;
+        threads = Settings.THREAD_NUMBER;
+        Settings.APPLY_GROUNDINGS = 0;
+        Settings.THREAD_NUMBER = 2;
+        GenOps.reset();
+        graph = Fixtures.graph("p 1 2", "p 3 2", "p 5 6", "p 7 6", "p 9 2", "p 11 6"
+                , "q 2 4", "q 6 8", "q 2 10", "q 6 12");
+
+        AbstractRule p = Fixtures.abstractRule(Fixtures.instance("target", 1, 4), new String[]{"p"}, 2);
+        p.headRules.add(rule(new InstantiatedRule(p, new long[]{4}, 0), 0.9));
+        p.headRules.add(rule(new InstantiatedRule(p, new long[]{8}, 0), 0.8));
+        p.headRules.add(rule(new InstantiatedRule(p, new long[]{10}, 0), 0.7));
+        p.headRules.add(rule(new InstantiatedRule(p, new long[]{12}, 0), 0.7));
+        AbstractRule pq = Fixtures.abstractRule(Fixtures.instance("target", 1, 4), new String[]{"p", "q"}, 2, 5);
+        pq.tailRules.add(rule(new InstantiatedRule(pq, new long[]{4}, 1), 0.6));
+        pq.tailRules.add(rule(new InstantiatedRule(pq, new long[]{8}, 1), 0.85));
+        pq.bothRules.add(rule(new InstantiatedRule(pq, new long[]{12, 12}, 2), 0.5));
+        pq.bothRules.add(rule(new InstantiatedRule(pq, new long[]{4, 10}, 2), 0.9));
+        AbstractRule closed = Fixtures.abstractRule(Fixtures.instance("target", 1, 4), new String[]{"p", "q"}, 2, 4);
+        rule(closed, 0.75);
+        abstractRules = Arrays.asList(p, pq, closed);
+
+        train = new HashSet<>(Collections.singletonList(new Pair(9, 4)));
+        test = new HashSet<>(Arrays.asList(new Pair(1, 4), new Pair(5, 8), new Pair(3, 10), new Pair(7, 12)));
+    }
+
+    @After
+    public void tearDown() {
+        GenOps.reset();
+        Settings.TOP_K = topK;
+        Settings.APPLY_GROUNDINGS = applyGroundings;
+        Settings.THREAD_NUMBER = threads;
+    }
+
+    @Test
+    public void undecidedWithFewerCandidatesThanK() {
+        Settings.TOP_K = 3;
+        assertFalse(ThresholdAnswering.decided(Arrays.asList(scores(0.9), scores(0.8))));
+        assertTrue(ThresholdAnswering.decided(Arrays.asList(scores(0.9), scores(0.8), scores(0.7))));
+    }
+
+    @Test
+    public void undecidedWithTiesUpToRankKPlusOne() {
+        Settings.TOP_K = 2;
+        assertFalse(ThresholdAnswering.decided(Arrays.asList(scores(0.9), scores(0.9), scores(0.5))));
+        // the candidate after the top k may still overtake the k-th one
+        assertFalse(ThresholdAnswering.decided(Arrays.asList(scores(0.9), scores(0.5), scores(0.5))));
+        // ties below rank k + 1 do not matter
+        assertTrue(ThresholdAnswering.decided(Arrays.asList(scores(0.9), scores(0.8), scores(0.5), scores(0.5))));
+        assertFalse(ThresholdAnswering.decided(Arrays.asList(scores(0.9, 0.4), scores(0.9, 0.4), scores(0.5))));
+    }
+
+    @Test
+    public void decidedOnPrefixVectors() {
+        // extending the prefix only appends scores lower than all scores seen so far
+        Settings.TOP_K = 2;
+        assertTrue(ThresholdAnswering.decided(Arrays.asList(scores(0.9), scores(0.9, 0.5), scores(0.9, 0.5, 0.4, 0.3))));
+        assertTrue(scores(0.9, 0.5).compareTo(scores(0.9)) > 0);
+        assertTrue(scores(0.9, 0.5).compareTo(scores(0.9, 0.5, 0.1)) < 0);
+        assertEquals(0, scores(0.9, 0.5).compareTo(scores(0.9, 0.5)));
+    }
+
+    @Test
+    public void decidedTopKEqualsFullApplication() {
+        Map<String, List<Long>> full = null;
+        for (int k : new int[]{1, 2, 3}) {
+            Settings.TOP_K = k;
+            if(full == null) full = topK(fullApplication(), Integer.MAX_VALUE);
+            ThresholdAnswering answering = new ThresholdAnswering(graph, abstractRules, train, test);
+            Map<String, List<Long>> threshold = topK(answering.answer(), k);
+            assertEquals(8, answering.getAnswered());
+            if(k == 1) assertTrue(answering.getDecided() > 0);
+            for (Map.Entry<String, List<Long>> entry : full.entrySet()) {
+                List<Long> expected = entry.getValue().subList(0, Math.min(k, entry.getValue().size()));
+                assertEquals(entry.getKey() + " top " + k, expected, threshold.getOrDefault(entry.getKey(), Collections.emptyList()));
+            }
+        }
+    }
+
+    private Multimap<Pair, Rule> fullApplication() {
+        Multimap<Pair, Rule> candidates = MultimapBuilder.hashKeys().hashSetValues().build();
+        for (Rule rule : abstractRules) candidates.putAll(((AbstractRule) rule).applyRule(graph, train, test));
+        return candidates;
+    }
+
+    /**
+     * The first k candidates of every subject and object query of the test set, ranked by their
+     * confidence vectors and then by id.
+     */
+    private Map<String, List<Long>> topK(Multimap<Pair, Rule> candidates, int k) {
+        Map<String, List<Long>> ranked = new HashMap<>();
+        for (Pair query : test) {
+            for (int option = 0; option < 2; option++) {
+                long entity = option == 0 ? query.sub : query.obj;
+                Map<Long, ThresholdAnswering.Scores> scores = new HashMap<>();
+                for (Pair pair : candidates.keySet()) {
+                    if((option == 0 ? pair.sub : pair.obj) != entity) continue;
+                    double[] confidences = candidates.get(pair).stream().mapToDouble(rule -> rule.stats.sc).sorted().toArray();
+                    ThresholdAnswering.Scores vector = new ThresholdAnswering.Scores();
+                    for (int i = confidences.length - 1; i >= 0; i--) vector.add(confidences[i]);
+                    scores.put(option == 0 ? pair.obj : pair.sub, vector);
+                }
+                List<Long> order = new ArrayList<>(scores.keySet());
+                order.sort((a, b) -> {
+                    int c = scores.get(b).compareTo(scores.get(a));
+                    return c != 0 ? c : Long.compare(a, b);
+                });
+                ranked.put((option == 0 ? "(" + entity + ", ?)" : "(?, " + entity + ")")
+                        , order.subList(0, Math.min(k, order.size())));
+            }
+        }
+        return ranked;
+    }
+
+    private static Rule rule(Rule rule, double confidence) {
+        rule.setStats(1, 1, 10);
+        rule.stats.sc = confidence;
+        return rule;
+    }
+
+    private static ThresholdAnswering.Scores scores(double... values) {
+        ThresholdAnswering.Scores scores = new ThresholdAnswering.Scores();
+        for (double value : values) scores.add(value);
+        return scores;
+    }
+}
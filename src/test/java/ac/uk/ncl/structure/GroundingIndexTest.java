@@ -0,0 +1,108 @@
+package ac.uk.ncl.structure;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.core.GenOps;
+import ac.uk.ncl.core.GraphOps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class GroundingIndexTest {
+    private int applyGroundings, suggestionCap;
+    private GraphDatabaseService graph;
+    private AbstractRule pq;
+    private Set<Pair> train, test;
+
+    @Before
+    public void setUp() {
+        applyGroundings = Settings.APPLY_GROUNDINGS;
+        suggestionCap = Settings.SUGGESTION_CAP;
+        Settings.APPLY_GROUNDINGS = 0;
+        GenOps.reset();
+        // originals 1, 4 and 5 reach the tails 7, 8 and 1, (1, 7) is reached through 2 and 3, and 1 -> 2 -> 1 revisits the start
+        graph = Fixtures.graph("p 1 2", "p 1 3", "p 4 2", "p 5 6"
+                , "q 2 7", "q 2 8", "q 2 1", "q 3 7", "q 6 7", "q 6 5");
+        pq = Fixtures.abstractRule(Fixtures.instance("target", 1, 9), new String[]{"p", "q"}, 2, 7);
+        for (long anchoring : new long[]{9, 10, 1}) pq.headRules.add(rule(0, anchoring));
+        for (long tail : new long[]{7, 8, 99}) pq.tailRules.add(rule(1, tail));
+        for (long[] ids : new long[][]{{9, 7}, {10, 1}, {9, 99}}) pq.bothRules.add(rule(2, ids));
+        train = new HashSet<>(Collections.singletonList(new Pair(4, 9)));
+        test = new HashSet<>(Arrays.asList(new Pair(1, 9), new Pair(5, 11), new Pair(4, 11)));
+    }
+
+    @After
+    public void tearDown() {
+        GenOps.reset();
+        Settings.APPLY_GROUNDINGS = applyGroundings;
+        Settings.SUGGESTION_CAP = suggestionCap;
+    }
+
+    @Test
+    public void indexesOriginalsByTail() {
+        AbstractRule.GroundingIndex index = new AbstractRule.GroundingIndex(groundings());
+        assertArrayEquals(new long[]{1, 4, 5}, index.originals);
+        assertArrayEquals(new long[]{1, 7, 8}, index.tails);
+        int t = index.find(7);
+        assertArrayEquals(new long[]{1, 4, 5}, Arrays.copyOfRange(index.tailOriginals, index.offsets[t], index.offsets[t + 1]));
+        t = index.find(1);
+        assertArrayEquals(new long[]{4}, Arrays.copyOfRange(index.tailOriginals, index.offsets[t], index.offsets[t + 1]));
+        assertTrue(index.find(99) < 0);
+    }
+
+    @Test
+    public void appliesRulesAsFromTheExecutorGroundings() {
+        Multimap<Pair, Rule> expected = expected(groundings());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, pq.applyRule(graph, train, test));
+        assertEquals(expected.size(), GenOps.getPredictionCounter());
+    }
+
+    @Test
+    public void stopsAtTheSuggestionCap() {
+        Settings.SUGGESTION_CAP = 3;
+        Multimap<Pair, Rule> map = pq.applyRule(graph, train, test);
+        assertEquals(4, map.size());
+        assertEquals(4, GenOps.getPredictionCounter());
+        assertTrue(expected(groundings()).entries().containsAll(map.entries()));
+    }
+
+    private Set<Pair> groundings() {
+        return GraphOps.bodyGroundingCoreAPI(graph, pq, true).toPairs();
+    }
+
+    /**
+     * The candidates of the instantiated rules computed from the body groundings by hashing.
+     */
+    private Multimap<Pair, Rule> expected(Set<Pair> groundings) {
+        Multimap<Pair, Rule> map = MultimapBuilder.hashKeys().hashSetValues().build();
+        Set<Long> anchorings = new HashSet<>();
+        for (Pair pair : test) anchorings.add(pair.obj);
+        for (Pair grounding : groundings) {
+            for (Rule rule : pq.headRules) suggest(map, rule, grounding.sub, rule.getAnchoring());
+            for (Rule rule : pq.tailRules)
+                if(grounding.obj == rule.getTail()) for (long anchoring : anchorings) suggest(map, rule, grounding.sub, anchoring);
+            for (Rule rule : pq.bothRules)
+                if(grounding.obj == rule.getTail()) suggest(map, rule, grounding.sub, rule.getAnchoring());
+        }
+        return map;
+    }
+
+    private void suggest(Multimap<Pair, Rule> map, Rule rule, long original, long anchoring) {
+        Pair pair = new Pair(original, anchoring);
+        if(original != anchoring && !train.contains(pair)) map.put(pair, rule);
+    }
+
+    private Rule rule(int type, long... ids) {
+        Rule rule = new InstantiatedRule(pq, ids, type);
+        rule.setStats(1 + ids[0] % 3, 4, 10);
+        return rule;
+    }
+}
@@ -0,0 +1,76 @@
+package ac.uk.ncl.structure;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.Settings;
+import ac.uk.ncl.core.GraphOps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import static org.junit.Assert.*;
+
+public class InstantiatedRuleTest {
+    private int learnGroundings;
+    private GraphDatabaseService graph;
+    private AbstractRule pq;
+
+    @Before
+    public void setUp() {
+        learnGroundings = Settings.LEARN_GROUNDINGS;
+        Settings.LEARN_GROUNDINGS = 0;
+        InstantiatedRule.setNames(id -> "e" + id);
+        graph = Fixtures.graph("p 1 2", "p 1 3", "p 4 2", "q 2 7", "q 2 8", "q 3 7", "q 2 1");
+        pq = Fixtures.abstractRule(Fixtures.instance("target", 1, 9), new String[]{"p", "q"}, 2, 7);
+    }
+
+    @After
+    public void tearDown() {
+        InstantiatedRule.setNames(String::valueOf);
+        Settings.LEARN_GROUNDINGS = learnGroundings;
+    }
+
+    @Test
+    public void materializesConstantsOnDemand() {
+        String parent = pq.toString();
+        for (int type = 0; type < 3; type++) {
+            InstantiatedRule flyweight = new InstantiatedRule(pq, ids(type), type);
+            InstantiatedRule materialized = materialize(flyweight);
+            assertEquals(materialized.toString(), flyweight.toString());
+            assertEquals(materialized.getAnchoring(), flyweight.getAnchoring());
+            assertEquals(materialized.getTail(), flyweight.getTail());
+        }
+        assertEquals("TAR\ttarget(X,Y) <- p(X,V1), q(V1,e7)", new InstantiatedRule(pq, new long[]{7}, 1).toString());
+        // the flyweight leaves the atoms it shares with its parent untouched
+        assertEquals(parent, pq.toString());
+    }
+
+    @Test
+    public void groundsAsTheMaterializedRule() {
+        for (int type = 0; type < 3; type++) {
+            InstantiatedRule flyweight = new InstantiatedRule(pq, ids(type), type);
+            assertEquals(GraphOps.bodyGroundingCoreAPI(graph, materialize(flyweight), false).toPairs()
+                    , GraphOps.bodyGroundingCoreAPI(graph, flyweight, false).toPairs());
+        }
+        assertEquals(2, GraphOps.bodyGroundingCoreAPI(graph, new InstantiatedRule(pq, new long[]{7}, 1), false).size());
+    }
+
+    @Test
+    public void equalsByParentAndConstants() {
+        AbstractRule other = Fixtures.abstractRule(Fixtures.instance("target", 5, 6), new String[]{"p", "q"}, 7, 8);
+        InstantiatedRule rule = new InstantiatedRule(pq, new long[]{9, 7}, 2);
+        assertEquals(rule, new InstantiatedRule(other, new long[]{9, 7}, 2));
+        assertEquals(rule.hashCode(), new InstantiatedRule(other, new long[]{9, 7}, 2).hashCode());
+        assertNotEquals(rule, new InstantiatedRule(pq, new long[]{9, 8}, 2));
+        assertNotEquals(rule, new InstantiatedRule(pq, new long[]{7}, 1));
+        assertNotEquals(new InstantiatedRule(pq, new long[]{7}, 0), new InstantiatedRule(pq, new long[]{7}, 1));
+    }
+
+    private static long[] ids(int type) {
+        return type == 0 ? new long[]{9} : type == 1 ? new long[]{7} : new long[]{9, 7};
+    }
+
+    private static InstantiatedRule materialize(InstantiatedRule flyweight) {
+        return new InstantiatedRule(flyweight.copyHead(), flyweight.copyBody(), flyweight.getType());
+    }
+}
@@ -0,0 +1,35 @@
+package ac.uk.ncl.structure;
+
+import ac.uk.ncl.Fixtures;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RuleFingerprintTest {
+
+    @Test
+    public void equalRulesHaveEqualFingerprints() {
+        AbstractRule a = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"r", "s"}, 3, 4);
+        AbstractRule b = Fixtures.abstractRule(Fixtures.instance("target", 5, 6), new String[]{"r", "s"}, 7, 8);
+        assertEquals(a, b);
+        assertEquals(a.fingerprint(), b.fingerprint());
+        assertEquals(new InstantiatedRule(a, new long[]{9}, 0).fingerprint()
+                , new InstantiatedRule(b, new long[]{9}, 0).fingerprint());
+    }
+
+    @Test
+    public void differentRulesHaveDifferentFingerprints() {
+        AbstractRule rs = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"r", "s"}, 3, 4);
+        AbstractRule sr = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"s", "r"}, 3, 4);
+        AbstractRule closed = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"r", "s"}, 3, 2);
+        AbstractRule joined = Fixtures.abstractRule(Fixtures.instance("target", 1, 2), new String[]{"rs"}, 3);
+        assertNotEquals(rs.fingerprint(), sr.fingerprint());
+        assertNotEquals(rs.fingerprint(), closed.fingerprint());
+        assertNotEquals(rs.fingerprint(), joined.fingerprint());
+
+        long head = new InstantiatedRule(rs, new long[]{9}, 0).fingerprint();
+        assertNotEquals(head, new InstantiatedRule(rs, new long[]{10}, 0).fingerprint());
+        assertNotEquals(head, new InstantiatedRule(rs, new long[]{9}, 1).fingerprint());
+        assertNotEquals(head, new InstantiatedRule(sr, new long[]{9}, 0).fingerprint());
+    }
+}
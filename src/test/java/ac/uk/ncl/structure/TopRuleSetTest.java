@@ -0,0 +1,62 @@
+package ac.uk.ncl.structure;
+
+import ac.uk.ncl.Fixtures;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TopRuleSetTest {
+
+    /**
+     * Rules of standard confidence increasing with their support 1 to n.
+     */
+    private static List<Rule> rules(int n) {
+        AbstractRule base = Fixtures.openRule("r");
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < n; i++) rules.add(Fixtures.headRule(base, 100 + i, i + 1, 10));
+        return rules;
+    }
+
+    @Test
+    public void retainsMostConfidentRules() {
+        List<Rule> rules = rules(5);
+        TopRuleSet set = new TopRuleSet(3);
+        assertTrue(set.add(rules.get(2)));
+        assertTrue(set.add(rules.get(0)));
+        assertTrue(set.add(rules.get(4)));
+        assertTrue(set.add(rules.get(3)));
+        assertFalse(set.add(rules.get(1)));
+
+        assertEquals(3, set.size());
+        assertEquals(Arrays.asList(rules.get(4), rules.get(3), rules.get(2)), set.ranked());
+        assertFalse(set.contains(rules.get(0)));
+        assertFalse(set.contains(rules.get(1)));
+        assertTrue(set.contains(rules.get(4)));
+    }
+
+    @Test
+    public void aggregatesStatsOfAllDistinctRules() {
+        List<Rule> rules = rules(5);
+        TopRuleSet set = new TopRuleSet(2);
+        for (Rule rule : rules) set.add(rule);
+        assertFalse(set.add(rules.get(4)));
+
+        assertEquals(5, set.getSeen());
+        assertEquals(1 + 2 + 3 + 4 + 5, set.getSupport(), 1e-9);
+        assertEquals(5 * 10, set.getTotalPredictions(), 1e-9);
+        assertEquals(100, set.getGroundTruth(), 1e-9);
+    }
+
+    @Test
+    public void retainsNothingWithoutCapacity() {
+        TopRuleSet set = new TopRuleSet(0);
+        for (Rule rule : rules(3)) assertFalse(set.add(rule));
+        assertEquals(0, set.size());
+        assertEquals(3, set.getSeen());
+        assertTrue(set.ranked().isEmpty());
+    }
+}
@@ -0,0 +1,39 @@
+package ac.uk.ncl.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AliasTableTest {
+
+    @Test
+    public void drawsProportionallyToWeights() {
+        double[] weights = {1, 2, 3, 4, 0};
+        double[] frequencies = draw(new AliasTable(weights), 200000);
+        for (int i = 0; i < weights.length; i++) assertEquals(weights[i] / 10, frequencies[i], 0.01);
+        assertEquals(0d, frequencies[4], 0d);
+    }
+
+    @Test
+    public void drawsUniformlyWithoutWeights() {
+        double[] frequencies = draw(new AliasTable(new double[4]), 200000);
+        for (double frequency : frequencies) assertEquals(0.25, frequency, 0.01);
+    }
+
+    @Test
+    public void drawsSingleIndex() {
+        AliasTable table = new AliasTable(new double[]{5});
+        assertEquals(1, table.size());
+        assertEquals(1d, draw(table, 100)[0], 0d);
+    }
+
+    private static double[] draw(AliasTable table, int n) {
+        Random rand = new Random(7);
+        double[] frequencies = new double[table.size()];
+        for (int i = 0; i < n; i++) frequencies[table.sample(rand)]++;
+        for (int i = 0; i < frequencies.length; i++) frequencies[i] /= n;
+        return frequencies;
+    }
+}
@@ -0,0 +1,52 @@
+package ac.uk.ncl.utils;
+
+import ac.uk.ncl.structure.Pair;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class LongPairSetTest {
+
+    @Test
+    public void addsOnlyNewPairs() {
+        LongPairSet set = new LongPairSet();
+        assertTrue(set.add(1, 2));
+        assertTrue(set.add(2, 1));
+        assertFalse(set.add(1, 2));
+        assertTrue(set.add(-1, Long.MAX_VALUE));
+        assertEquals(3, set.size());
+
+        assertTrue(set.contains(1, 2));
+        assertTrue(set.contains(2, 1));
+        assertTrue(set.contains(-1, Long.MAX_VALUE));
+        assertFalse(set.contains(1, 1));
+    }
+
+    @Test
+    public void growsAndKeepsInsertionOrder() {
+        LongPairSet set = new LongPairSet(2);
+        int n = 10000;
+        for (int i = 0; i < n; i++) assertTrue(set.add(i, i * 7L));
+        for (int i = 0; i < n; i++) assertFalse(set.add(i, i * 7L));
+        assertEquals(n, set.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, set.first(i));
+            assertEquals(i * 7L, set.second(i));
+            assertTrue(set.contains(i, i * 7L));
+            assertFalse(set.contains(i, i * 7L + 1));
+        }
+    }
+
+    @Test
+    public void convertsToPairs() {
+        LongPairSet set = new LongPairSet();
+        set.add(3, 4);
+        set.add(5, 6);
+        Set<Pair> pairs = set.toPairs();
+        assertEquals(2, pairs.size());
+        assertTrue(pairs.contains(new Pair(3, 4)));
+        assertTrue(pairs.contains(new Pair(5, 6)));
+    }
+}
@@ -0,0 +1,82 @@
+package ac.uk.ncl.utils;
+
+import ac.uk.ncl.Fixtures;
+import ac.uk.ncl.structure.AbstractRule;
+import ac.uk.ncl.structure.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PredictionFileTest {
+
+    @Test
+    public void roundTripAcrossBlocks() throws IOException {
+        AbstractRule base = Fixtures.openRule("r");
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 5; i++) rules.add(Fixtures.headRule(base, 100 + i, i + 1, 10));
+
+        int total = 2 * PredictionWriter.BLOCK_SIZE + 7;
+        File file = Files.createTempFile("predictions", ".bin").toFile();
+        file.deleteOnExit();
+        try (PredictionWriter writer = new PredictionWriter(file, id -> "e" + id)) {
+            for (int i = 0; i < total; i++) writer.add(i % 97, i % 2, i + 1, 1000 + i, scores(i), topRules(rules, i));
+        }
+
+        int count = 0;
+        try (PredictionReader reader = new PredictionReader(file)) {
+            while (reader.hasNext()) {
+                PredictionReader.Prediction p = reader.next();
+                int i = count++;
+                assertEquals(i % 97, reader.entityId(p.query));
+                assertEquals("e" + (i % 97), reader.entityName(p.query));
+                assertEquals(i % 2, p.direction);
+                assertEquals(i + 1, p.rank);
+                assertEquals(1000 + i, reader.entityId(p.candidate));
+                Double[] expected = scores(i);
+                assertEquals(expected.length, p.scores.length);
+                for (int j = 0; j < expected.length; j++) assertEquals(expected[j], p.scores[j], 1e-6);
+
+                List<Rule> expectedRules = topRules(rules, i);
+                assertEquals(Math.min(expected.length, expectedRules.size()), p.rules.length);
+                for (int j = 0; j < p.rules.length; j++) {
+                    assertEquals(expectedRules.get(j).toString(), reader.rule(p.rules[j]));
+                    assertEquals(expectedRules.get(j).stats.sc, reader.ruleConfidence(p.rules[j]), 1e-12);
+                }
+            }
+        }
+        assertEquals(total, count);
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        File file = Files.createTempFile("predictions", ".bin").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[64]);
+        try (PredictionReader ignored = new PredictionReader(file)) {
+            fail("read a file without the magic");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("Not a GPFL binary prediction file"));
+        }
+    }
+
+    private static Double[] scores(int i) {
+        Double[] scores = new Double[i % 4 + 1];
+        for (int j = 0; j < scores.length; j++) scores[j] = 1d / (j + 2) + i * 1e-5;
+        return scores;
+    }
+
+    private static List<Rule> topRules(List<Rule> rules, int i) {
+        if (i % 5 == 0) return Collections.emptyList();
+        List<Rule> top = new ArrayList<>(rules.subList(i % 3, rules.size()));
+        Collections.reverse(top);
+        return Arrays.asList(top.toArray(new Rule[0]));
+    }
+}
@@ -0,0 +1,47 @@
+package ac.uk.ncl.utils;
+
+import ac.uk.ncl.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RandomnessTest {
+    private long seed;
+
+    @Before
+    public void setUp() {
+        seed = Settings.RANDOM_SEED;
+        Settings.RANDOM_SEED = 42;
+    }
+
+    @After
+    public void tearDown() {
+        Settings.RANDOM_SEED = seed;
+    }
+
+    @Test
+    public void sameAttemptRepeatsDraws() {
+        assertEquals(draw("target", 1), draw("target", 1));
+        assertEquals(draw("target", 0), draw("target", 0));
+    }
+
+    @Test
+    public void attemptsDrawDifferently() {
+        assertNotEquals(draw("target", 0), draw("target", 1));
+        assertNotEquals(draw("target", 1), draw("target", 2));
+    }
+
+    @Test
+    public void firstAttemptKeepsTargetSeed() {
+        Randomness.reseed("target");
+        long first = Randomness.get().nextLong();
+        assertEquals(first, draw("target", 0));
+    }
+
+    private static long draw(String target, int attempt) {
+        Randomness.reseed(target, attempt);
+        return Randomness.get().nextLong();
+    }
+}
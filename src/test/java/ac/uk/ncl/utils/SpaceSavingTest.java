@@ -0,0 +1,49 @@
+package ac.uk.ncl.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void countsExactlyWithinCapacity() {
+        SpaceSaving<String> counter = new SpaceSaving<>(3);
+        for (String item : new String[]{"a", "b", "a", "c", "a", "b"}) counter.offer(item);
+        Map<String, Integer> counts = counter.counts();
+        assertEquals(3, counter.size());
+        assertEquals(3, (int) counts.get("a"));
+        assertEquals(2, (int) counts.get("b"));
+        assertEquals(1, (int) counts.get("c"));
+    }
+
+    @Test
+    public void neverUnderestimates() {
+        int capacity = 20, n = 20000;
+        SpaceSaving<Integer> counter = new SpaceSaving<>(capacity);
+        Map<Integer, Integer> truth = new HashMap<>();
+        Random rand = new Random(13);
+        for (int i = 0; i < n; i++) {
+            // a skewed stream: item k is drawn with probability about 1 / (k + 1)^2
+            int item = (int) Math.floor(1 / Math.sqrt(rand.nextDouble())) - 1;
+            counter.offer(item);
+            truth.merge(item, 1, Integer::sum);
+        }
+
+        Map<Integer, Integer> counts = counter.counts();
+        assertEquals(capacity, counts.size());
+        int smallest = counts.values().stream().min(Integer::compare).get();
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            int exact = truth.get(entry.getKey());
+            assertTrue(entry.getValue() >= exact);
+            assertTrue(entry.getValue() - exact <= smallest);
+        }
+        for (Map.Entry<Integer, Integer> entry : truth.entrySet())
+            if(entry.getValue() > n / capacity) assertTrue(counts.containsKey(entry.getKey()));
+        assertEquals(n, counts.values().stream().mapToInt(Integer::intValue).sum());
+    }
+}